@@ -1,18 +1,92 @@
 package ai.vectorx;
 
+import java.io.IOException;
+import java.net.URI;
 import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
+/**
+ * Shared HTTP transport used by {@link VectorX}, {@link Index} and {@link HybridIndex}.
+ *
+ * One instance owns one {@link HttpClient}, so every handle resolved from the same
+ * {@link VectorX} shares its connection pool, executor and HTTP/2 sessions.
+ *
+ * The JDK client does not expose its pool or its connection events, so the connection
+ * counters are estimates, not measurements. They come from this client's own view of
+ * request concurrency per host and the pool's keep-alive. A request is counted as reusing a
+ * connection when an idle connection to the same host (or, for HTTP/2, a live multiplexed
+ * one) should still be available. They drift from reality when the pool evicts sockets
+ * early, when the server closes them, or when HTTP/2 streams spread over several
+ * connections, so use them as a rough trend rather than exact numbers.
+ *
+ * Async calls follow the client's {@link RetryPolicy}, which by default sends each request
+ * once.
+ */
 public class ApiClient {
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_KEEP_ALIVE = Duration.ofSeconds(1200);
+
+    private static final int LATENCY_SAMPLES = 256;
+    // The JDK pool's idle timeout in seconds, read once per JVM when the pool is first used
+    private static final String KEEP_ALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+
+    // What a call may safely repeat: reads can be retried and hedged, idempotent writes
+    // retried, other writes only retried when the server cannot have seen them
+    enum Call { READ, IDEMPOTENT, WRITE }
+
     private final HttpClient client;
     private final String baseUrl;
+    private final Duration requestTimeout;
+    private final long keepAliveNanos;
+
+    private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<>();
+    private final AtomicLong estimatedNewConnections = new AtomicLong();
+    private final AtomicLong estimatedReusedConnections = new AtomicLong();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final RetryingCall.LatencyWindow readLatency = new RetryingCall.LatencyWindow(LATENCY_SAMPLES);
+    private volatile RetryPolicy retryPolicy = RetryPolicy.NONE;
 
     public ApiClient(String baseUrl) {
+        this(baseUrl, null, DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT, DEFAULT_KEEP_ALIVE);
+    }
+
+    /**
+     * @param baseUrl        base URL every request path is resolved against
+     * @param executor       executor for the client's async work, or null for the JDK default
+     * @param connectTimeout timeout for establishing a connection
+     * @param requestTimeout default timeout for a request when the caller does not pass one
+     * @param keepAlive      idle time after which pooled connections are closed, in whole
+     *                       seconds. The JDK pool takes it from the
+     *                       {@code jdk.httpclient.keepalive.timeout} system property, which it
+     *                       reads once per JVM, so this sets the property when it is unset. If
+     *                       the property is already set, or an earlier {@link HttpClient} in
+     *                       the JVM has already started its pool, that value stays in force;
+     *                       {@link #getKeepAlive()} reports the one in use.
+     */
+    public ApiClient(String baseUrl, Executor executor, Duration connectTimeout, Duration requestTimeout, Duration keepAlive) {
+        if (keepAlive == null || keepAlive.toSeconds() < 1) {
+            throw new IllegalArgumentException("Keep-alive must be at least one second");
+        }
         this.baseUrl = baseUrl;
-        this.client = HttpClient.newBuilder()
+        this.requestTimeout = requestTimeout;
+        this.keepAliveNanos = applyKeepAlive(keepAlive).toNanos();
+
+        HttpClient.Builder builder = HttpClient.newBuilder()
                 .version(HttpClient.Version.HTTP_2)
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
+                .connectTimeout(connectTimeout);
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        this.client = builder.build();
     }
 
     public HttpClient getClient() {
@@ -22,4 +96,234 @@ public class ApiClient {
     public String getBaseUrl() {
         return baseUrl;
     }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /** Idle timeout of the JDK connection pool, as far as this client can tell. */
+    public Duration getKeepAlive() {
+        return Duration.ofNanos(keepAliveNanos);
+    }
+
+    // Sets the pool's property unless something already has, and returns the value in force
+    private static synchronized Duration applyKeepAlive(Duration keepAlive) {
+        String current = System.getProperty(KEEP_ALIVE_PROPERTY);
+        if (current == null) {
+            System.setProperty(KEEP_ALIVE_PROPERTY, Long.toString(keepAlive.toSeconds()));
+            return Duration.ofSeconds(keepAlive.toSeconds());
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(current.trim()));
+        } catch (NumberFormatException e) {
+            // The JDK falls back to its default for an unparsable value
+            return DEFAULT_KEEP_ALIVE;
+        }
+    }
+
+    /**
+     * Retries, deadline and hedging for every async call made through this client, and so
+     * for every index handle sharing it.
+     */
+    public void setRetryPolicy(RetryPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Retry policy cannot be null");
+        }
+        this.retryPolicy = policy;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Starts a request for {@code path} relative to the base URL with the default request timeout.
+     */
+    public HttpRequest.Builder request(String path) {
+        return request(path, requestTimeout);
+    }
+
+    /**
+     * Starts a request for {@code path} relative to the base URL with a per-call timeout.
+     */
+    public HttpRequest.Builder request(String path, Duration timeout) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + path))
+                .timeout(timeout);
+    }
+
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+        Route route = acquire(request);
+        HttpResponse<T> response = null;
+        try {
+            response = client.send(request, handler);
+            return response;
+        } finally {
+            route.release(response != null ? response.version() : null, System.nanoTime());
+            MsgPackEncoder.releaseBody(request);
+        }
+    }
+
+    /**
+     * Sends the request without blocking. Cancelling the returned future cancels the exchange
+     * (the JDK client aborts the underlying request from Java 16 on).
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        CompletableFuture<HttpResponse<T>> exchange = exchange(request, handler);
+        return cancelling(exchange.whenComplete((response, error) -> MsgPackEncoder.releaseBody(request)), exchange);
+    }
+
+    /**
+     * Sends the request without blocking and maps the response on the client's executor,
+     * retrying as the {@link RetryPolicy} allows for the request's method: GET as a read,
+     * PUT and DELETE as idempotent writes, anything else as a write that is not.
+     * Cancelling the returned future cancels the exchange.
+     */
+    public <T, R> CompletableFuture<R> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                                                 Function<? super HttpResponse<T>, ? extends R> mapper) {
+        return sendAsync(request, handler, callOf(request), mapper);
+    }
+
+    // As above, for a call whose safety to repeat the caller knows, such as a search sent as POST
+    <T, R> CompletableFuture<R> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler, Call call,
+                                          Function<? super HttpResponse<T>, ? extends R> mapper) {
+        return sendAsync(request, handler, call, CallGuard.NONE, mapper);
+    }
+
+    // As above, admitted by an index's limiter and circuit breaker, which see the whole call retries included
+    <T, R> CompletableFuture<R> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler, Call call,
+                                          CallGuard guard, Function<? super HttpResponse<T>, ? extends R> mapper) {
+        RetryPolicy policy = retryPolicy;
+        CompletableFuture<HttpResponse<T>> exchange = guard.run(request, attemptNanos -> policy.isNone()
+                ? sendAsync(request, handler)
+                : new RetryingCall<>(this, request, handler, call, policy, attemptNanos).start());
+        return cancelling(exchange.thenApply(mapper), exchange);
+    }
+
+    // One attempt, with the connection book-keeping but leaving the body to the caller
+    <T> CompletableFuture<HttpResponse<T>> exchange(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        Route route = acquire(request);
+        CompletableFuture<HttpResponse<T>> exchange = client.sendAsync(request, handler);
+        return cancelling(exchange.whenComplete((response, error) ->
+                route.release(response != null ? response.version() : null, System.nanoTime())), exchange);
+    }
+
+    RetryingCall.LatencyWindow readLatency() {
+        return readLatency;
+    }
+
+    private static Call callOf(HttpRequest request) {
+        switch (request.method()) {
+            case "GET":
+            case "HEAD":
+                return Call.READ;
+            case "PUT":
+            case "DELETE":
+                return Call.IDEMPOTENT;
+            default:
+                return Call.WRITE;
+        }
+    }
+
+    // Error status raised while a response body is being decoded, so retries can still see it
+    static final class StatusException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        StatusException(int statusCode, String message) {
+            super(message);
+            this.statusCode = statusCode;
+        }
+
+        int statusCode() {
+            return statusCode;
+        }
+    }
+
+    // Cancels upstream when downstream is cancelled, so callers only need to hold the last stage
+    static <T> CompletableFuture<T> cancelling(CompletableFuture<T> downstream, CompletableFuture<?> upstream) {
+        downstream.whenComplete((result, error) -> {
+            if (downstream.isCancelled()) {
+                upstream.cancel(true);
+            }
+        });
+        return downstream;
+    }
+
+    // Estimated requests that needed a new connection; see the class comment
+    public long getEstimatedNewConnections() {
+        return estimatedNewConnections.get();
+    }
+
+    // Estimated requests that rode on a pooled or multiplexed connection; see the class comment
+    public long getEstimatedReusedConnections() {
+        return estimatedReusedConnections.get();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    private Route acquire(HttpRequest request) {
+        URI uri = request.uri();
+        String key = uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+        Route route = routes.computeIfAbsent(key, k -> new Route(keepAliveNanos));
+        requestCount.incrementAndGet();
+        if (route.acquire(System.nanoTime())) {
+            estimatedReusedConnections.incrementAndGet();
+        } else {
+            estimatedNewConnections.incrementAndGet();
+        }
+        return route;
+    }
+
+    // Book-keeping for the connections to one scheme/host/port
+    private static final class Route {
+        private final long keepAliveNanos;
+        private final ArrayDeque<Long> idleSince = new ArrayDeque<>();
+        private boolean multiplexed;
+        private int inFlight;
+        private long lastActivity;
+
+        Route(long keepAliveNanos) {
+            this.keepAliveNanos = keepAliveNanos;
+        }
+
+        // Returns true when the request can ride on an existing connection
+        synchronized boolean acquire(long now) {
+            boolean reused = false;
+            if (multiplexed) {
+                reused = inFlight > 0 || now - lastActivity < keepAliveNanos;
+            } else {
+                while (!idleSince.isEmpty()) {
+                    long since = idleSince.pollLast();
+                    if (now - since < keepAliveNanos) {
+                        reused = true;
+                        break;
+                    }
+                }
+            }
+            inFlight++;
+            lastActivity = now;
+            return reused;
+        }
+
+        synchronized void release(HttpClient.Version version, long now) {
+            inFlight--;
+            lastActivity = now;
+            if (version == null) {
+                // Failed exchange: assume the connection was torn down
+                if (multiplexed && inFlight == 0) {
+                    lastActivity = now - keepAliveNanos;
+                }
+                return;
+            }
+            if (version == HttpClient.Version.HTTP_2) {
+                multiplexed = true;
+            } else {
+                idleSince.addLast(now);
+            }
+        }
+    }
 }
@@ -0,0 +1,77 @@
+package ai.vectorx;
+
+import java.util.Collection;
+
+/**
+ * 1-bit quantizer: each dimension becomes one bit, set when the value is above the midpoint
+ * of that dimension's range, so a vector takes 1/32 of its float32 size. Bits are packed
+ * most significant first, eight dimensions per byte.
+ *
+ * Decoding returns the centre of the half of the range the bit selects, which is only
+ * useful as a rough estimate; rescore with full-precision vectors for ranking.
+ */
+public class BinaryQuantizer implements VectorQuantizer {
+    private final float[] min;
+    private final float[] max;
+    private final float[] threshold;
+
+    public BinaryQuantizer(float[] min, float[] max) {
+        ScalarQuantizer.checkRange(min, max);
+        this.min = min.clone();
+        this.max = max.clone();
+        this.threshold = new float[min.length];
+        for (int d = 0; d < min.length; d++) {
+            threshold[d] = (min[d] + max[d]) / 2;
+        }
+    }
+
+    /**
+     * Ranges from the per-dimension minimum and maximum of {@code sample}, normalized first on
+     * cosine indexes.
+     */
+    public static BinaryQuantizer calibrate(Collection<float[]> sample, String spaceType) {
+        float[][] range = ScalarQuantizer.range(sample, spaceType);
+        return new BinaryQuantizer(range[0], range[1]);
+    }
+
+    public float[] getMin() { return min.clone(); }
+    public float[] getMax() { return max.clone(); }
+
+    @Override
+    public int getDimension() {
+        return min.length;
+    }
+
+    @Override
+    public int getCodeSize() {
+        return (min.length + 7) / 8;
+    }
+
+    @Override
+    public void encode(float[] vector, double divisor, byte[] dst, int offset) {
+        ScalarQuantizer.checkLength(vector, min.length);
+        int bits = 0;
+        for (int d = 0; d < min.length; d++) {
+            float v = divisor == 1.0 ? vector[d] : (float) (vector[d] / divisor);
+            bits = bits << 1 | (v > threshold[d] ? 1 : 0);
+            if ((d & 7) == 7) {
+                dst[offset + (d >>> 3)] = (byte) bits;
+                bits = 0;
+            }
+        }
+        int tail = min.length & 7;
+        if (tail != 0) {
+            dst[offset + (min.length >>> 3)] = (byte) (bits << (8 - tail));
+        }
+    }
+
+    @Override
+    public float[] decode(byte[] codes, int offset) {
+        float[] vector = new float[min.length];
+        for (int d = 0; d < min.length; d++) {
+            boolean set = (codes[offset + (d >>> 3)] & (0x80 >>> (d & 7))) != 0;
+            vector[d] = set ? (threshold[d] + max[d]) / 2 : (min[d] + threshold[d]) / 2;
+        }
+        return vector;
+    }
+}
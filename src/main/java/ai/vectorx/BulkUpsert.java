@@ -0,0 +1,188 @@
+package ai.vectorx;
+
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Pipelined bulk ingest shared by {@link Index} and {@link HybridIndex}.
+ *
+ * The calling thread cuts the input into batches and serializes each one while earlier
+ * batches are still in flight. At most {@code maxInFlight} POSTs are outstanding; once that
+ * many are pending the caller blocks before sending the next batch, which bounds both memory
+ * and load on the server.
+ *
+ * When the index has a {@link ConcurrencyLimiter}, a batch it turns away is not failed: the
+ * caller waits with a growing pause and sends the batch again, re-encoded since the rejected
+ * request's body has been released. The waiting is bounded by the retry policy's deadline,
+ * or {@link #DEFAULT_MAX_LIMIT_WAIT} without one; a batch still turned away after that fails
+ * with the limiter's rejection. An open circuit breaker still fails the batch at once.
+ *
+ * A batch's latency is measured from the attempt the limiter admitted, so time spent
+ * waiting for the limiter is not counted.
+ */
+class BulkUpsert<T> {
+    static final int MAX_BATCH_SIZE = 1000;
+    static final int DEFAULT_CONCURRENCY = 4;
+    // Pauses between attempts to get a batch past the concurrency limiter
+    private static final long MIN_LIMIT_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_LIMIT_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    // Total time a batch may spend waiting for the limiter when the retry policy has no deadline
+    static final Duration DEFAULT_MAX_LIMIT_WAIT = Duration.ofSeconds(30);
+
+    // Builds the request for one batch on the calling thread
+    interface BatchEncoder<T> {
+        HttpRequest encode(List<T> batch) throws Exception;
+    }
+
+    private final BatchEncoder<T> encoder;
+    private final Function<HttpRequest, CompletableFuture<String>> sender;
+    private final Function<T, String> idOf;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final Consumer<BulkUpsertResult.BatchResult> onBatch;
+    private final long limitWaitBudgetNanos;
+
+    BulkUpsert(BatchEncoder<T> encoder, Function<HttpRequest, CompletableFuture<String>> sender,
+               Function<T, String> idOf, int batchSize, int maxInFlight,
+               Consumer<BulkUpsertResult.BatchResult> onBatch, RetryPolicy retryPolicy) {
+        if (batchSize < 1 || batchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch size must be between 1 and " + MAX_BATCH_SIZE);
+        }
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1");
+        }
+        this.encoder = encoder;
+        this.sender = sender;
+        this.idOf = idOf;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.onBatch = onBatch;
+        Duration deadline = retryPolicy != null ? retryPolicy.getDeadline() : null;
+        this.limitWaitBudgetNanos = (deadline != null ? deadline : DEFAULT_MAX_LIMIT_WAIT).toNanos();
+    }
+
+    BulkUpsertResult run(Iterator<T> items) throws InterruptedException {
+        Semaphore permits = new Semaphore(maxInFlight);
+        List<BulkUpsertResult.BatchResult> results = Collections.synchronizedList(new ArrayList<>());
+        long start = System.nanoTime();
+        int batchNumber = 0;
+
+        while (items.hasNext()) {
+            List<T> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && items.hasNext()) {
+                batch.add(items.next());
+            }
+            int number = batchNumber++;
+
+            // Serialize before waiting for a permit so encoding overlaps the requests in flight
+            HttpRequest request;
+            try {
+                request = encoder.encode(batch);
+            } catch (Exception e) {
+                record(results, new BulkUpsertResult.BatchResult(number, batch.size(), idsOf(batch), null, e, 0));
+                continue;
+            }
+
+            permits.acquire();
+            long waitUntil = System.nanoTime() + limitWaitBudgetNanos;
+            long attemptAt = System.nanoTime();
+            CompletableFuture<String> future = send(request);
+            for (long wait = MIN_LIMIT_WAIT_NANOS; limitExceeded(future); wait = Math.min(wait * 2, MAX_LIMIT_WAIT_NANOS)) {
+                long remaining = waitUntil - System.nanoTime();
+                if (remaining <= 0) {
+                    // Give up and fail the batch with the limiter's rejection
+                    break;
+                }
+                TimeUnit.NANOSECONDS.sleep(Math.min(wait, remaining));
+                try {
+                    request = encoder.encode(batch);
+                } catch (Exception e) {
+                    future = CompletableFuture.failedFuture(e);
+                    break;
+                }
+                attemptAt = System.nanoTime();
+                future = send(request);
+            }
+            long sentAt = attemptAt;
+            future.whenComplete((response, error) -> {
+                try {
+                    long latency = System.nanoTime() - sentAt;
+                    if (error == null) {
+                        record(results, new BulkUpsertResult.BatchResult(number, batch.size(),
+                                Collections.emptyList(), response, null, latency));
+                    } else {
+                        record(results, new BulkUpsertResult.BatchResult(number, batch.size(),
+                                idsOf(batch), null, unwrap(error), latency));
+                    }
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        // Wait for the tail of the pipeline to drain
+        permits.acquire(maxInFlight);
+        permits.release(maxInFlight);
+
+        List<BulkUpsertResult.BatchResult> ordered;
+        synchronized (results) {
+            ordered = new ArrayList<>(results);
+        }
+        ordered.sort(Comparator.comparingInt(BulkUpsertResult.BatchResult::getBatchNumber));
+        return new BulkUpsertResult(ordered, System.nanoTime() - start);
+    }
+
+    private CompletableFuture<String> send(HttpRequest request) {
+        try {
+            return sender.apply(request);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // True when the limiter turned the batch away; that happens before the future is returned
+    private static boolean limitExceeded(CompletableFuture<String> future) {
+        if (!future.isCompletedExceptionally() || future.isCancelled()) {
+            return false;
+        }
+        try {
+            future.getNow(null);
+            return false;
+        } catch (CompletionException e) {
+            return unwrap(e) instanceof ConcurrencyLimiter.LimitExceededException;
+        }
+    }
+
+    private void record(List<BulkUpsertResult.BatchResult> results, BulkUpsertResult.BatchResult result) {
+        results.add(result);
+        if (onBatch != null) {
+            onBatch.accept(result);
+        }
+    }
+
+    private List<String> idsOf(List<T> batch) {
+        List<String> ids = new ArrayList<>(batch.size());
+        for (T item : batch) {
+            ids.add(idOf.apply(item));
+        }
+        return ids;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+}
@@ -0,0 +1,96 @@
+package ai.vectorx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk upsert: one {@link BatchResult} per POST plus totals and throughput.
+ */
+public class BulkUpsertResult {
+    private final List<BatchResult> batches;
+    private final long totalRecords;
+    private final long failedRecords;
+    private final long elapsedNanos;
+
+    BulkUpsertResult(List<BatchResult> batches, long elapsedNanos) {
+        this.batches = Collections.unmodifiableList(batches);
+        this.elapsedNanos = elapsedNanos;
+        long total = 0;
+        long failed = 0;
+        for (BatchResult batch : batches) {
+            total += batch.getSize();
+            if (!batch.isSuccess()) {
+                failed += batch.getSize();
+            }
+        }
+        this.totalRecords = total;
+        this.failedRecords = failed;
+    }
+
+    public List<BatchResult> getBatches() { return batches; }
+    public long getTotalRecords() { return totalRecords; }
+    public long getSucceededRecords() { return totalRecords - failedRecords; }
+    public long getFailedRecords() { return failedRecords; }
+    public long getElapsedNanos() { return elapsedNanos; }
+    public boolean isSuccess() { return failedRecords == 0; }
+
+    // Records accepted by the server per second of wall-clock time
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0.0 : getSucceededRecords() * 1e9 / elapsedNanos;
+    }
+
+    public List<String> getFailedIds() {
+        List<String> ids = new ArrayList<>();
+        for (BatchResult batch : batches) {
+            if (!batch.isSuccess()) {
+                ids.addAll(batch.getFailedIds());
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkUpsertResult{batches=" + batches.size()
+                + ", records=" + totalRecords
+                + ", failed=" + failedRecords
+                + ", elapsedMs=" + elapsedNanos / 1_000_000
+                + ", recordsPerSec=" + String.format("%.1f", getThroughput()) + "}";
+    }
+
+    public static class BatchResult {
+        private final int batchNumber;
+        private final int size;
+        private final List<String> failedIds;
+        private final String response;
+        private final Throwable error;
+        private final long latencyNanos;
+
+        // Only failed batches keep their IDs, so a multi-million record run stays small
+        BatchResult(int batchNumber, int size, List<String> failedIds, String response, Throwable error, long latencyNanos) {
+            this.batchNumber = batchNumber;
+            this.size = size;
+            this.failedIds = failedIds;
+            this.response = response;
+            this.error = error;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public int getBatchNumber() { return batchNumber; }
+        public int getSize() { return size; }
+        public List<String> getFailedIds() { return failedIds; }
+        public String getResponse() { return response; }
+        public Throwable getError() { return error; }
+        public boolean isSuccess() { return error == null; }
+        public long getLatencyNanos() { return latencyNanos; }
+
+        @Override
+        public String toString() {
+            return "BatchResult{batch=" + batchNumber
+                    + ", size=" + size
+                    + ", latencyMs=" + latencyNanos / 1_000_000
+                    + (error == null ? "" : ", error=" + error.getMessage()) + "}";
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ai.vectorx;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * The load shedding an index puts in front of its calls: an optional
+ * {@link ConcurrencyLimiter} and an optional {@link CircuitBreaker}. Immutable, so an index
+ * swaps the whole guard when either part changes.
+ */
+final class CallGuard {
+    static final CallGuard NONE = new CallGuard(null, null);
+
+    final ConcurrencyLimiter limiter;
+    final CircuitBreaker breaker;
+
+    CallGuard(ConcurrencyLimiter limiter, CircuitBreaker breaker) {
+        this.limiter = limiter;
+        this.breaker = breaker;
+    }
+
+    /**
+     * Starts the call if both the limiter and the breaker admit it, and feeds its latency and
+     * outcome back to them. A rejected call never reaches the network: it fails at once with
+     * {@code RejectedExecutionException} and its request body is released.
+     *
+     * {@code send} receives a callback for the latency of the attempt that settled the call,
+     * so that retry backoff waits are not taken for a slow backend. When it is not called,
+     * as when a deadline ends the call, the whole call's time is used.
+     */
+    <T> CompletableFuture<HttpResponse<T>> run(HttpRequest request,
+                                               Function<LongConsumer, CompletableFuture<HttpResponse<T>>> send) {
+        if (limiter == null && breaker == null) {
+            return send.apply(null);
+        }
+        if (limiter != null && !limiter.tryAcquire()) {
+            MsgPackEncoder.releaseBody(request);
+            return CompletableFuture.failedFuture(new ConcurrencyLimiter.LimitExceededException(
+                    "Concurrency limit of " + limiter.getLimit() + " reached"));
+        }
+        CircuitBreaker.Permit permit = breaker == null ? CircuitBreaker.Permit.NORMAL : breaker.tryAcquire();
+        if (permit == CircuitBreaker.Permit.REJECTED) {
+            if (limiter != null) {
+                limiter.cancel();
+            }
+            MsgPackEncoder.releaseBody(request);
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Circuit breaker is open"));
+        }
+        long start = System.nanoTime();
+        // Written before the call's future completes, so the completion callback sees it
+        long[] attemptNanos = {-1};
+        CompletableFuture<HttpResponse<T>> exchange;
+        try {
+            exchange = send.apply(nanos -> attemptNanos[0] = nanos);
+        } catch (RuntimeException e) {
+            cancel(permit);
+            throw e;
+        }
+        exchange.whenComplete((response, error) -> release(permit,
+                attemptNanos[0] >= 0 ? attemptNanos[0] : System.nanoTime() - start, response, error));
+        return exchange;
+    }
+
+    private void release(CircuitBreaker.Permit permit, long latencyNanos, HttpResponse<?> response, Throwable error) {
+        Throwable cause = RetryingCall.unwrap(error);
+        if (cause instanceof CancellationException) {
+            cancel(permit);
+            return;
+        }
+        int status = cause == null ? response.statusCode() : RetryingCall.statusOf(cause);
+        boolean failure = status != 0 ? status >= 500 || status == 429 : cause instanceof IOException;
+        if (limiter != null) {
+            limiter.release(latencyNanos, failure);
+        }
+        if (breaker != null) {
+            breaker.record(permit, failure);
+        }
+    }
+
+    private void cancel(CircuitBreaker.Permit permit) {
+        if (limiter != null) {
+            limiter.cancel();
+        }
+        if (breaker != null) {
+            breaker.cancel(permit);
+        }
+    }
+}
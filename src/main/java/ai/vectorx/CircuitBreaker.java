@@ -0,0 +1,139 @@
+package ai.vectorx;
+
+import java.time.Duration;
+
+/**
+ * Fails an index's calls fast while its backend is failing, attached with
+ * {@code Index.setCircuitBreaker} or {@code HybridIndex.setCircuitBreaker}.
+ *
+ * While CLOSED, the outcomes of the last {@code windowSize} calls are kept. Once at least
+ * {@code minimumCalls} of them are recorded and the share of failures (5xx, 429, timeouts
+ * and I/O errors) reaches {@code failureRateThreshold}, the breaker OPENs. Every call is
+ * then rejected with {@code RejectedExecutionException} for {@code openDuration}, which
+ * gives the backend room to recover. After that one trial call is let through
+ * (HALF_OPEN). Its success closes the breaker with a fresh window, and its failure opens it
+ * again. Client errors such as 400 or 404 count as successes: they say nothing about the
+ * backend's health.
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    // What tryAcquire granted; only the TRIAL call's outcome can close the breaker
+    enum Permit { REJECTED, NORMAL, TRIAL }
+
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openNanos;
+    // Ring of recent outcomes, true for a failure; guarded by this
+    private final boolean[] outcomes;
+    private int next;
+    private int recorded;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+    private long rejected;
+
+    public CircuitBreaker() {
+        this(0.5, 50, 20, Duration.ofSeconds(10));
+    }
+
+    public CircuitBreaker(double failureRateThreshold, int windowSize, int minimumCalls, Duration openDuration) {
+        if (!(failureRateThreshold > 0 && failureRateThreshold <= 1)) {
+            throw new IllegalArgumentException("failureRateThreshold must be in (0, 1]");
+        }
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("Window must satisfy 1 <= minimumCalls <= windowSize");
+        }
+        if (openDuration == null || openDuration.isNegative()) {
+            throw new IllegalArgumentException("Open duration must be non-negative");
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.openNanos = openDuration.toNanos();
+        this.outcomes = new boolean[windowSize];
+    }
+
+    public double getFailureRateThreshold() { return failureRateThreshold; }
+    public int getWindowSize() { return outcomes.length; }
+    public int getMinimumCalls() { return minimumCalls; }
+    public Duration getOpenDuration() { return Duration.ofNanos(openNanos); }
+    public synchronized long getRejectedCount() { return rejected; }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    synchronized Permit tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.CLOSED) {
+            return Permit.NORMAL;
+        }
+        if (state == State.HALF_OPEN && !trialInFlight) {
+            trialInFlight = true;
+            return Permit.TRIAL;
+        }
+        rejected++;
+        return Permit.REJECTED;
+    }
+
+    // Returns a permit whose call never ran
+    synchronized void cancel(Permit permit) {
+        if (permit == Permit.TRIAL && state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    synchronized void record(Permit permit, boolean failure) {
+        if (permit == Permit.TRIAL) {
+            if (state == State.HALF_OPEN) {
+                if (failure) {
+                    open();
+                } else {
+                    state = State.CLOSED;
+                    clear();
+                }
+                trialInFlight = false;
+            }
+            return;
+        }
+        if (state != State.CLOSED) {
+            // Calls started before the breaker opened; the window restarts on close
+            return;
+        }
+        if (recorded == outcomes.length) {
+            failures -= outcomes[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failure;
+        failures += failure ? 1 : 0;
+        next = (next + 1) % outcomes.length;
+        if (recorded >= minimumCalls && failures >= failureRateThreshold * recorded) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        clear();
+    }
+
+    private void clear() {
+        next = 0;
+        recorded = 0;
+        failures = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker{state=" + getState() + ", failures=" + failures + "/" + recorded + ", rejected=" + rejected + "}";
+    }
+}
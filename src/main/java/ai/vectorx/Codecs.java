@@ -0,0 +1,38 @@
+package ai.vectorx;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.msgpack.core.MessagePack;
+
+import java.util.Map;
+
+/**
+ * Shared, preconfigured codecs.
+ *
+ * Building an {@code ObjectMapper} and warming its serializer caches costs far more than a
+ * single small metadata map, so the client builds one mapper at class load and hands out
+ * readers and writers bound to the types it actually moves. Readers, writers and the
+ * MessagePack configs are immutable and safe to share across threads; the mapper itself
+ * must never be reconfigured after startup.
+ */
+final class Codecs {
+    static final ObjectMapper JSON = new ObjectMapper();
+    static final JsonFactory JSON_FACTORY = JSON.getFactory();
+
+    // Metadata, filters, /info and getVector bodies
+    static final ObjectReader MAP_READER = JSON.readerFor(new TypeReference<Map<String, Object>>() {});
+    static final ObjectWriter MAP_WRITER = JSON.writerFor(new TypeReference<Map<String, Object>>() {});
+    // Request bodies of any shape
+    static final ObjectWriter JSON_WRITER = JSON.writer();
+    static final ObjectReader TREE_READER = JSON.reader();
+
+    // Upsert bodies are packed and query replies unpacked with msgpack-core directly
+    static final MessagePack.PackerConfig MSGPACK_PACKER = new MessagePack.PackerConfig();
+    static final MessagePack.UnpackerConfig MSGPACK_UNPACKER = new MessagePack.UnpackerConfig();
+
+    private Codecs() {
+    }
+}
@@ -0,0 +1,103 @@
+package ai.vectorx;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Adaptive cap on the calls an index has in flight, attached with
+ * {@code Index.setConcurrencyLimiter} or {@code HybridIndex.setConcurrencyLimiter}.
+ *
+ * The limit follows AIMD on observed latency. Each call that completes within
+ * {@code latencyThreshold} without an overload signal (5xx, 429, timeout or I/O error) adds
+ * {@code 1 / limit}, so the limit grows by about one per limit's worth of calls. Growth only
+ * happens while at least half the limit is in use. Each slow or overloaded call multiplies
+ * the limit by {@code backoffRatio}. Calls over the limit are not queued: they fail at once
+ * with {@code RejectedExecutionException}, so callers shed load instead of piling up
+ * threads on a degraded backend. Bulk upserts are the exception: they wait and resend a
+ * rejected batch, so the limit paces them instead of failing them.
+ *
+ * Latency is measured per attempt, so retry backoff waits do not count against the limit.
+ */
+public class ConcurrencyLimiter {
+    public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    // Guarded by this
+    private double limit;
+    private int inFlight;
+    private long rejected;
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold) {
+        this(initialLimit, minLimit, maxLimit, latencyThreshold, DEFAULT_BACKOFF_RATIO);
+    }
+
+    /**
+     * @param latencyThreshold calls slower than this count as a sign of overload
+     * @param backoffRatio     factor in (0, 1) the limit is multiplied by on overload
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold,
+                              double backoffRatio) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        if (latencyThreshold == null || latencyThreshold.isZero() || latencyThreshold.isNegative()) {
+            throw new IllegalArgumentException("Latency threshold must be positive");
+        }
+        if (!(backoffRatio > 0 && backoffRatio < 1)) {
+            throw new IllegalArgumentException("backoffRatio must be between 0 and 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.backoffRatio = backoffRatio;
+        this.limit = initialLimit;
+    }
+
+    public synchronized int getLimit() { return (int) limit; }
+    public synchronized int getInFlight() { return inFlight; }
+    public synchronized long getRejectedCount() { return rejected; }
+    public int getMinLimit() { return minLimit; }
+    public int getMaxLimit() { return maxLimit; }
+    public Duration getLatencyThreshold() { return Duration.ofNanos(latencyThresholdNanos); }
+    public double getBackoffRatio() { return backoffRatio; }
+
+    synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            rejected++;
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    // Returns a permit whose call never ran, without adjusting the limit
+    synchronized void cancel() {
+        inFlight--;
+    }
+
+    synchronized void release(long latencyNanos, boolean overloaded) {
+        if (overloaded || latencyNanos > latencyThresholdNanos) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        } else if (inFlight * 2 >= (int) limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        inFlight--;
+    }
+
+    // Rejection by the limit, which frees up as calls finish, unlike an open circuit breaker
+    static final class LimitExceededException extends RejectedExecutionException {
+        private static final long serialVersionUID = 1L;
+
+        LimitExceededException(String message) {
+            super(message);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ConcurrencyLimiter{limit=" + (int) limit + ", inFlight=" + inFlight + ", rejected=" + rejected + "}";
+    }
+}
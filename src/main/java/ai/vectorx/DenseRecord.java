@@ -0,0 +1,33 @@
+package ai.vectorx;
+
+import java.util.Map;
+
+/**
+ * A dense vector to upsert into an {@link Index}, held as a primitive array so it can be
+ * normalized and written to the wire without boxing.
+ */
+public class DenseRecord {
+    private final String id;
+    private final float[] vector;
+    private final Map<String, Object> meta;
+    private final Map<String, Object> filter;
+
+    public DenseRecord(String id, float[] vector) {
+        this(id, vector, null, null);
+    }
+
+    public DenseRecord(String id, float[] vector, Map<String, Object> meta, Map<String, Object> filter) {
+        if (vector == null) {
+            throw new IllegalArgumentException("Vector cannot be null for id: " + id);
+        }
+        this.id = id == null ? "" : id;
+        this.vector = vector;
+        this.meta = meta;
+        this.filter = filter;
+    }
+
+    public String getId() { return id; }
+    public float[] getVector() { return vector; }
+    public Map<String, Object> getMeta() { return meta; }
+    public Map<String, Object> getFilter() { return filter; }
+}
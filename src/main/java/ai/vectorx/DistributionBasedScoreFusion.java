@@ -0,0 +1,47 @@
+package ai.vectorx;
+
+/**
+ * Distribution-Based Score Fusion (DBSF).
+ *
+ * Each list is scaled by its own score distribution: mean - 3 standard deviations maps to 0
+ * and mean + 3 standard deviations to 1, clamped at the ends. The scaled scores are then
+ * summed with the given weights. Outliers therefore cannot stretch the range the way they do
+ * under min-max, and lists with very different score scales (cosine vs. BM25) combine evenly.
+ */
+public class DistributionBasedScoreFusion implements FusionStrategy {
+    private final double denseWeight;
+    private final double sparseWeight;
+    private final int limit;
+
+    public DistributionBasedScoreFusion() {
+        this(1.0, 1.0, 0);
+    }
+
+    public DistributionBasedScoreFusion(double denseWeight, double sparseWeight, int limit) {
+        Utils.checkFusionParams(denseWeight, sparseWeight, limit);
+        this.denseWeight = denseWeight;
+        this.sparseWeight = sparseWeight;
+        this.limit = limit;
+    }
+
+    public double getDenseWeight() { return denseWeight; }
+    public double getSparseWeight() { return sparseWeight; }
+    @Override
+    public int getLimit() { return limit; }
+
+    @Override
+    public void score(FusionCandidates candidates, double[] scores) {
+        ScoreStats dense = ScoreStats.of(candidates, true);
+        ScoreStats sparse = ScoreStats.of(candidates, false);
+        for (int slot = 0; slot < candidates.size(); slot++) {
+            double score = 0.0;
+            if (candidates.inDense(slot)) {
+                score += denseWeight * dense.distribution(candidates.getDenseScore(slot));
+            }
+            if (candidates.inSparse(slot)) {
+                score += sparseWeight * sparse.distribution(candidates.getSparseScore(slot));
+            }
+            scores[slot] = score;
+        }
+    }
+}
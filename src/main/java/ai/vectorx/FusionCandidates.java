@@ -0,0 +1,21 @@
+package ai.vectorx;
+
+/**
+ * Read-only view of the documents returned by a hybrid query, one slot per distinct ID.
+ *
+ * Slots run from 0 to {@code size() - 1}: dense hits first, then documents that only the
+ * sparse search returned, each in the order the response listed them. That order is not
+ * guaranteed to follow rank, so strategies should read the ranks rather than rely on slot
+ * order. Ranks are 1-based and 0 when the document is not in that list; scores are only
+ * defined when it is.
+ */
+public interface FusionCandidates {
+    int size();
+    String getId(int slot);
+    boolean inDense(int slot);
+    boolean inSparse(int slot);
+    int getDenseRank(int slot);
+    int getSparseRank(int slot);
+    double getDenseScore(int slot);
+    double getSparseScore(int slot);
+}
@@ -0,0 +1,21 @@
+package ai.vectorx;
+
+/**
+ * Combines the dense and sparse result lists of a hybrid query into one ranking.
+ *
+ * Built-in strategies are {@link ReciprocalRankFusion}, {@link LinearFusion},
+ * {@link DistributionBasedScoreFusion} and {@link MaxScoreFusion}. Score-based strategies
+ * usually keep recall with smaller {@code denseTopK}/{@code sparseTopK} than rank-based RRF,
+ * which cuts server work and payload size per query.
+ */
+public interface FusionStrategy {
+    /**
+     * Writes the fused score of each candidate slot into {@code scores}; higher ranks first.
+     */
+    void score(FusionCandidates candidates, double[] scores);
+
+    // Results to keep after fusion; 0 keeps all
+    default int getLimit() {
+        return 0;
+    }
+}
@@ -0,0 +1,171 @@
+package ai.vectorx;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Union of the dense and sparse hit lists keyed by document ID, laid out as parallel arrays.
+ *
+ * Each distinct ID gets a slot, numbered in first-seen order: dense hits first, then
+ * sparse-only hits. Lookup is an open-addressed table of slot numbers, so building the union
+ * costs a few array writes per hit instead of a map entry, and strategies score slots by
+ * index through {@link FusionCandidates}. A duplicate ID within one list keeps its last entry,
+ * as the map-based fusion this replaced did. Ties in the fused score go to the ID seen first;
+ * the map-based fusion left them in hash order.
+ */
+final class HitTable implements FusionCandidates {
+    private final int[] table;
+    private final int mask;
+    private final String[] ids;
+    private final SearchResponseDecoder.Hit[] dense;
+    private final SearchResponseDecoder.Hit[] sparse;
+    private int size;
+
+    HitTable(List<SearchResponseDecoder.Hit> denseHits, List<SearchResponseDecoder.Hit> sparseHits) {
+        int capacity = denseHits.size() + sparseHits.size();
+        int tableSize = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1) << 1;
+        this.table = new int[tableSize];
+        this.mask = tableSize - 1;
+        this.ids = new String[capacity];
+        this.dense = new SearchResponseDecoder.Hit[capacity];
+        this.sparse = new SearchResponseDecoder.Hit[capacity];
+        for (SearchResponseDecoder.Hit hit : denseHits) {
+            dense[slot(hit.id)] = hit;
+        }
+        for (SearchResponseDecoder.Hit hit : sparseHits) {
+            sparse[slot(hit.id)] = hit;
+        }
+    }
+
+    /**
+     * Scores the union of both lists with {@code strategy} and builds the top results, with
+     * metadata limited to {@code includeFields} unless it is null.
+     */
+    static SearchResponse fuse(FusionStrategy strategy, SearchResponseDecoder.Result data, boolean includeVectors,
+                               Set<String> includeFields) {
+        HitTable hits = new HitTable(data.dense, data.sparse);
+        int count = hits.size();
+        double[] scores = new double[count];
+        strategy.score(hits, scores);
+
+        int[] order = top(scores, count, strategy.getLimit());
+        SearchResult[] results = new SearchResult[order.length];
+        for (int i = 0; i < order.length; i++) {
+            results[i] = hits.result(order[i], scores[order[i]], data.metadata, includeVectors, includeFields);
+        }
+        return new SearchResponse(results);
+    }
+
+    @Override public int size() { return size; }
+    @Override public String getId(int slot) { return ids[slot]; }
+    @Override public boolean inDense(int slot) { return dense[slot] != null; }
+    @Override public boolean inSparse(int slot) { return sparse[slot] != null; }
+    @Override public int getDenseRank(int slot) { return dense[slot] == null ? 0 : dense[slot].rank; }
+    @Override public int getSparseRank(int slot) { return sparse[slot] == null ? 0 : sparse[slot].rank; }
+    @Override public double getDenseScore(int slot) { return dense[slot] == null ? Double.NaN : dense[slot].score; }
+    @Override public double getSparseScore(int slot) { return sparse[slot] == null ? Double.NaN : sparse[slot].score; }
+
+    /**
+     * Builds the public result for a slot. The dense vector is preferred when the document is
+     * in both lists.
+     */
+    SearchResult result(int slot, double score, Map<String, String> metadata, boolean includeVectors,
+                        Set<String> includeFields) {
+        String id = ids[slot];
+        float[] vector = null;
+        if (includeVectors) {
+            vector = dense[slot] != null ? dense[slot].vector : sparse[slot].vector;
+        }
+        return new SearchResult(id, score, getDenseRank(slot), getSparseRank(slot),
+                getDenseScore(slot), getSparseScore(slot), vector, metadata.get(id), metadata.containsKey(id),
+                includeFields);
+    }
+
+    /**
+     * Slots of the {@code limit} highest scores, best first; {@code limit <= 0} keeps all.
+     * Selection uses a bounded min-heap, so it is O(n log limit) and only the winners are
+     * ordered. Ties go to the lower slot.
+     */
+    static int[] top(double[] scores, int count, int limit) {
+        int keep = limit <= 0 ? count : Math.min(limit, count);
+        int[] heap = new int[keep];
+        int heapSize = 0;
+        for (int slot = 0; slot < count; slot++) {
+            if (heapSize < keep) {
+                heap[heapSize] = slot;
+                siftUp(heap, heapSize++, scores);
+            } else if (keep > 0 && better(slot, heap[0], scores)) {
+                heap[0] = slot;
+                siftDown(heap, heapSize, scores);
+            }
+        }
+        // Pop the worst remaining into the back so the array ends up best first
+        for (int end = heapSize - 1; end > 0; end--) {
+            int worst = heap[0];
+            heap[0] = heap[end];
+            heap[end] = worst;
+            siftDown(heap, end, scores);
+        }
+        return heap;
+    }
+
+    private int slot(String id) {
+        int i = spread(id.hashCode()) & mask;
+        while (true) {
+            int entry = table[i];
+            if (entry == 0) {
+                ids[size] = id;
+                table[i] = ++size;
+                return size - 1;
+            }
+            if (ids[entry - 1].equals(id)) {
+                return entry - 1;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean better(int a, int b, double[] scores) {
+        int cmp = Double.compare(scores[a], scores[b]);
+        return cmp > 0 || (cmp == 0 && a < b);
+    }
+
+    // Min-heap on "better": the root is the weakest slot kept so far
+    private static void siftUp(int[] heap, int i, double[] scores) {
+        int slot = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(heap[parent], slot, scores)) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = slot;
+    }
+
+    private static void siftDown(int[] heap, int size, double[] scores) {
+        int i = 0;
+        int slot = heap[0];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && better(heap[child], heap[child + 1], scores)) {
+                child++;
+            }
+            if (!better(slot, heap[child], scores)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = slot;
+    }
+}
@@ -1,43 +1,52 @@
 package ai.vectorx;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.msgpack.jackson.dataformat.MessagePackFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.msgpack.core.MessagePacker;
 
-import java.net.URI;
-import java.net.http.HttpClient;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
-import static ai.vectorx.Utils.jsonUnzip;
+import static ai.vectorx.Utils.await;
 import static ai.vectorx.Utils.jsonZip;
 
 public class HybridIndex {
-    private HttpClient apiClient;
+    private ApiClient apiClient;
     private String name;
     private String token;
     private String url;
     private int version;
-    private String libToken;
-    private int count;
+    private volatile String libToken;
+    private volatile int count;
     private String spaceType;
     private int dimension;
     private int vocabSize;
     private String precision;
     private int M;
-    private ObjectMapper msgPackMapper;
-    private ObjectMapper jsonMapper;
+    private long streamingThreshold = StreamingBody.DEFAULT_THRESHOLD;
+    private int compressionLevel = MetadataCodec.DEFAULT_LEVEL;
+    private VectorEncoding vectorEncoding = VectorEncoding.FLOAT32;
+    private SparsePruning sparsePruning = SparsePruning.NONE;
+    private volatile QueryCache queryCache;
+    private volatile CallGuard guard = CallGuard.NONE;
 
     public HybridIndex(String name, String token, String url, int version, HybridIndexParams params) {
+        this(name, token, new ApiClient(url), version, params);
+    }
+
+    public HybridIndex(String name, String token, ApiClient apiClient, int version, HybridIndexParams params) {
         this.name = name;
         this.token = token;
-        this.url = url;
+        this.url = apiClient.getBaseUrl();
         this.version = version;
         this.libToken = params.getLibToken();
         this.count = params.getTotalElements();
@@ -47,633 +56,616 @@ public class HybridIndex {
         this.vocabSize = params.getVocabSize();
         this.M = params.getM();
 
-        this.apiClient = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_2)
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
-
-        // Properly configure MessagePack mapper
-        this.msgPackMapper = new ObjectMapper(new MessagePackFactory());
-        this.jsonMapper = new ObjectMapper();
+        this.apiClient = apiClient;
     }
 
-    public String upsert(List<Map<String, Object>> inputArray) throws Exception {
-        if (inputArray.size() > 1000) {
-            throw new IllegalArgumentException("Cannot insert more than 1000 vectors at a time");
+    // Applies a fresh /info result; false when the index now has a different layout
+    boolean refresh(HybridIndexParams params) {
+        String precision = params.isUseFp16() ? "float16" : "float32";
+        if (params.getDimension() != this.dimension || params.getVocabSize() != this.vocabSize
+                || !Objects.equals(params.getSpaceType(), this.spaceType)
+                || !precision.equals(this.precision) || params.getM() != this.M) {
+            return false;
         }
+        this.libToken = params.getLibToken();
+        this.count = params.getTotalElements();
+        return true;
+    }
 
-        List<Map<String, Object>> vectorBatch = new ArrayList<>();
-
-        for (Map<String, Object> item : inputArray) {
-            String vectorId = String.valueOf(item.getOrDefault("id", ""));
-
-            // Handle dense vector - could be List<Double>, List<Float>, double[], or
-            // float[]
-            List<Double> denseVector = extractDenseVector(item.get("dense_vector"));
-
-            // Normalize dense vector and get norm
-            NormalizationResult normResult = normalizeVector(denseVector);
-
-            // Handle sparse vector
-            Map<String, Object> sparseVector = (Map<String, Object>) item.getOrDefault("sparse_vector",
-                    new HashMap<>());
-            List<Integer> indices = extractIntegerList(sparseVector.get("indices"));
-            List<Double> values = extractDoubleList(sparseVector.get("values"));
-
-            // Handle metadata
-            Map<String, Object> meta = (Map<String, Object>) item.getOrDefault("meta", new HashMap<>());
-            byte[] metaByte = jsonZip(meta);
-            String metaB64 = Base64.getEncoder().encodeToString(metaByte);
-
-            // Create hybrid vector object matching Python structure exactly
-            Map<String, Object> hybridVector = new LinkedHashMap<>();
-            hybridVector.put("id", vectorId);
-
-            // Convert to float list to match Python's tolist() behavior
-            List<Float> denseVectorFloats = normResult.normalizedVector.stream()
-                    .map(Double::floatValue)
-                    .collect(Collectors.toList());
-            hybridVector.put("dense_vector", denseVectorFloats);
-
-            hybridVector.put("indices", indices);
-
-            // Convert values to float list
-            List<Float> valuesFloats = values.stream()
-                    .map(Double::floatValue)
-                    .collect(Collectors.toList());
-            hybridVector.put("values", valuesFloats);
-
-            hybridVector.put("dense_norm", (float) normResult.norm);
-            hybridVector.put("meta", metaB64);
-
-            vectorBatch.add(hybridVector);
-        }
-
-        // Debug: Print the structure of the first vector
-//        if (!vectorBatch.isEmpty()) {
-//            System.out.println("Sample vector structure:");
-//            Map<String, Object> sample = vectorBatch.get(0);
-//            for (Map.Entry<String, Object> entry : sample.entrySet()) {
-//                Object value = entry.getValue();
-//                String valueInfo;
-//                if (value instanceof List) {
-//                    List<?> list = (List<?>) value;
-//                    valueInfo = value.getClass().getSimpleName() + " (size=" + list.size() +
-//                            ", first few: " + (list.size() > 3 ? list.subList(0, 3) + "..." : list) + ")";
-//                } else {
-//                    valueInfo = value.getClass().getSimpleName() + " = " + value;
-//                }
-//                System.out.println("  " + entry.getKey() + ": " + valueInfo);
-//            }
-//        }
-
-        byte[] serialized;
-        String contentType;
+    /**
+     * Upsert batches whose estimated size reaches this many bytes are encoded chunk by chunk
+     * while they are sent, instead of into one array first. Use {@code Long.MAX_VALUE} to
+     * always send a fixed-length body.
+     */
+    public void setStreamingThreshold(long bytes) {
+        this.streamingThreshold = bytes;
+    }
 
-        try {
-            // Try MessagePack first
-            serialized = msgPackMapper.writeValueAsBytes(vectorBatch);
-            contentType = "application/msgpack";
-//            System.out.println("Using MessagePack serialization" + serialized);
-        } catch (Exception e) {
-            System.err.println("MessagePack serialization failed, using JSON fallback: " + e.getMessage());
-            // Fallback to JSON if MessagePack fails
-            serialized = jsonMapper.writeValueAsBytes(vectorBatch);
-            contentType = "application/json";
+    /**
+     * zlib level for metadata, from 0 (store) to 9 (smallest); -1 selects the zlib default.
+     * Lower levels trade size on the wire for less CPU per upserted record.
+     */
+    public void setCompressionLevel(int level) {
+        MetadataCodec.checkLevel(level);
+        this.compressionLevel = level;
+    }
 
-            // Print JSON for debugging
-            String jsonStr = jsonMapper.writerWithDefaultPrettyPrinter()
-                    .writeValueAsString(vectorBatch.size() > 0 ? Arrays.asList(vectorBatch.get(0)) : vectorBatch);
-            System.out.println("Sample JSON being sent:");
-            System.out.println(jsonStr);
+    /**
+     * Wire format for upserted vectors. {@link VectorEncoding#FLOAT16} halves the payload and
+     * is only accepted on indexes that store float16.
+     */
+    public void setVectorEncoding(VectorEncoding encoding) {
+        if (encoding == null) {
+            throw new IllegalArgumentException("Vector encoding cannot be null");
         }
-
-        return makeRequest(serialized, contentType);
+        if (encoding == VectorEncoding.FLOAT16 && !"float16".equals(this.precision)) {
+            throw new IllegalArgumentException("FLOAT16 encoding requires an index created with useFp16");
+        }
+        this.vectorEncoding = encoding;
     }
 
-    private String makeRequest(byte[] serialized, String contentType) throws Exception {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url + "/hybrid/" + name + "/add"))
-                .header("Authorization", token)
-                .header("Content-Type", contentType)
-                .POST(HttpRequest.BodyPublishers.ofByteArray(serialized))
-                .build();
-
-        HttpResponse<String> response = apiClient.send(request, HttpResponse.BodyHandlers.ofString());
+    public VectorEncoding getVectorEncoding() {
+        return vectorEncoding;
+    }
 
-        if (response.statusCode() != 200 && response.statusCode() != 201) {
-            System.err.println("Error in inserting vector: " + response.body());
-            System.err.println("Request URL: " + request.uri());
-            System.err.println("Content-Type: " + contentType);
-            System.err.println("Data size: " + serialized.length + " bytes");
-            throw new RuntimeException("Failed with code: " + response.statusCode() + ", body: " + response.body());
+    /**
+     * Prunes the sparse part of every search and query before it is sent. Cached responses
+     * are keyed by the pruned terms, so queries that prune to the same terms share an entry.
+     */
+    public void setSparsePruning(SparsePruning pruning) {
+        if (pruning == null) {
+            throw new IllegalArgumentException("Sparse pruning cannot be null");
         }
+        this.sparsePruning = pruning;
+    }
 
-        return "Hybrid vectors inserted successfully";
+    public SparsePruning getSparsePruning() {
+        return sparsePruning;
     }
 
-    private List<Double> extractDenseVector(Object denseVectorObj) {
-        if (denseVectorObj == null) {
-            return new ArrayList<>();
-        }
+    /**
+     * Serves repeated searches from {@code cache} until they expire or this index upserts or
+     * deletes. Pass null to turn caching off.
+     */
+    public void setQueryCache(QueryCache cache) {
+        this.queryCache = cache;
+    }
 
-        if (denseVectorObj instanceof List) {
-            List<?> list = (List<?>) denseVectorObj;
-            return list.stream()
-                    .map(this::convertToDouble)
-                    .collect(Collectors.toList());
-        } else if (denseVectorObj instanceof double[]) {
-            double[] array = (double[]) denseVectorObj;
-            return Arrays.stream(array).boxed().collect(Collectors.toList());
-        } else if (denseVectorObj instanceof float[]) {
-            float[] array = (float[]) denseVectorObj;
-            return IntStream.range(0, array.length)
-                    .mapToDouble(i -> array[i])
-                    .boxed()
-                    .collect(Collectors.toList());
-        } else {
-            throw new IllegalArgumentException("Unsupported dense vector format: " + denseVectorObj.getClass());
-        }
+    public QueryCache getQueryCache() {
+        return queryCache;
     }
 
-    private List<Integer> extractIntegerList(Object obj) {
-        if (obj == null) {
-            return new ArrayList<>();
-        }
-        if (obj instanceof List) {
-            List<?> list = (List<?>) obj;
-            return list.stream()
-                    .map(item -> {
-                        if (item instanceof Number) {
-                            return ((Number) item).intValue();
-                        } else if (item instanceof String) {
-                            try {
-                                return Integer.parseInt((String) item);
-                            } catch (NumberFormatException e) {
-                                throw new IllegalArgumentException("Cannot convert string to integer: " + item);
-                            }
-                        }
-                        throw new IllegalArgumentException("Cannot convert to integer: " + item);
-                    })
-                    .collect(Collectors.toList());
-        } else if (obj instanceof int[]) {
-            int[] array = (int[]) obj;
-            return Arrays.stream(array).boxed().collect(Collectors.toList());
-        }
-        return new ArrayList<>();
+    /**
+     * Caps this index's calls in flight, adapting the cap to observed latency. Calls over
+     * the cap fail with {@code RejectedExecutionException}. Cached hits are
+     * not counted. Pass null to remove the cap.
+     */
+    public synchronized void setConcurrencyLimiter(ConcurrencyLimiter limiter) {
+        this.guard = new CallGuard(limiter, guard.breaker);
     }
 
-    private List<Double> extractDoubleList(Object obj) {
-        if (obj == null) {
-            return new ArrayList<>();
-        }
-        if (obj instanceof List) {
-            List<?> list = (List<?>) obj;
-            return list.stream()
-                    .map(this::convertToDouble)
-                    .collect(Collectors.toList());
-        } else if (obj instanceof double[]) {
-            double[] array = (double[]) obj;
-            return Arrays.stream(array).boxed().collect(Collectors.toList());
-        } else if (obj instanceof float[]) {
-            float[] array = (float[]) obj;
-            return IntStream.range(0, array.length)
-                    .mapToDouble(i -> array[i])
-                    .boxed()
-                    .collect(Collectors.toList());
-        }
-        return new ArrayList<>();
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return guard.limiter;
     }
 
-    private Double convertToDouble(Object obj) {
-        if (obj instanceof Number) {
-            return ((Number) obj).doubleValue();
-        } else if (obj instanceof String) {
-            try {
-                return Double.parseDouble((String) obj);
-            } catch (NumberFormatException e) {
-                throw new IllegalArgumentException("Cannot convert string to double: " + obj);
-            }
-        }
-        throw new IllegalArgumentException("Cannot convert to double: " + obj);
+    /**
+     * Fails this index's calls fast while its backend is failing. Pass null to remove the breaker.
+     */
+    public synchronized void setCircuitBreaker(CircuitBreaker breaker) {
+        this.guard = new CallGuard(guard.limiter, breaker);
     }
 
-    // Normalization result class
-    private static class NormalizationResult {
-        List<Double> normalizedVector;
-        double norm;
+    public CircuitBreaker getCircuitBreaker() {
+        return guard.breaker;
+    }
 
-        NormalizationResult(List<Double> normalizedVector, double norm) {
-            this.normalizedVector = normalizedVector;
-            this.norm = norm;
-        }
+    public String upsert(List<Map<String, Object>> inputArray) throws Exception {
+        return await(upsertAsync(inputArray));
     }
 
-    // Normalize vector and return both normalized vector and norm
-    private NormalizationResult normalizeVector(List<Double> vector) {
-        if (vector.isEmpty()) {
-            return new NormalizationResult(new ArrayList<>(), 0.0);
+    /**
+     * Non-blocking variant of {@link #upsert(List)}. The batch is serialized on the calling
+     * thread; the request and response handling run on the client's executor.
+     */
+    public CompletableFuture<String> upsertAsync(List<Map<String, Object>> inputArray) {
+        if (inputArray.size() > 1000) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Cannot insert more than 1000 vectors at a time"));
         }
 
-        // Calculate L2 norm
-        double norm = Math.sqrt(vector.stream()
-                .mapToDouble(Double::doubleValue)
-                .map(x -> x * x)
-                .sum());
-
-        if (norm == 0.0) {
-            return new NormalizationResult(new ArrayList<>(vector), 0.0);
+        try {
+            return makeRequestAsync(encodeUpsert(inputArray));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
         }
+    }
+
+    /**
+     * Upserts any number of hybrid vectors. The input is split into batches of at most 1000,
+     * and the next batch is serialized while up to {@code maxConcurrency} earlier batches are in
+     * flight. The calling thread blocks when that limit is reached. Failed batches do not stop
+     * the run; their IDs are reported in the result.
+     *
+     * @param onBatch called with each batch result as it completes, may be null
+     */
+    public BulkUpsertResult upsertBulk(Iterator<Map<String, Object>> items, int batchSize, int maxConcurrency,
+                                       Consumer<BulkUpsertResult.BatchResult> onBatch) throws Exception {
+        return new BulkUpsert<Map<String, Object>>(this::encodeUpsert, this::makeRequestAsync,
+                item -> String.valueOf(item.getOrDefault("id", "")), batchSize, maxConcurrency, onBatch,
+                apiClient.getRetryPolicy())
+                .run(items);
+    }
 
-        // Normalize vector
-        List<Double> normalizedVector = vector.stream()
-                .map(x -> x / norm)
-                .collect(Collectors.toList());
+    public BulkUpsertResult upsertBulk(Iterator<Map<String, Object>> items) throws Exception {
+        return upsertBulk(items, BulkUpsert.MAX_BATCH_SIZE, BulkUpsert.DEFAULT_CONCURRENCY, null);
+    }
 
-        return new NormalizationResult(normalizedVector, norm);
+    public BulkUpsertResult upsertBulk(Stream<Map<String, Object>> items) throws Exception {
+        return upsertBulk(items.iterator());
     }
 
-    // Encode metadata to Base64
-    private String encodeMetaToBase64(Map<String, Object> meta) throws Exception {
-        byte[] jsonBytes = jsonMapper.writeValueAsBytes(meta);
-        return Base64.getEncoder().encodeToString(jsonBytes);
+    /**
+     * Upserts typed records. Dense and sparse arrays go from their primitive form straight
+     * to the wire without intermediate collections.
+     */
+    public String upsertRecords(List<HybridRecord> records) throws Exception {
+        return await(upsertRecordsAsync(records));
     }
 
-    private Map<String, Object> decodeMetaFromBase64(String encodedMeta) {
-        if (encodedMeta == null || encodedMeta.trim().isEmpty()) {
-            return new HashMap<>();
+    public CompletableFuture<String> upsertRecordsAsync(List<HybridRecord> records) {
+        if (records.size() > 1000) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Cannot insert more than 1000 vectors at a time"));
         }
 
         try {
-            byte[] jsonBytes = Base64.getDecoder().decode(encodedMeta.trim());
-
-            if (jsonBytes.length == 0) {
-                return new HashMap<>();
-            }
-
-            String jsonString = new String(jsonBytes, StandardCharsets.UTF_8).trim();
-
-            if (jsonString.isEmpty() || jsonString.equals("null")) {
-                return new HashMap<>();
-            }
-
-            return jsonMapper.readValue(jsonString, new TypeReference<Map<String, Object>>() {
-            });
+            return makeRequestAsync(encodeRecords(records));
         } catch (Exception e) {
-            System.out.println("Warning: Failed to decode/parse metadata: " + e.getMessage());
-            return new HashMap<>();
+            return CompletableFuture.failedFuture(e);
         }
     }
 
-    //
-    public List<Map<String, Object>> search(List<Double> denseVector, Map<String, Object> sparseVector,
-            int sparseTopK, int denseTopK, boolean includeVectors, int rrfK) throws Exception {
+    public BulkUpsertResult upsertRecordsBulk(Iterator<HybridRecord> records, int batchSize, int maxConcurrency,
+                                              Consumer<BulkUpsertResult.BatchResult> onBatch) throws Exception {
+        return new BulkUpsert<HybridRecord>(this::encodeRecords, this::makeRequestAsync,
+                HybridRecord::getId, batchSize, maxConcurrency, onBatch, apiClient.getRetryPolicy())
+                .run(records);
+    }
 
-        // Validation
-        if (sparseTopK > 256) {
-            throw new IllegalArgumentException("sparse_top_k cannot be greater than 256");
-        }
-        if (denseTopK > 256) {
-            throw new IllegalArgumentException("dense_top_k cannot be greater than 256");
-        }
+    public BulkUpsertResult upsertRecordsBulk(Iterator<HybridRecord> records) throws Exception {
+        return upsertRecordsBulk(records, BulkUpsert.MAX_BATCH_SIZE, BulkUpsert.DEFAULT_CONCURRENCY, null);
+    }
 
-        // Normalize dense query vector (ignoring encryption)
-        NormalizationResult normalizedDense = normalizeVector(denseVector);
+    private HttpRequest encodeUpsert(List<Map<String, Object>> inputArray) throws Exception {
+        List<HybridRecord> records = new ArrayList<>(inputArray.size());
+        for (Map<String, Object> item : inputArray) {
+            // Handle dense vector - could be List<Double>, List<Float>, double[], or
+            // float[]
+            float[] denseVector = toFloatArray(item.get("dense_vector"));
 
-        List<Integer> sparseIndices = (List<Integer>) sparseVector.getOrDefault("indices", new ArrayList<>());
-        List<Double> sparseValues = (List<Double>) sparseVector.getOrDefault("values", new ArrayList<>());
+            // Handle sparse vector
+            Map<String, Object> sparseVector = (Map<String, Object>) item.getOrDefault("sparse_vector",
+                    new HashMap<>());
 
-        List<Map<String, Object>> sparseQuery = new ArrayList<>();
-        for (int i = 0; i < Math.min(sparseIndices.size(), sparseValues.size()); i++) {
-            Map<String, Object> item = new HashMap<>();
-            item.put("index", sparseIndices.get(i));
-            item.put("value", sparseValues.get(i));
-            sparseQuery.add(item);
+            records.add(new HybridRecord(
+                    String.valueOf(item.getOrDefault("id", "")),
+                    denseVector,
+                    toIntArray(sparseVector.get("indices")),
+                    toFloatArray(sparseVector.get("values")),
+                    (Map<String, Object>) item.get("meta"),
+                    false));
         }
+        return encodeRecords(records);
+    }
 
-        Map<String, Object> requestData = new HashMap<>();
-        requestData.put("dense_vector", normalizedDense.normalizedVector);
-        requestData.put("sparse_vector", sparseQuery);
-        requestData.put("sparse_top_k", sparseTopK);
-        requestData.put("dense_top_k", denseTopK);
-        requestData.put("include_vectors", includeVectors);
-
-
-        String jsonBody = jsonMapper.writeValueAsString(requestData);
+    private HttpRequest encodeRecords(List<HybridRecord> records) throws Exception {
+        for (HybridRecord record : records) {
+            SparseVector.checkIndices(record.getSparseIndices(), vocabSize);
+        }
+        HttpRequest.BodyPublisher body;
+        long estimatedSize = (long) records.size() * (vectorSize() + 128);
+        if (estimatedSize >= streamingThreshold) {
+            // Large batches are packed chunk by chunk as the client sends them
+            body = new StreamingBody(records.size(), (encoder, i) -> packRecord(encoder, records.get(i)));
+        } else {
+            MsgPackEncoder encoder = MsgPackEncoder.open((int) estimatedSize);
+            encoder.packer().packArrayHeader(records.size());
+            for (HybridRecord record : records) {
+                packRecord(encoder, record);
+            }
+            body = encoder.finish();
+        }
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url + "/hybrid/" + name + "/search_separate"))
+        return apiClient.request("/hybrid/" + name + "/add")
                 .header("Authorization", token)
-                .header("Content-Type", "application/json")
-                .timeout(Duration.ofSeconds(30))
-                .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
+                .header("Content-Type", "application/msgpack")
+                .POST(body)
                 .build();
+    }
 
-        // Send request
-        HttpResponse<String> response = apiClient.send(request, HttpResponse.BodyHandlers.ofString());
+    // Pack each record as a map matching the Python client's structure, straight into the body buffer
+    private void packRecord(MsgPackEncoder encoder, HybridRecord record) throws IOException {
+        MessagePacker packer = encoder.packer();
+
+        // Normalize dense vector and get norm
+        float[] denseVector = record.getDenseVector();
+        double norm = norm(denseVector);
+
+        // Handle metadata
+        byte[] metaByte = jsonZip(record.getMeta(), compressionLevel);
+        String metaB64 = Base64.getEncoder().encodeToString(metaByte);
+
+        packer.packMapHeader(6);
+        packer.packString("id");
+        packer.packString(record.getId());
+        packer.packString("dense_vector");
+        encoder.packVector(denseVector, norm == 0.0 ? 1.0 : norm, vectorEncoding);
+        packer.packString("indices");
+        encoder.packInts(record.getSparseIndices());
+        packer.packString("values");
+        encoder.packFloats(record.getSparseValues(), 1.0);
+        packer.packString("dense_norm");
+        packer.packFloat((float) norm);
+        packer.packString("meta");
+        packer.packString(metaB64);
+    }
 
-        if (response.statusCode() != 200 && response.statusCode() != 201) {
-            throw new RuntimeException("HTTP request failed with status: " + response.statusCode() +
-                    ", body: " + response.body());
-        }
+    private CompletableFuture<String> makeRequestAsync(HttpRequest request) {
+        CompletableFuture<String> future = apiClient.sendAsync(request, HttpResponse.BodyHandlers.ofString(),
+                ApiClient.Call.WRITE, guard, response -> {
+            if (response.statusCode() != 200 && response.statusCode() != 201) {
+                throw new ApiClient.StatusException(response.statusCode(), "Error in inserting vector, status: "
+                        + response.statusCode() + ", body: " + response.body() + ", url: " + request.uri()
+                        + ", content type: " + request.headers().firstValue("Content-Type").orElse("")
+                        + ", size: " + request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(-1L)
+                        + " bytes");
+            }
+            return "Hybrid vectors inserted successfully";
+        });
+        return invalidatingCache(future);
+    }
 
-        // Parse response
-        JsonNode results = jsonMapper.readTree(response.body());
+    // Clears the query cache when a write is sent and again once it settles, so searches that
+    // raced with it are not kept
+    private <T> CompletableFuture<T> invalidatingCache(CompletableFuture<T> write) {
+        QueryCache cache = queryCache;
+        if (cache != null) {
+            cache.invalidateAll();
+            write.whenComplete((result, error) -> cache.invalidateAll());
+        }
+        return write;
+    }
 
-        // Process results
-        Map<String, Object> processedResults = processSearchResults(results, includeVectors);
+    // Upserted bytes per dense vector, for sizing request bodies
+    private int vectorSize() {
+        return this.dimension * vectorEncoding.bytesPerValue();
+    }
 
-        // Validate RRF input (simplified validation)
-        if (!validateRrfInput(processedResults)) {
-            throw new IllegalArgumentException("RRF validation failed");
+    // The {"indices", "values"} map form of a sparse query. As it always has, a longer list is
+    // cut to the length of the shorter one
+    private SparseVector toSparseVector(Map<String, Object> sparseVector) {
+        if (sparseVector == null) {
+            return SparseVector.EMPTY;
         }
+        int[] indices = toIntArray(sparseVector.get("indices"));
+        float[] values = toFloatArray(sparseVector.get("values"));
+        int length = Math.min(indices.length, values.length);
+        return new SparseVector(Arrays.copyOf(indices, length), Arrays.copyOf(values, length));
+    }
 
-        // Apply RRF fusion
-        List<Map<String, Object>> fusedResults = reciprocalRankFusion(processedResults, rrfK);
-
-        // Clean up vector data if not requested
-        if (!includeVectors) {
-            for (Map<String, Object> result : fusedResults) {
-                result.remove("vector");
+    private float[] toFloatArray(Object obj) {
+        if (obj == null) {
+            return new float[0];
+        }
+        if (obj instanceof float[]) {
+            return (float[]) obj;
+        } else if (obj instanceof double[]) {
+            double[] array = (double[]) obj;
+            float[] result = new float[array.length];
+            for (int i = 0; i < array.length; i++) {
+                result[i] = (float) array[i];
+            }
+            return result;
+        } else if (obj instanceof List) {
+            List<?> list = (List<?>) obj;
+            float[] result = new float[list.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = convertToDouble(list.get(i)).floatValue();
             }
+            return result;
         }
+        throw new IllegalArgumentException("Unsupported vector format: " + obj.getClass());
+    }
 
-        return fusedResults;
+    private int[] toIntArray(Object obj) {
+        if (obj == null) {
+            return new int[0];
+        }
+        if (obj instanceof int[]) {
+            return (int[]) obj;
+        } else if (obj instanceof List) {
+            List<?> list = (List<?>) obj;
+            int[] result = new int[list.size()];
+            for (int i = 0; i < result.length; i++) {
+                Object item = list.get(i);
+                if (item instanceof Number) {
+                    result[i] = ((Number) item).intValue();
+                } else if (item instanceof String) {
+                    try {
+                        result[i] = Integer.parseInt((String) item);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Cannot convert string to integer: " + item);
+                    }
+                } else {
+                    throw new IllegalArgumentException("Cannot convert to integer: " + item);
+                }
+            }
+            return result;
+        }
+        return new int[0];
     }
 
-    private List<Map<String, Object>> reciprocalRankFusion(Map<String, Object> data, int k) {
-        List<Map<String, Object>> denseResults = (List<Map<String, Object>>) data.getOrDefault("dense_results",
-                new ArrayList<>());
-        List<Map<String, Object>> sparseResults = (List<Map<String, Object>>) data.getOrDefault("sparse_results",
-                new ArrayList<>());
-        List<Map<String, Object>> metadata = (List<Map<String, Object>>) data.getOrDefault("metadata",
-                new ArrayList<>());
+    private Double convertToDouble(Object obj) {
+        if (obj instanceof Number) {
+            return ((Number) obj).doubleValue();
+        } else if (obj instanceof String) {
+            try {
+                return Double.parseDouble((String) obj);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Cannot convert string to double: " + obj);
+            }
+        }
+        throw new IllegalArgumentException("Cannot convert to double: " + obj);
+    }
 
-        // Create dictionaries for quick lookup
-        Map<String, Integer> denseRankMap = new HashMap<>();
-        Map<String, Integer> sparseRankMap = new HashMap<>();
+    private double norm(float[] vector) {
+        return Math.sqrt(VectorKernels.INSTANCE.sumOfSquares(vector));
+    }
 
-        for (Map<String, Object> doc : denseResults) {
-            denseRankMap.put((String) doc.get("id"), (Integer) doc.get("rank"));
+    // Unit-length float copy of a dense query, normalized with the same kernels as upserts
+    private float[] normalizeQuery(List<Double> vector) {
+        float[] values = toFloatArray(vector);
+        double norm = norm(values);
+        if (norm != 0.0) {
+            VectorKernels.INSTANCE.divide(values, norm, values);
         }
+        return values;
+    }
 
-        for (Map<String, Object> doc : sparseResults) {
-            sparseRankMap.put((String) doc.get("id"), (Integer) doc.get("rank"));
-        }
+    //
+    public List<Map<String, Object>> search(List<Double> denseVector, Map<String, Object> sparseVector,
+            int sparseTopK, int denseTopK, boolean includeVectors, int rrfK) throws Exception {
+        return await(searchAsync(denseVector, sparseVector, sparseTopK, denseTopK, includeVectors, rrfK));
+    }
 
-        // Create lookup maps for scores and vectors
-        Map<String, Map<String, Object>> denseDataMap = new HashMap<>();
-        Map<String, Map<String, Object>> sparseDataMap = new HashMap<>();
+    /**
+     * Non-blocking variant of {@link #search}. Fusion runs on the client's executor once the
+     * response arrives; cancelling the returned future cancels the request.
+     */
+    public CompletableFuture<List<Map<String, Object>>> searchAsync(List<Double> denseVector, Map<String, Object> sparseVector,
+            int sparseTopK, int denseTopK, boolean includeVectors, int rrfK) {
+        return searchAsync(denseVector, sparseVector, sparseTopK, denseTopK, includeVectors, rrfK, null);
+    }
 
-        for (Map<String, Object> doc : denseResults) {
-            denseDataMap.put((String) doc.get("id"), doc);
-        }
+    /**
+     * Search whose {@code meta} maps hold only the {@code includeFields} keys; the other
+     * values are skipped while decoding and never built. The projection is also sent to the
+     * server, which may use it to trim what it returns. Null includes every field.
+     */
+    public List<Map<String, Object>> search(List<Double> denseVector, Map<String, Object> sparseVector,
+            int sparseTopK, int denseTopK, boolean includeVectors, int rrfK, Collection<String> includeFields)
+            throws Exception {
+        return await(searchAsync(denseVector, sparseVector, sparseTopK, denseTopK, includeVectors, rrfK, includeFields));
+    }
 
-        for (Map<String, Object> doc : sparseResults) {
-            sparseDataMap.put((String) doc.get("id"), doc);
+    public CompletableFuture<List<Map<String, Object>>> searchAsync(List<Double> denseVector, Map<String, Object> sparseVector,
+            int sparseTopK, int denseTopK, boolean includeVectors, int rrfK, Collection<String> includeFields) {
+        SparseVector sparse;
+        try {
+            sparse = toSparseVector(sparseVector);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
         }
+        return searchAsync(denseVector, sparse, sparseTopK, denseTopK, includeVectors, rrfK, includeFields);
+    }
 
-        // Create metadata lookup
-        Map<String, Object> metadataMap = new HashMap<>();
-        for (Map<String, Object> meta : metadata) {
-            metadataMap.put((String) meta.get("id"), meta.getOrDefault("meta", ""));
-        }
+    /**
+     * Search with the sparse query as a {@link SparseVector}, whose terms are written to the
+     * request as they are, without a map per term.
+     */
+    public List<Map<String, Object>> search(List<Double> denseVector, SparseVector sparseVector,
+            int sparseTopK, int denseTopK, boolean includeVectors, int rrfK, Collection<String> includeFields)
+            throws Exception {
+        return await(searchAsync(denseVector, sparseVector, sparseTopK, denseTopK, includeVectors, rrfK, includeFields));
+    }
 
-        // Get all unique document IDs
-        Set<String> allDocIds = new HashSet<>();
-        allDocIds.addAll(denseRankMap.keySet());
-        allDocIds.addAll(sparseRankMap.keySet());
+    public CompletableFuture<List<Map<String, Object>>> searchAsync(List<Double> denseVector, SparseVector sparseVector,
+            int sparseTopK, int denseTopK, boolean includeVectors, int rrfK, Collection<String> includeFields) {
+        Set<String> fields = Utils.includeFields(includeFields);
+        return searchSeparate(denseVector, sparseVector, sparseTopK, denseTopK, includeVectors, fields,
+                results -> HitTable.fuse(new ReciprocalRankFusion(rrfK), results, includeVectors, fields)
+                        .toMaps(includeVectors));
+    }
 
-        // Calculate RRF scores for each document
-        List<Map<String, Object>> rrfResults = new ArrayList<>();
+    /**
+     * Same query as {@link #search}, returning typed results with primitive scores and ranks,
+     * {@code float[]} vectors and metadata that is only decoded when read.
+     */
+    public SearchResponse query(List<Double> denseVector, Map<String, Object> sparseVector,
+            int sparseTopK, int denseTopK, boolean includeVectors, int rrfK) throws Exception {
+        return await(queryAsync(denseVector, sparseVector, sparseTopK, denseTopK, includeVectors, rrfK));
+    }
 
-        for (String docId : allDocIds) {
-            double rrfScore = 0.0;
+    public CompletableFuture<SearchResponse> queryAsync(List<Double> denseVector, Map<String, Object> sparseVector,
+            int sparseTopK, int denseTopK, boolean includeVectors, int rrfK) {
+        return queryAsync(denseVector, sparseVector, sparseTopK, denseTopK, includeVectors,
+                new ReciprocalRankFusion(rrfK));
+    }
 
-            // Get ranks (null if document doesn't appear in a ranking list)
-            Integer denseRank = denseRankMap.get(docId);
-            Integer sparseRank = sparseRankMap.get(docId);
+    /**
+     * Query fused with the given strategy. When the strategy has a limit, only the top results
+     * are selected and built.
+     */
+    public SearchResponse query(List<Double> denseVector, Map<String, Object> sparseVector,
+            int sparseTopK, int denseTopK, boolean includeVectors, FusionStrategy fusion) throws Exception {
+        return await(queryAsync(denseVector, sparseVector, sparseTopK, denseTopK, includeVectors, fusion));
+    }
 
-            // Calculate RRF contribution from dense ranking
-            if (denseRank != null) {
-                rrfScore += 1.0 / (k + denseRank);
-            }
+    public CompletableFuture<SearchResponse> queryAsync(List<Double> denseVector, Map<String, Object> sparseVector,
+            int sparseTopK, int denseTopK, boolean includeVectors, FusionStrategy fusion) {
+        return queryAsync(denseVector, sparseVector, sparseTopK, denseTopK, includeVectors, fusion, null);
+    }
 
-            // Calculate RRF contribution from sparse ranking
-            if (sparseRank != null) {
-                rrfScore += 1.0 / (k + sparseRank);
-            }
+    /**
+     * Query whose results carry only the {@code includeFields} metadata keys, as for
+     * {@link #search(List, Map, int, int, boolean, int, Collection)}. Null includes every field.
+     */
+    public SearchResponse query(List<Double> denseVector, Map<String, Object> sparseVector,
+            int sparseTopK, int denseTopK, boolean includeVectors, FusionStrategy fusion,
+            Collection<String> includeFields) throws Exception {
+        return await(queryAsync(denseVector, sparseVector, sparseTopK, denseTopK, includeVectors, fusion, includeFields));
+    }
 
-            // Determine which vector to use (prefer dense if both present, otherwise use
-            // available)
-            Object vector = null;
-            if (denseDataMap.containsKey(docId) && sparseDataMap.containsKey(docId)) {
-                // Both present, use dense vector
-                vector = denseDataMap.get(docId).get("vector");
-            } else if (denseDataMap.containsKey(docId)) {
-                // Only dense present
-                vector = denseDataMap.get(docId).get("vector");
-            } else if (sparseDataMap.containsKey(docId)) {
-                // Only sparse present
-                vector = sparseDataMap.get(docId).get("vector");
-            }
+    public CompletableFuture<SearchResponse> queryAsync(List<Double> denseVector, Map<String, Object> sparseVector,
+            int sparseTopK, int denseTopK, boolean includeVectors, FusionStrategy fusion,
+            Collection<String> includeFields) {
+        SparseVector sparse;
+        try {
+            sparse = toSparseVector(sparseVector);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return queryAsync(denseVector, sparse, sparseTopK, denseTopK, includeVectors, fusion, includeFields);
+    }
 
-            // Create result object
-            Map<String, Object> result = new HashMap<>();
-            result.put("id", docId);
-            result.put("rrf_score", rrfScore);
-            result.put("sparse_rank", sparseRank != null ? sparseRank : 0);
-            result.put("dense_rank", denseRank != null ? denseRank : 0);
-            result.put("meta", metadataMap.getOrDefault(docId, ""));
-            result.put("vector", vector);
+    public SearchResponse query(List<Double> denseVector, SparseVector sparseVector,
+            int sparseTopK, int denseTopK, boolean includeVectors, FusionStrategy fusion,
+            Collection<String> includeFields) throws Exception {
+        return await(queryAsync(denseVector, sparseVector, sparseTopK, denseTopK, includeVectors, fusion, includeFields));
+    }
 
-            rrfResults.add(result);
+    public CompletableFuture<SearchResponse> queryAsync(List<Double> denseVector, SparseVector sparseVector,
+            int sparseTopK, int denseTopK, boolean includeVectors, FusionStrategy fusion,
+            Collection<String> includeFields) {
+        if (fusion == null) {
+            throw new IllegalArgumentException("Fusion cannot be null");
         }
+        Set<String> fields = Utils.includeFields(includeFields);
+        return searchSeparate(denseVector, sparseVector, sparseTopK, denseTopK, includeVectors, fields,
+                results -> HitTable.fuse(fusion, results, includeVectors, fields));
+    }
 
-        // Sort by RRF score in descending order
-        rrfResults.sort((a, b) -> Double.compare((Double) b.get("rrf_score"), (Double) a.get("rrf_score")));
+    /**
+     * Fusion that re-ranks the {@code depth} best RRF candidates by their exact similarity to
+     * {@code query}, in this index's space type. {@code vectors} looks up the vector the caller
+     * kept for an id, or null when it has none.
+     */
+    public Rescorer rescorer(float[] query, Function<String, float[]> vectors, int depth, int limit) {
+        if (query == null || query.length != this.dimension) {
+            throw new IllegalArgumentException("Query vector must have dimension " + this.dimension);
+        }
+        return new Rescorer(new ReciprocalRankFusion(ReciprocalRankFusion.DEFAULT_K), query, vectors,
+                this.spaceType, depth, limit);
+    }
 
-        return rrfResults;
+    /**
+     * BM25 encoder hashing into this index's vocabulary. Fit it before encoding documents,
+     * freeze its average length once a representative sample is fitted, and keep the same
+     * instance for queries; see {@link SparseEncoder}.
+     */
+    public SparseEncoder sparseEncoder() {
+        return new SparseEncoder(this.vocabSize);
     }
 
-    private boolean validateRrfInput(Map<String, Object> data) {
-        /**
-         * Validate the input data structure for RRF algorithm.
-         *
-         * @param data Input data to validate
-         * @return true if valid, false otherwise
-         */
+    private <T> CompletableFuture<T> searchSeparate(List<Double> denseVector, SparseVector sparseVector,
+            int sparseTopK, int denseTopK, boolean includeVectors, Set<String> includeFields,
+            Function<SearchResponseDecoder.Result, T> fuse) {
 
-        if (data == null) {
-            System.err.println("Input data must not be null");
-            return false;
-        }
-
-        // Check required keys
-        String[] requiredKeys = { "dense_results", "sparse_results" };
-        for (String key : requiredKeys) {
-            if (!data.containsKey(key)) {
-                System.err.println("Missing required key: " + key);
-                return false;
-            }
+        // Validation
+        if (sparseTopK > 256) {
+            throw new IllegalArgumentException("sparse_top_k cannot be greater than 256");
         }
-
-        // Validate dense_results structure
-        Object denseResultsObj = data.get("dense_results");
-        if (!(denseResultsObj instanceof List)) {
-            System.err.println("dense_results must be a list");
-            return false;
+        if (denseTopK > 256) {
+            throw new IllegalArgumentException("dense_top_k cannot be greater than 256");
         }
 
-        List<?> denseResults = (List<?>) denseResultsObj;
-        for (int i = 0; i < denseResults.size(); i++) {
-            Object doc = denseResults.get(i);
-            if (!(doc instanceof Map)) {
-                System.err.println("dense_results[" + i + "] must be a map");
-                return false;
-            }
+        SparseVector sparse = sparseVector == null ? SparseVector.EMPTY
+                : sparsePruning.apply(sparseVector.checkVocabSize(vocabSize));
 
-            Map<?, ?> docMap = (Map<?, ?>) doc;
-            // Required keys - vector is optional
-            String[] requiredDocKeys = { "id", "score", "rank" };
-            for (String key : requiredDocKeys) {
-                if (!docMap.containsKey(key)) {
-                    System.err.println("dense_results[" + i + "] missing required key: " + key);
-                    return false;
-                }
-            }
-        }
+        // Normalize dense query vector (ignoring encryption)
+        float[] normalizedDense = normalizeQuery(denseVector);
 
-        // Validate sparse_results structure
-        Object sparseResultsObj = data.get("sparse_results");
-        if (!(sparseResultsObj instanceof List)) {
-            System.err.println("sparse_results must be a list");
-            return false;
+        byte[] jsonBody;
+        try {
+            jsonBody = encodeSearch(normalizedDense, sparse, sparseTopK, denseTopK, includeVectors,
+                    includeFields);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
         }
 
-        List<?> sparseResults = (List<?>) sparseResultsObj;
-        for (int i = 0; i < sparseResults.size(); i++) {
-            Object doc = sparseResults.get(i);
-            if (!(doc instanceof Map)) {
-                System.err.println("sparse_results[" + i + "] must be a map");
-                return false;
-            }
+        HttpRequest request = apiClient.request("/hybrid/" + name + "/search_separate")
+                .header("Authorization", token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(jsonBody))
+                .build();
 
-            Map<?, ?> docMap = (Map<?, ?>) doc;
-            // Required keys - vector is optional
-            String[] requiredDocKeys = { "id", "score", "rank" };
-            for (String key : requiredDocKeys) {
-                if (!docMap.containsKey(key)) {
-                    System.err.println("sparse_results[" + i + "] missing required key: " + key);
-                    return false;
-                }
-            }
+        QueryCache cache = queryCache;
+        if (cache == null) {
+            // The response is decoded in one pass as it arrives; see SearchResponseDecoder
+            return apiClient.sendAsync(request, SearchResponseDecoder.handler(Codecs.JSON_FACTORY, includeVectors),
+                    ApiClient.Call.READ, guard, response -> fuse.apply(response.body()));
         }
 
-        // Validate metadata if present
-        if (data.containsKey("metadata")) {
-            Object metadataObj = data.get("metadata");
-            if (!(metadataObj instanceof List)) {
-                System.err.println("metadata must be a list");
-                return false;
-            }
-
-            List<?> metadata = (List<?>) metadataObj;
-            for (int i = 0; i < metadata.size(); i++) {
-                Object meta = metadata.get(i);
-                if (!(meta instanceof Map)) {
-                    System.err.println("metadata[" + i + "] must be a map");
-                    return false;
-                }
-
-                Map<?, ?> metaMap = (Map<?, ?>) meta;
-                if (!metaMap.containsKey("id")) {
-                    System.err.println("metadata[" + i + "] missing required key: id");
-                    return false;
-                }
+        QueryCache.Key key = new QueryCache.Key(name, normalizedDense, sparse,
+                sparseTopK, denseTopK, includeVectors, includeFields);
+        SearchResponseDecoder.Result cached = cache.get(key);
+        if (cached != null) {
+            try {
+                return CompletableFuture.completedFuture(fuse.apply(cached));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
             }
         }
-
-        return true;
+        long generation = cache.generation();
+        return apiClient.sendAsync(request, SearchResponseDecoder.handler(Codecs.JSON_FACTORY, includeVectors),
+                ApiClient.Call.READ, guard, response -> {
+                    cache.put(key, response.body(), generation);
+                    return fuse.apply(response.body());
+                });
     }
 
-    private Map<String, Object> processSearchResults(JsonNode results, boolean includeVectors) throws Exception {
-        Map<String, Object> processed = new HashMap<>();
-
-        // Process dense results
-        JsonNode denseNode = results.get("dense_results");
-        List<Map<String, Object>> denseResults = new ArrayList<>();
-        if (denseNode != null && denseNode.isArray()) {
-            for (JsonNode result : denseNode) {
-                Map<String, Object> searchResult = new HashMap<>();
-                searchResult.put("id", result.get("id").asText());
-                searchResult.put("score", result.get("score").asDouble());
-                searchResult.put("rank", result.get("rank").asInt());
-                searchResult.put("vector", null);
-
-                // Handle vector if present (ignoring decryption)
-                if (includeVectors && result.has("vector") && !result.get("vector").isNull()) {
-                    searchResult.put("vector", jsonMapper.convertValue(result.get("vector"), List.class));
-                }
-
-                denseResults.add(searchResult);
+    // The search_separate body, with sparse terms written straight from the vector's arrays
+    private static byte[] encodeSearch(float[] denseVector, SparseVector sparse, int sparseTopK, int denseTopK,
+            boolean includeVectors, Set<String> includeFields) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128 + 16 * denseVector.length + 32 * sparse.size());
+        try (JsonGenerator json = Codecs.JSON_FACTORY.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("dense_vector");
+            for (float value : denseVector) {
+                json.writeNumber(value);
             }
-        }
-        processed.put("dense_results", denseResults);
-
-        // Process sparse results
-        JsonNode sparseNode = results.get("sparse_results");
-        List<Map<String, Object>> sparseResults = new ArrayList<>();
-        if (sparseNode != null && sparseNode.isArray()) {
-            for (JsonNode result : sparseNode) {
-                Map<String, Object> searchResult = new HashMap<>();
-                searchResult.put("id", result.get("id").asText());
-                searchResult.put("score", result.get("score").asDouble());
-                searchResult.put("rank", result.get("rank").asInt());
-                searchResult.put("vector", null);
-
-                // Handle vector if present (ignoring decryption)
-                if (includeVectors && result.has("vector") && !result.get("vector").isNull()) {
-                    searchResult.put("vector", jsonMapper.convertValue(result.get("vector"), List.class));
-                }
-
-                sparseResults.add(searchResult);
+            json.writeEndArray();
+            json.writeArrayFieldStart("sparse_vector");
+            for (int i = 0; i < sparse.size(); i++) {
+                json.writeStartObject();
+                json.writeNumberField("index", sparse.indices[i]);
+                json.writeNumberField("value", sparse.values[i]);
+                json.writeEndObject();
             }
-        }
-        processed.put("sparse_results", sparseResults);
-
-        // Process metadata
-        JsonNode metadataNode = results.get("metadata");
-        List<Map<String, Object>> metadata = new ArrayList<>();
-
-        if (metadataNode != null && metadataNode.isArray()) {
-            for (JsonNode metaItem : metadataNode) {
-                Map<String, Object> metaResult = new HashMap<>();
-                metaResult.put("id", metaItem.get("id").asText());
-
-                // Decode the individual meta field
-                if (metaItem.has("meta") && !metaItem.get("meta").isNull()) {
-                    String encodedMeta = metaItem.get("meta").asText();
-//                    System.out.println("Encoded Meta: " + encodedMeta);
-                    try {
-                        byte[] metaBytes = Base64.getDecoder().decode(encodedMeta);
-                        Map<String, Object> metaMap = jsonUnzip(metaBytes);
-                        metaResult.put("meta", metaMap);
-                    } catch (Exception e) {
-                        System.out.println("Warning: Failed to decode metadata for " + metaItem.get("id").asText()
-                                + ": " + e.getMessage());
-                        metaResult.put("meta", new HashMap<>());
-                    }
-                } else {
-                    metaResult.put("meta", new HashMap<>());
+            json.writeEndArray();
+            json.writeNumberField("sparse_top_k", sparseTopK);
+            json.writeNumberField("dense_top_k", denseTopK);
+            json.writeBooleanField("include_vectors", includeVectors);
+            if (includeFields != null) {
+                json.writeArrayFieldStart("include_fields");
+                for (String field : includeFields) {
+                    json.writeString(field);
                 }
-
-                metadata.add(metaResult);
+                json.writeEndArray();
             }
+            json.writeEndObject();
         }
-        processed.put("metadata", metadata);
-
-        return processed;
+        return out.toByteArray();
     }
 
     public Map<String, Object> getVector(String vectorId) throws Exception {
@@ -684,43 +676,59 @@ public class HybridIndex {
          * @return Map containing the vector data
          * @throws Exception if the request fails
          */
+        return await(getVectorAsync(vectorId));
+    }
+
+    public CompletableFuture<Map<String, Object>> getVectorAsync(String vectorId) {
+        return getVectorAsync(vectorId, null);
+    }
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url + "/hybrid/" + name + "/vector/" + vectorId))
+    /**
+     * Fetches a vector whose {@code meta} holds only the {@code includeFields} keys. The
+     * projection is passed to the server as {@code include_fields}; null includes every field.
+     */
+    public Map<String, Object> getVector(String vectorId, Collection<String> includeFields) throws Exception {
+        return await(getVectorAsync(vectorId, includeFields));
+    }
+
+    public CompletableFuture<Map<String, Object>> getVectorAsync(String vectorId, Collection<String> includeFields) {
+        Set<String> fields = Utils.includeFields(includeFields);
+        String path = "/hybrid/" + name + "/vector/" + Utils.pathSegment(vectorId);
+        if (fields != null) {
+            path += "?include_fields=" + URLEncoder.encode(String.join(",", fields), StandardCharsets.UTF_8);
+        }
+        HttpRequest request = apiClient.request(path)
                 .header("Authorization", token)
                 .header("Content-Type", "application/json")
-                .timeout(Duration.ofSeconds(30))
                 .GET()
                 .build();
 
-        HttpResponse<String> response = apiClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-        if (response.statusCode() != 200 && response.statusCode() != 201) {
-            throw new RuntimeException("HTTP request failed with status: " + response.statusCode() +
-                    ", body: " + response.body());
-        }
+        return apiClient.sendAsync(request, HttpResponse.BodyHandlers.ofString(), ApiClient.Call.READ, guard, response -> {
+            if (response.statusCode() != 200 && response.statusCode() != 201) {
+                throw new RuntimeException("HTTP request failed with status: " + response.statusCode() +
+                        ", body: " + response.body());
+            }
+            try {
+                return parseVector(response.body(), fields);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
 
-        Map<String, Object> result = jsonMapper.readValue(response.body(),
-                jsonMapper.getTypeFactory().constructMapType(HashMap.class, String.class, Object.class));
+    private Map<String, Object> parseVector(String body, Set<String> includeFields) throws Exception {
+        Map<String, Object> result = Codecs.MAP_READER.readValue(body);
 
         // Process the result (ignoring encryption as requested)
 
-        // Decode metadata for unencrypted mode
+        // Metadata is base64 JSON; it is decoded when the caller first reads it, and reads as
+        // an empty map if it cannot be
         if (result.containsKey("meta") && result.get("meta") != null) {
-            try {
-                String metaStr = (String) result.get("meta");
-                // Assuming base64 decoded content is JSON - simplified approach
-                byte[] decodedMeta = Base64.getDecoder().decode(metaStr);
-                String decodedJson = new String(decodedMeta, StandardCharsets.UTF_8);
-
-                // Parse the JSON metadata
-                Map<String, Object> metaMap = jsonMapper.readValue(decodedJson,
-                        jsonMapper.getTypeFactory().constructMapType(HashMap.class, String.class, Object.class));
-                result.put("meta", metaMap);
-            } catch (Exception e) {
-                System.out.println("Warning: Failed to decode metadata: " + e.getMessage());
-                result.put("meta", new HashMap<>());
-            }
+            Object meta = result.get("meta");
+            result.put("meta", meta instanceof String
+                    ? new LazyMetadata(meta, LazyMetadata.Encoding.BASE64_JSON, String.valueOf(result.get("id")),
+                            includeFields, true)
+                    : new HashMap<>());
         }
 
         // Format sparse vector for consistency
@@ -758,23 +766,24 @@ public class HybridIndex {
     }
 
     public String deleteVector(String vectorId) throws Exception {
+        return await(deleteVectorAsync(vectorId));
+    }
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url + "/hybrid/" + name + "/vector/" + vectorId))
+    public CompletableFuture<String> deleteVectorAsync(String vectorId) {
+        HttpRequest request = apiClient.request("/hybrid/" + name + "/vector/" + Utils.pathSegment(vectorId))
                 .header("Authorization", token)
                 .header("Content-Type", "application/json")
-                .timeout(Duration.ofSeconds(30))
                 .DELETE()
                 .build();
 
-        HttpResponse<String> response = apiClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-        if (response.statusCode() != 200 && response.statusCode() != 201) {
-            throw new RuntimeException("HTTP request failed with status: " + response.statusCode() +
-                    ", body: " + response.body());
-        }
-
-        return "Hybrid vector " + vectorId + " deleted successfully";
+        return invalidatingCache(apiClient.sendAsync(request, HttpResponse.BodyHandlers.ofString(),
+                ApiClient.Call.IDEMPOTENT, guard, response -> {
+            if (response.statusCode() != 200 && response.statusCode() != 201) {
+                throw new RuntimeException("HTTP request failed with status: " + response.statusCode() +
+                        ", body: " + response.body());
+            }
+            return "Hybrid vector " + vectorId + " deleted successfully";
+        }));
     }
 
     public Map<String, Object> describe() {
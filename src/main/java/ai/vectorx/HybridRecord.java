@@ -0,0 +1,56 @@
+package ai.vectorx;
+
+import java.util.Map;
+
+/**
+ * A dense plus sparse vector to upsert into a {@link HybridIndex}, held as primitive arrays so
+ * it can be normalized and written to the wire without boxing.
+ */
+public class HybridRecord {
+    private static final int[] NO_INDICES = new int[0];
+    private static final float[] NO_VALUES = new float[0];
+
+    private final String id;
+    private final float[] denseVector;
+    private final int[] sparseIndices;
+    private final float[] sparseValues;
+    private final Map<String, Object> meta;
+
+    public HybridRecord(String id, float[] denseVector, int[] sparseIndices, float[] sparseValues) {
+        this(id, denseVector, sparseIndices, sparseValues, null);
+    }
+
+    public HybridRecord(String id, float[] denseVector, int[] sparseIndices, float[] sparseValues, Map<String, Object> meta) {
+        this(id, denseVector, sparseIndices, sparseValues, meta, true);
+    }
+
+    // The map-based upsert passes checkLengths false: it has always sent mismatched sparse
+    // arrays through as given and left the server to reject them
+    HybridRecord(String id, float[] denseVector, int[] sparseIndices, float[] sparseValues, Map<String, Object> meta,
+                 boolean checkLengths) {
+        if (denseVector == null) {
+            throw new IllegalArgumentException("Dense vector cannot be null for id: " + id);
+        }
+        int[] indices = sparseIndices == null ? NO_INDICES : sparseIndices;
+        float[] values = sparseValues == null ? NO_VALUES : sparseValues;
+        if (checkLengths && indices.length != values.length) {
+            throw new IllegalArgumentException("Sparse indices and values must have the same length for id: " + id);
+        }
+        this.id = id == null ? "" : id;
+        this.denseVector = denseVector;
+        this.sparseIndices = indices;
+        this.sparseValues = values;
+        this.meta = meta;
+    }
+
+    public HybridRecord(String id, float[] denseVector, SparseVector sparseVector, Map<String, Object> meta) {
+        this(id, denseVector, sparseVector == null ? null : sparseVector.indices,
+                sparseVector == null ? null : sparseVector.values, meta);
+    }
+
+    public String getId() { return id; }
+    public float[] getDenseVector() { return denseVector; }
+    public int[] getSparseIndices() { return sparseIndices; }
+    public float[] getSparseValues() { return sparseValues; }
+    public Map<String, Object> getMeta() { return meta; }
+}
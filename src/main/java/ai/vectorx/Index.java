@@ -1,42 +1,68 @@
 package ai.vectorx;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import com.google.gson.Gson;
-import java.net.URI;
-import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.util.zip.Deflater;
 
+import static ai.vectorx.Utils.await;
 import static ai.vectorx.Utils.jsonZip;
 
 
+/**
+ * Handle for a dense index.
+ *
+ * Upserts go to {@code POST /index/{name}/vector/insert}, the only index route the original
+ * client used. The read and delete calls assume these server routes, laid out like the
+ * {@code /hybrid/{name}/...} ones: {@code POST /index/{name}/search},
+ * {@code POST /index/{name}/search/batch}, {@code POST /index/{name}/vector/get} and
+ * {@code DELETE /index/{name}/vector/{id}}. A server without them answers 404, which these
+ * calls surface as a {@code RuntimeException} carrying the status.
+ */
 public class Index {
-    private HttpClient apiClient;
+    private ApiClient apiClient;
     private String name;
     private String key;
     private String token;
     private String url;
     private int version;
-    private String libToken;
-    private int count;
+    private volatile String libToken;
+    private volatile int count;
     private String spaceType;
     private int dimension;
     private String precision;
     private int M;
-    private ObjectMapper jsonMapper;
+    static final int MAX_TOP_K = 256;
+    static final int MAX_EF = 1024;
+    static final int DEFAULT_EF = 128;
+    static final int MAX_BATCH_QUERIES = 100;
+    private long streamingThreshold = StreamingBody.DEFAULT_THRESHOLD;
+    private int compressionLevel = MetadataCodec.DEFAULT_LEVEL;
+    private VectorEncoding vectorEncoding = VectorEncoding.FLOAT32;
+    private volatile CallGuard guard = CallGuard.NONE;
 
     public Index(String name, String key, String token, String url, int version, IndexParams params) {
+        this(name, key, token, new ApiClient(url), version, params);
+    }
+
+    public Index(String name, String key, String token, ApiClient apiClient, int version, IndexParams params) {
         this.name = name;
         this.key = key;
         this.token = token;
-        this.url = url;
+        this.url = apiClient.getBaseUrl();
         this.version = version;
         this.libToken = params.getLibToken();
         this.count = params.getTotalElements();
@@ -45,92 +71,541 @@ public class Index {
         this.precision = params.isUseFp16() ? "float16" : "float32";
         this.M = params.getM();
 
-        this.apiClient = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_2)
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
-        this.jsonMapper = new ObjectMapper();
+        this.apiClient = apiClient;
+    }
+
+    // Applies a fresh /info result; false when the index now has a different layout
+    boolean refresh(IndexParams params) {
+        String precision = params.isUseFp16() ? "float16" : "float32";
+        if(params.getDimension() != this.dimension || !Objects.equals(params.getSpaceType(), this.spaceType)
+                || !precision.equals(this.precision) || params.getM() != this.M) {
+            return false;
+        }
+        this.libToken = params.getLibToken();
+        this.count = params.getTotalElements();
+        return true;
     }
 
     private float norm(float[] vector) {
-        double norm = 0.0;
-        for(float v: vector) norm += v * v;
-        norm = Math.sqrt(norm);
-        return (float) norm;
+        return (float) Math.sqrt(VectorKernels.INSTANCE.sumOfSquares(vector));
     }
 
-    private float[] normalizeVector(float[] vector, float norm) {
+    /**
+     * Upsert batches whose estimated size reaches this many bytes are encoded chunk by chunk
+     * while they are sent, instead of into one array first. Use {@code Long.MAX_VALUE} to
+     * always send a fixed-length body.
+     */
+    public void setStreamingThreshold(long bytes) {
+        this.streamingThreshold = bytes;
+    }
+
+    /**
+     * zlib level for metadata, from 0 (store) to 9 (smallest); -1 selects the zlib default.
+     * Lower levels trade size on the wire for less CPU per upserted record.
+     */
+    public void setCompressionLevel(int level) {
+        MetadataCodec.checkLevel(level);
+        this.compressionLevel = level;
+    }
+
+    /**
+     * Wire format for upserted vectors. {@link VectorEncoding#FLOAT16} halves the payload and
+     * is only accepted on indexes that store float16.
+     */
+    public void setVectorEncoding(VectorEncoding encoding) {
+        if (encoding == null) {
+            throw new IllegalArgumentException("Vector encoding cannot be null");
+        }
+        if (encoding == VectorEncoding.FLOAT16 && !"float16".equals(this.precision)) {
+            throw new IllegalArgumentException("FLOAT16 encoding requires an index created with useFp16");
+        }
+        this.vectorEncoding = encoding;
+    }
+
+    public VectorEncoding getVectorEncoding() {
+        return vectorEncoding;
+    }
+
+    /**
+     * Caps this index's calls in flight, adapting the cap to observed latency. Calls over
+     * the cap fail with {@code RejectedExecutionException}. Pass null to remove the cap.
+     */
+    public synchronized void setConcurrencyLimiter(ConcurrencyLimiter limiter) {
+        this.guard = new CallGuard(limiter, guard.breaker);
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return guard.limiter;
+    }
+
+    /**
+     * Fails this index's calls fast while its backend is failing. Pass null to remove the breaker.
+     */
+    public synchronized void setCircuitBreaker(CircuitBreaker breaker) {
+        this.guard = new CallGuard(guard.limiter, breaker);
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return guard.breaker;
+    }
+
+    // Upserted bytes per vector, for sizing request bodies
+    private int vectorSize() {
+        return this.dimension * vectorEncoding.bytesPerValue();
+    }
+
+    private void checkDimension(float[] vector) {
         if(vector.length != this.dimension) {
             throw new IllegalArgumentException("Vector dimension mismatch: expected " + this.dimension + ", got " + vector.length);
         }
+    }
 
-        if(!"cosine".equals(this.spaceType)) {
-            return vector;
+    // Only cosine indexes store unit vectors; a divisor of 1 leaves the vector as is
+    private double normalizationDivisor(float norm) {
+        if(!"cosine".equals(this.spaceType) || norm == 0.0) {
+            return 1.0;
         }
+        return norm;
+    }
 
-        if(norm == 0.0) return vector;
-        float[] normalizedVector = new float[vector.length];
+    private float[] normalizeVector(float[] vector, float norm) {
+        checkDimension(vector);
 
-        for(int i = 0; i  < vector.length; i++){
-            normalizedVector[i] = (float)(vector[i]/norm);
-        }
+        double divisor = normalizationDivisor(norm);
+        if(divisor == 1.0) return vector;
+        float[] normalizedVector = new float[vector.length];
+        VectorKernels.INSTANCE.divide(vector, divisor, normalizedVector);
         return normalizedVector;
     }
 
 
     public String upsert(List<Map<String, Object>> inputArray) throws Exception {
+        return await(upsertAsync(inputArray));
+    }
+
+    /**
+     * Non-blocking variant of {@link #upsert(List)}. The batch is serialized on the calling
+     * thread; cancelling the returned future cancels the request.
+     */
+    public CompletableFuture<String> upsertAsync(List<Map<String, Object>> inputArray) {
         if(inputArray.size() > 1000) {
-            throw new IllegalArgumentException("Cannot insert more than 1000 vectors at a time");
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Cannot insert more than 1000 vectors at a time"));
+        }
+
+        try {
+            return sendUpsert(encodeUpsert(inputArray));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Upserts any number of vectors. The input is split into batches of at most 1000, and the
+     * next batch is serialized while up to {@code maxConcurrency} earlier batches are in flight.
+     * The calling thread blocks when that limit is reached. Failed batches do not stop the run;
+     * their IDs are reported in the result.
+     *
+     * @param onBatch called with each batch result as it completes, may be null
+     */
+    public BulkUpsertResult upsertBulk(Iterator<Map<String, Object>> items, int batchSize, int maxConcurrency,
+                                       Consumer<BulkUpsertResult.BatchResult> onBatch) throws Exception {
+        return new BulkUpsert<Map<String, Object>>(this::encodeUpsert, this::sendUpsert,
+                item -> String.valueOf(item.getOrDefault("id", "")), batchSize, maxConcurrency, onBatch,
+                apiClient.getRetryPolicy())
+                .run(items);
+    }
+
+    public BulkUpsertResult upsertBulk(Iterator<Map<String, Object>> items) throws Exception {
+        return upsertBulk(items, BulkUpsert.MAX_BATCH_SIZE, BulkUpsert.DEFAULT_CONCURRENCY, null);
+    }
+
+    public BulkUpsertResult upsertBulk(Stream<Map<String, Object>> items) throws Exception {
+        return upsertBulk(items.iterator());
+    }
+
+    /**
+     * Upserts typed records. Vectors go from their {@code float[]} straight to the wire
+     * without intermediate collections.
+     */
+    public String upsertRecords(List<DenseRecord> records) throws Exception {
+        return await(upsertRecordsAsync(records));
+    }
+
+    public CompletableFuture<String> upsertRecordsAsync(List<DenseRecord> records) {
+        if(records.size() > 1000) {
+            return CompletableFuture.failedFuture(
+                    new IllegalArgumentException("Cannot insert more than 1000 vectors at a time"));
         }
-        System.out.println(inputArray);
 
-        List<List<Object>> vectorBatch = new ArrayList<>();
+        try {
+            return sendUpsert(encodeRecords(records));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public BulkUpsertResult upsertRecordsBulk(Iterator<DenseRecord> records, int batchSize, int maxConcurrency,
+                                              Consumer<BulkUpsertResult.BatchResult> onBatch) throws Exception {
+        return new BulkUpsert<DenseRecord>(this::encodeRecords, this::sendUpsert,
+                DenseRecord::getId, batchSize, maxConcurrency, onBatch, apiClient.getRetryPolicy())
+                .run(records);
+    }
 
+    public BulkUpsertResult upsertRecordsBulk(Iterator<DenseRecord> records) throws Exception {
+        return upsertRecordsBulk(records, BulkUpsert.MAX_BATCH_SIZE, BulkUpsert.DEFAULT_CONCURRENCY, null);
+    }
+
+    private HttpRequest encodeUpsert(List<Map<String, Object>> inputArray) throws Exception {
+        List<DenseRecord> records = new ArrayList<>(inputArray.size());
         for(Map<String, Object> item : inputArray) {
-            float[] vector = (float[]) item.get("vector");
-            float norm = norm(vector);
-            float[] normalizedVector = normalizeVector(vector, norm);
+            records.add(new DenseRecord(
+                    String.valueOf(item.getOrDefault("id", "")),
+                    (float[]) item.get("vector"),
+                    (Map<String, Object>) item.get("meta"),
+                    (Map<String, Object>) item.get("filter")));
+        }
+        return encodeRecords(records);
+    }
+
+    private HttpRequest encodeRecords(List<DenseRecord> records) throws Exception {
+        for(DenseRecord record : records) {
+            checkDimension(record.getVector());
+        }
+
+        HttpRequest.BodyPublisher body;
+        long estimatedSize = (long) records.size() * (vectorSize() + 64);
+        if(estimatedSize >= streamingThreshold) {
+            // Large batches are packed chunk by chunk as the client sends them
+            body = new StreamingBody(records.size(), (encoder, i) -> packRecord(encoder, records.get(i)));
+        } else {
+            MsgPackEncoder encoder = MsgPackEncoder.open((int) estimatedSize);
+            encoder.packer().packArrayHeader(records.size());
+            for(DenseRecord record : records) {
+                packRecord(encoder, record);
+            }
+            body = encoder.finish();
+        }
 
-            List<Float> vectorList = new ArrayList<>();
+        return apiClient.request("/index/" + name + "/vector/insert")
+                .header("Authorization", this.token)
+                .header("Content-Type", "application/msgpack") // Or use application/msgpack if needed
+                .POST(body)
+                .build();
+    }
+
+    // Each record is [id, zipped meta, filter, norm, vector], packed straight into the body buffer
+    private void packRecord(MsgPackEncoder encoder, DenseRecord record) throws IOException {
+        MessagePacker packer = encoder.packer();
+        float[] vector = record.getVector();
+        float norm = norm(vector);
+
+        Map<String, Object> filter = record.getFilter() != null ? record.getFilter() : Collections.emptyMap();
+        byte[] metaData = jsonZip(record.getMeta(), compressionLevel);
+
+        packer.packArrayHeader(5);
+        packer.packString(record.getId());
+        encoder.packBinary(metaData);
+        encoder.packValue(filter);
+        packer.packFloat(norm);
+        encoder.packVector(vector, normalizationDivisor(norm), vectorEncoding);
+    }
 
-            for(float v: normalizedVector) {
-                vectorList.add(v);
+    private CompletableFuture<String> sendUpsert(HttpRequest request) {
+        return apiClient.sendAsync(request, HttpResponse.BodyHandlers.ofString(), ApiClient.Call.WRITE, guard, response -> {
+            if (response.statusCode() != 200) {
+                throw new ApiClient.StatusException(response.statusCode(),
+                        "Error in inserting vector, status: " + response.statusCode() + ", body: " + response.body());
             }
+            return response.body();
+        });
+    }
+
+    public List<Map<String, Object>> search(float[] vector, int topK) throws Exception {
+        return search(vector, topK, null, DEFAULT_EF, false);
+    }
+
+    /**
+     * Dense ANN query. Each hit is a map with {@code id}, {@code similarity}, {@code distance},
+     * {@code meta}, {@code filter} and {@code norm}, plus {@code vector} as a {@code float[]}
+     * when requested. Hits come back best first.
+     *
+     * @param filter optional filter on the fields stored with each vector, may be null
+     * @param ef search breadth; larger is slower and more accurate
+     */
+    public List<Map<String, Object>> search(float[] vector, int topK, Map<String, Object> filter, int ef,
+                                            boolean includeVectors) throws Exception {
+        return await(searchAsync(vector, topK, filter, ef, includeVectors));
+    }
+
+    public CompletableFuture<List<Map<String, Object>>> searchAsync(float[] vector, int topK, Map<String, Object> filter,
+                                                                   int ef, boolean includeVectors) {
+        return searchAsync(vector, topK, filter, ef, includeVectors, null);
+    }
+
+    /**
+     * Search whose {@code meta} maps hold only the {@code includeFields} keys; the other values
+     * are skipped while decoding and never built. The projection is also sent to the server,
+     * which may use it to trim what it returns. Null includes every field.
+     */
+    public List<Map<String, Object>> search(float[] vector, int topK, Map<String, Object> filter, int ef,
+                                            boolean includeVectors, Collection<String> includeFields) throws Exception {
+        return await(searchAsync(vector, topK, filter, ef, includeVectors, includeFields));
+    }
+
+    public CompletableFuture<List<Map<String, Object>>> searchAsync(float[] vector, int topK, Map<String, Object> filter,
+                                                                   int ef, boolean includeVectors,
+                                                                   Collection<String> includeFields) {
+        checkQuery(topK, ef);
+        Set<String> fields = Utils.includeFields(includeFields);
+
+        Map<String, Object> requestData = new HashMap<>();
+        requestData.put("vector", normalizeVector(vector, norm(vector)));
+        requestData.put("k", topK);
+        requestData.put("ef", ef);
+        requestData.put("include_vectors", includeVectors);
+        return postQuery("/index/" + name + "/search", requestData, filter, fields,
+                unpacker -> readHits(unpacker, includeVectors, fields));
+    }
+
+    /**
+     * Runs many dense queries in one request, so a high-QPS caller pays one round trip per
+     * batch instead of per query. Results are in the same order as {@code vectors}.
+     */
+    public List<List<Map<String, Object>>> searchBatch(List<float[]> vectors, int topK, Map<String, Object> filter,
+                                                       int ef, boolean includeVectors) throws Exception {
+        return await(searchBatchAsync(vectors, topK, filter, ef, includeVectors));
+    }
+
+    public CompletableFuture<List<List<Map<String, Object>>>> searchBatchAsync(List<float[]> vectors, int topK,
+                                                                              Map<String, Object> filter, int ef,
+                                                                              boolean includeVectors) {
+        return searchBatchAsync(vectors, topK, filter, ef, includeVectors, null);
+    }
+
+    // Batch search with a metadata projection, as for search
+    public List<List<Map<String, Object>>> searchBatch(List<float[]> vectors, int topK, Map<String, Object> filter,
+                                                       int ef, boolean includeVectors,
+                                                       Collection<String> includeFields) throws Exception {
+        return await(searchBatchAsync(vectors, topK, filter, ef, includeVectors, includeFields));
+    }
 
-            Map<String, Object> meta = (Map<String, Object>) item.getOrDefault("meta", new HashMap<>());
-            Map<String, Object> filter = (Map<String, Object>) item.getOrDefault("filter", new HashMap<>());
-            byte[] metaData = jsonZip(meta);
-//            System.out.println();
-            List<Object> vectorObj = new ArrayList<>();
-            vectorObj.add(item.getOrDefault("id", ""));
-            vectorObj.add(metaData);  // will be serialized as JSON
-            vectorObj.add(filter); // "
-            vectorObj.add(norm);    // norm placeholder
-            vectorObj.add(vectorList);
-            vectorBatch.add(vectorObj);
+    public CompletableFuture<List<List<Map<String, Object>>>> searchBatchAsync(List<float[]> vectors, int topK,
+                                                                              Map<String, Object> filter, int ef,
+                                                                              boolean includeVectors,
+                                                                              Collection<String> includeFields) {
+        checkQuery(topK, ef);
+        Set<String> fields = Utils.includeFields(includeFields);
+        if(vectors.isEmpty() || vectors.size() > MAX_BATCH_QUERIES) {
+            throw new IllegalArgumentException("A batch must contain between 1 and " + MAX_BATCH_QUERIES + " queries");
         }
 
-//        System.out.println("VectorBatch: \n"+vectorBatch);
+        List<float[]> normalized = new ArrayList<>(vectors.size());
+        for(float[] vector : vectors) {
+            normalized.add(normalizeVector(vector, norm(vector)));
+        }
+
+        Map<String, Object> requestData = new HashMap<>();
+        requestData.put("vectors", normalized);
+        requestData.put("k", topK);
+        requestData.put("ef", ef);
+        requestData.put("include_vectors", includeVectors);
+        return postQuery("/index/" + name + "/search/batch", requestData, filter, fields, unpacker -> {
+            int queries = unpacker.unpackArrayHeader();
+            if(queries != vectors.size()) {
+                throw new IOException("Expected results for " + vectors.size() + " queries, got " + queries);
+            }
+            List<List<Map<String, Object>>> results = new ArrayList<>(queries);
+            for(int i = 0; i < queries; i++) {
+                results.add(readHits(unpacker, includeVectors, fields));
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Fetches one stored vector as a map with {@code id}, {@code meta}, {@code filter},
+     * {@code norm} and {@code vector} ({@code float[]}, unit length on cosine indexes).
+     */
+    public Map<String, Object> getVector(String vectorId) throws Exception {
+        return await(getVectorAsync(vectorId));
+    }
+
+    public CompletableFuture<Map<String, Object>> getVectorAsync(String vectorId) {
+        return getVectorAsync(vectorId, null);
+    }
 
-        ObjectMapper mapper = new ObjectMapper(new MessagePackFactory());
+    /**
+     * Fetches a vector whose {@code meta} holds only the {@code includeFields} keys; null
+     * includes every field.
+     */
+    public Map<String, Object> getVector(String vectorId, Collection<String> includeFields) throws Exception {
+        return await(getVectorAsync(vectorId, includeFields));
+    }
 
-        byte[] serialized = mapper.writeValueAsBytes(vectorBatch);
-        System.out.println("serialized: " + serialized);
+    public CompletableFuture<Map<String, Object>> getVectorAsync(String vectorId, Collection<String> includeFields) {
+        Set<String> metaFields = Utils.includeFields(includeFields);
+        Map<String, Object> requestData = new HashMap<>();
+        requestData.put("id", vectorId);
+        return postQuery("/index/" + name + "/vector/get", requestData, null, metaFields, unpacker -> {
+            int fields = unpacker.unpackArrayHeader();
+            Map<String, Object> result = new HashMap<>();
+            result.put("id", unpacker.unpackString());
+            readStoredFields(unpacker, result, fields - 1, true, metaFields);
+            return result;
+        });
+    }
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url + "/index/" + name + "/vector/insert"))
+    public String deleteVector(String vectorId) throws Exception {
+        return await(deleteVectorAsync(vectorId));
+    }
+
+    public CompletableFuture<String> deleteVectorAsync(String vectorId) {
+        HttpRequest request = apiClient.request("/index/" + name + "/vector/" + Utils.pathSegment(vectorId))
                 .header("Authorization", this.token)
-                .header("Content-Type", "application/msgpack") // Or use application/msgpack if needed
-                .POST(HttpRequest.BodyPublishers.ofByteArray(serialized))
+                .DELETE()
                 .build();
 
-        HttpResponse<String> response = apiClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return apiClient.sendAsync(request, HttpResponse.BodyHandlers.ofString(), ApiClient.Call.IDEMPOTENT, guard, response -> {
+            if (response.statusCode() != 200) {
+                throw new RuntimeException("HTTP request failed with status: " + response.statusCode() +
+                        ", body: " + response.body());
+            }
+            return "Vector " + vectorId + " deleted successfully";
+        });
+    }
 
-        if (response.statusCode() != 200) {
-            System.err.println("Error in inserting vector" + response.body());
-            throw new RuntimeException("Failed with code: " + response.statusCode());
+    private void checkQuery(int topK, int ef) {
+        if(topK < 1 || topK > MAX_TOP_K) {
+            throw new IllegalArgumentException("top_k must be between 1 and " + MAX_TOP_K);
         }
+        if(ef < 1 || ef > MAX_EF) {
+            throw new IllegalArgumentException("ef must be between 1 and " + MAX_EF);
+        }
+    }
 
-        return response.body();
+    // Reads a MessagePack response body
+    private interface ResponseReader<T> {
+        T read(MessageUnpacker unpacker) throws IOException;
+    }
+
+    // Sends a JSON query and decodes the MessagePack reply straight from the response bytes
+    private <T> CompletableFuture<T> postQuery(String path, Map<String, Object> requestData, Map<String, Object> filter,
+                                               Set<String> includeFields, ResponseReader<T> reader) {
+        String jsonBody;
+        try {
+            if(filter != null && !filter.isEmpty()) {
+                requestData.put("filter", Codecs.MAP_WRITER.writeValueAsString(filter));
+            }
+            if(includeFields != null) {
+                requestData.put("include_fields", includeFields);
+            }
+            jsonBody = Codecs.JSON_WRITER.writeValueAsString(requestData);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        HttpRequest request = apiClient.request(path)
+                .header("Authorization", this.token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
+                .build();
+
+        // Queries only read, so they can be retried and hedged
+        return apiClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray(), ApiClient.Call.READ, guard, response -> {
+            if (response.statusCode() != 200) {
+                throw new RuntimeException("HTTP request failed with status: " + response.statusCode() +
+                        ", body: " + new String(response.body(), StandardCharsets.UTF_8));
+            }
+            try (MessageUnpacker unpacker = Codecs.MSGPACK_UNPACKER.newUnpacker(response.body())) {
+                return reader.read(unpacker);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    // Hits are [similarity, id, zipped meta, filter, norm, vector?]
+    private List<Map<String, Object>> readHits(MessageUnpacker unpacker, boolean includeVectors,
+                                               Set<String> includeFields) throws IOException {
+        int count = unpacker.unpackArrayHeader();
+        List<Map<String, Object>> hits = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            int fields = unpacker.unpackArrayHeader();
+            double similarity = readDouble(unpacker);
+            Map<String, Object> hit = new HashMap<>();
+            hit.put("id", unpacker.unpackString());
+            hit.put("similarity", similarity);
+            hit.put("distance", 1.0 - similarity);
+            readStoredFields(unpacker, hit, fields - 2, includeVectors, includeFields);
+            hits.add(hit);
+        }
+        return hits;
+    }
+
+    // Reads [zipped meta, filter, norm, vector?] into the map, skipping any trailing fields
+    private void readStoredFields(MessageUnpacker unpacker, Map<String, Object> target, int fields,
+                                  boolean includeVector, Set<String> includeFields) throws IOException {
+        target.put("meta", fields > 0 ? readMeta(unpacker, (String) target.get("id"), includeFields) : new HashMap<>());
+        target.put("filter", fields > 1 ? readFilter(unpacker) : new HashMap<>());
+        target.put("norm", fields > 2 ? readDouble(unpacker) : 1.0);
+        if(fields > 3) {
+            float[] vector = readFloats(unpacker);
+            if(includeVector) {
+                target.put("vector", vector);
+            }
+        }
+        for(int i = 4; i < fields; i++) {
+            unpacker.skipValue();
+        }
+    }
+
+    // Kept compressed until the caller reads it
+    private Map<String, Object> readMeta(MessageUnpacker unpacker, String id, Set<String> includeFields)
+            throws IOException {
+        if(unpacker.tryUnpackNil()) {
+            return new HashMap<>();
+        }
+        byte[] zipped = unpacker.readPayload(unpacker.unpackBinaryHeader());
+        return new LazyMetadata(zipped, LazyMetadata.Encoding.ZLIB, id, includeFields);
+    }
+
+    // Filters come back as the JSON string they were stored as
+    private Map<String, Object> readFilter(MessageUnpacker unpacker) throws IOException {
+        if(unpacker.tryUnpackNil()) {
+            return new HashMap<>();
+        }
+        if(unpacker.getNextFormat().getValueType() != ValueType.STRING) {
+            unpacker.skipValue();
+            return new HashMap<>();
+        }
+        String json = unpacker.unpackString();
+        if(json.isEmpty()) {
+            return new HashMap<>();
+        }
+        return Codecs.MAP_READER.readValue(json);
+    }
+
+    // Vectors come back as a float array, or as binary halves
+    private float[] readFloats(MessageUnpacker unpacker) throws IOException {
+        if(unpacker.tryUnpackNil()) {
+            return null;
+        }
+        if(unpacker.getNextFormat().getValueType() == ValueType.BINARY) {
+            return Utils.decodeVector(unpacker.readPayload(unpacker.unpackBinaryHeader()));
+        }
+        float[] values = new float[unpacker.unpackArrayHeader()];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = (float) readDouble(unpacker);
+        }
+        return values;
+    }
+
+    private static double readDouble(MessageUnpacker unpacker) throws IOException {
+        MessageFormat format = unpacker.getNextFormat();
+        if(format.getValueType() == ValueType.FLOAT) {
+            return format == MessageFormat.FLOAT32 ? unpacker.unpackFloat() : unpacker.unpackDouble();
+        }
+        return unpacker.unpackLong();
     }
-}
\ No newline at end of file
+}
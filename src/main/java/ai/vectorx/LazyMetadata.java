@@ -0,0 +1,121 @@
+package ai.vectorx;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.util.AbstractMap;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Metadata map that keeps the bytes as received and decodes them on first access.
+ *
+ * Search results carry one of these in place of a decoded map, so a caller that only looks
+ * at IDs and scores never inflates or parses metadata, and one that reranks a long candidate
+ * list only pays for the entries it actually reads. The decoded map is memoized; once built,
+ * every operation goes to it, including writes.
+ *
+ * Undecodable metadata is not hidden on the typed APIs: the first access throws
+ * {@code IllegalStateException} with the decoding error as its cause, and so does every later
+ * one, since nothing is memoized. The map-returning {@code HybridIndex.search} and
+ * {@code HybridIndex.getVector} instead read it as an empty map, as they always have; see
+ * {@link #emptyOnError()}.
+ *
+ * With a field projection only those top-level keys are decoded; see
+ * {@link MetadataCodec#unzip(byte[], Set)}.
+ */
+final class LazyMetadata extends AbstractMap<String, Object> {
+    enum Encoding {
+        ZLIB,        // zlib-compressed JSON, as stored by Index
+        BASE64_ZLIB, // base64 of zlib-compressed JSON, as returned by hybrid search
+        BASE64_JSON  // base64 of plain JSON, as returned by hybrid getVector
+    }
+
+    private final Object source;
+    private final Encoding encoding;
+    private final String id;
+    private final Set<String> fields;
+    private final boolean emptyOnError;
+    private volatile Map<String, Object> decoded;
+
+    /**
+     * @param source the raw value, a {@code byte[]} for ZLIB and a {@code String} otherwise;
+     *               null reads as an empty map
+     * @param id document ID for the error on bad metadata, may be null
+     * @param fields top-level keys to decode, or null for all
+     */
+    LazyMetadata(Object source, Encoding encoding, String id, Set<String> fields) {
+        this(source, encoding, id, fields, false);
+    }
+
+    // With emptyOnError, undecodable metadata reads as an empty map instead of throwing
+    LazyMetadata(Object source, Encoding encoding, String id, Set<String> fields, boolean emptyOnError) {
+        this.source = source;
+        this.encoding = encoding;
+        this.id = id;
+        this.fields = fields;
+        this.emptyOnError = emptyOnError;
+    }
+
+    // The same metadata, decoded separately, reading as an empty map when it cannot be decoded
+    LazyMetadata emptyOnError() {
+        return new LazyMetadata(source, encoding, id, fields, true);
+    }
+
+    // For diagnostics and tests: true once the metadata has been decoded
+    boolean isDecoded() {
+        return decoded != null;
+    }
+
+    Map<String, Object> decoded() {
+        Map<String, Object> map = decoded;
+        if (map == null) {
+            synchronized (this) {
+                map = decoded;
+                if (map == null) {
+                    map = decode();
+                    decoded = map;
+                }
+            }
+        }
+        return map;
+    }
+
+    private Map<String, Object> decode() {
+        if (source == null) {
+            return new HashMap<>();
+        }
+        try {
+            switch (encoding) {
+                case ZLIB:
+                    return MetadataCodec.unzip((byte[]) source, fields);
+                case BASE64_ZLIB:
+                    return MetadataCodec.unzip(Base64.getDecoder().decode((String) source), fields);
+                default:
+                    byte[] json = Base64.getDecoder().decode(((String) source).trim());
+                    if (json.length > 0 && fields != null) {
+                        try (JsonParser parser = Codecs.JSON_FACTORY.createParser(json)) {
+                            return MetadataCodec.project(parser, fields);
+                        }
+                    }
+                    Map<String, Object> map = json.length == 0 ? null : Codecs.MAP_READER.readValue(json);
+                    return map == null ? new HashMap<>() : map;
+            }
+        } catch (Exception e) {
+            if (emptyOnError) {
+                return new HashMap<>();
+            }
+            throw new IllegalStateException("Failed to decode metadata" + (id == null ? "" : " for " + id), e);
+        }
+    }
+
+    @Override public Set<Entry<String, Object>> entrySet() { return decoded().entrySet(); }
+    @Override public int size() { return decoded().size(); }
+    @Override public boolean isEmpty() { return decoded().isEmpty(); }
+    @Override public boolean containsKey(Object key) { return decoded().containsKey(key); }
+    @Override public Object get(Object key) { return decoded().get(key); }
+    @Override public Object put(String key, Object value) { return decoded().put(key, value); }
+    @Override public Object remove(Object key) { return decoded().remove(key); }
+    @Override public void clear() { decoded().clear(); }
+}
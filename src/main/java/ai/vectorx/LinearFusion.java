@@ -0,0 +1,57 @@
+package ai.vectorx;
+
+/**
+ * Weighted sum of the per-list scores after normalizing each list.
+ *
+ * {@link Normalization#MIN_MAX} maps each list onto [0, 1]; {@link Normalization#Z_SCORE}
+ * centres each list on its mean in units of its standard deviation. A document contributes
+ * nothing for a list it is not in.
+ */
+public class LinearFusion implements FusionStrategy {
+    public enum Normalization { MIN_MAX, Z_SCORE }
+
+    private final Normalization normalization;
+    private final double denseWeight;
+    private final double sparseWeight;
+    private final int limit;
+
+    public LinearFusion(Normalization normalization) {
+        this(normalization, 0.5, 0.5, 0);
+    }
+
+    public LinearFusion(Normalization normalization, double denseWeight, double sparseWeight, int limit) {
+        if (normalization == null) {
+            throw new IllegalArgumentException("Normalization cannot be null");
+        }
+        Utils.checkFusionParams(denseWeight, sparseWeight, limit);
+        this.normalization = normalization;
+        this.denseWeight = denseWeight;
+        this.sparseWeight = sparseWeight;
+        this.limit = limit;
+    }
+
+    public Normalization getNormalization() { return normalization; }
+    public double getDenseWeight() { return denseWeight; }
+    public double getSparseWeight() { return sparseWeight; }
+    @Override
+    public int getLimit() { return limit; }
+
+    @Override
+    public void score(FusionCandidates candidates, double[] scores) {
+        ScoreStats dense = ScoreStats.of(candidates, true);
+        ScoreStats sparse = ScoreStats.of(candidates, false);
+        boolean minMax = normalization == Normalization.MIN_MAX;
+        for (int slot = 0; slot < candidates.size(); slot++) {
+            double score = 0.0;
+            if (candidates.inDense(slot)) {
+                double raw = candidates.getDenseScore(slot);
+                score += denseWeight * (minMax ? dense.minMax(raw) : dense.zScore(raw));
+            }
+            if (candidates.inSparse(slot)) {
+                double raw = candidates.getSparseScore(slot);
+                score += sparseWeight * (minMax ? sparse.minMax(raw) : sparse.zScore(raw));
+            }
+            scores[slot] = score;
+        }
+    }
+}
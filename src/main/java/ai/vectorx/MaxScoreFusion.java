@@ -0,0 +1,46 @@
+package ai.vectorx;
+
+/**
+ * Ranks each document by its best normalized score in either list.
+ *
+ * Scores are min-max normalized per list and weighted; a document keeps the larger of its
+ * two values. Useful when a strong match in one list should not be diluted by a weak or
+ * missing match in the other.
+ */
+public class MaxScoreFusion implements FusionStrategy {
+    private final double denseWeight;
+    private final double sparseWeight;
+    private final int limit;
+
+    public MaxScoreFusion() {
+        this(1.0, 1.0, 0);
+    }
+
+    public MaxScoreFusion(double denseWeight, double sparseWeight, int limit) {
+        Utils.checkFusionParams(denseWeight, sparseWeight, limit);
+        this.denseWeight = denseWeight;
+        this.sparseWeight = sparseWeight;
+        this.limit = limit;
+    }
+
+    public double getDenseWeight() { return denseWeight; }
+    public double getSparseWeight() { return sparseWeight; }
+    @Override
+    public int getLimit() { return limit; }
+
+    @Override
+    public void score(FusionCandidates candidates, double[] scores) {
+        ScoreStats dense = ScoreStats.of(candidates, true);
+        ScoreStats sparse = ScoreStats.of(candidates, false);
+        for (int slot = 0; slot < candidates.size(); slot++) {
+            double score = 0.0;
+            if (candidates.inDense(slot)) {
+                score = denseWeight * dense.minMax(candidates.getDenseScore(slot));
+            }
+            if (candidates.inSparse(slot)) {
+                score = Math.max(score, sparseWeight * sparse.minMax(candidates.getSparseScore(slot)));
+            }
+            scores[slot] = score;
+        }
+    }
+}
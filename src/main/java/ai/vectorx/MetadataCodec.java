@@ -0,0 +1,228 @@
+package ai.vectorx;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * zlib-compressed JSON metadata, as stored with every vector.
+ *
+ * Jackson writes the map straight into a {@link DeflaterOutputStream}, so the JSON text is
+ * never materialized; compressed bytes collect in a per-thread buffer that is reused between
+ * records, and is shrunk back after an unusually large one. Each thread also keeps one
+ * {@link Deflater} and one {@link Inflater} and resets them instead of allocating native zlib
+ * state per record. Output of any size is complete; there is no fixed-size buffer to
+ * truncate into.
+ */
+final class MetadataCodec {
+    static final int DEFAULT_LEVEL = Deflater.DEFAULT_COMPRESSION;
+    // Per-thread buffers larger than this are dropped after use instead of kept
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+    // Refuse to inflate past this, so a corrupt or hostile record cannot exhaust the heap
+    static final int MAX_INFLATED_SIZE = 64 * 1024 * 1024;
+    private static final int IO_CHUNK = 4096;
+
+    private static final ObjectWriter WRITER = Codecs.MAP_WRITER.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(() -> new State(true));
+
+    private MetadataCodec() {
+    }
+
+    static void checkLevel(int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Compression level must be -1 or between 0 and 9, got " + level);
+        }
+    }
+
+    static byte[] zip(Map<String, Object> map, int level) throws IOException {
+        if (map == null || map.isEmpty()) {
+            return new byte[0]; // same as b'' in Python
+        }
+        checkLevel(level);
+
+        State state = State.acquire();
+        try {
+            Deflater deflater = state.deflater;
+            deflater.reset();
+            deflater.setLevel(level);
+            state.buffer.reset();
+
+            // The stream is never closed, so it can be reused once its deflater is reset
+            WRITER.writeValue(state.zipped, map);
+            state.zipped.finish();
+            return state.buffer.toByteArray();
+        } finally {
+            state.release();
+        }
+    }
+
+    static Map<String, Object> unzip(byte[] compressed) throws IOException {
+        if (compressed == null || compressed.length == 0) {
+            return Map.of(); // same as {} in Python
+        }
+
+        State state = State.acquire();
+        try {
+            Inflater inflater = state.inflater;
+            inflater.reset();
+            inflater.setInput(compressed);
+            Buffer out = state.buffer;
+            out.reset();
+
+            byte[] chunk = state.chunk;
+            while (!inflater.finished()) {
+                int count = inflater.inflate(chunk);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Failed to decompress JSON: truncated or invalid zlib data");
+                }
+                if (out.size() + count > MAX_INFLATED_SIZE) {
+                    throw new IOException("Failed to decompress JSON: exceeds " + MAX_INFLATED_SIZE + " bytes");
+                }
+                out.write(chunk, 0, count);
+            }
+
+            // Parse the UTF-8 JSON straight from the inflated bytes
+            return Codecs.MAP_READER.readValue(out.array(), 0, out.size());
+        } catch (DataFormatException e) {
+            throw new IOException("Failed to decompress JSON", e);
+        } finally {
+            state.release();
+        }
+    }
+
+    /**
+     * Decodes only the top-level keys in {@code fields}; null means all of them. The JSON is
+     * parsed as it is inflated, values of other keys are skipped without being built, and
+     * inflation stops as soon as every requested key has been read.
+     */
+    static Map<String, Object> unzip(byte[] compressed, Set<String> fields) throws IOException {
+        if (fields == null) {
+            return unzip(compressed);
+        }
+        if (compressed == null || compressed.length == 0 || fields.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+
+        State state = State.acquire();
+        try {
+            Inflater inflater = state.inflater;
+            inflater.reset();
+            // The stream does not end an inflater it was handed, so closing the parser is safe
+            InflaterInputStream in = new BoundedInflaterStream(compressed, inflater);
+            try (JsonParser parser = Codecs.JSON_FACTORY.createParser(in)) {
+                return project(parser, fields);
+            }
+        } finally {
+            state.release();
+        }
+    }
+
+    // Reads the requested keys of the JSON object at the parser's start
+    static Map<String, Object> project(JsonParser parser, Set<String> fields) throws IOException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        JsonToken token = parser.nextToken();
+        if (token == null || token == JsonToken.VALUE_NULL) {
+            return result;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("Metadata is not a JSON object");
+        }
+        while (result.size() < fields.size() && parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if (fields.contains(name)) {
+                result.put(name, Codecs.JSON.readValue(parser, Object.class));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return result;
+    }
+
+    // Inflates for the projecting parser, with the same size cap as the full unzip
+    private static final class BoundedInflaterStream extends InflaterInputStream {
+        private long inflated;
+
+        BoundedInflaterStream(byte[] compressed, Inflater inflater) {
+            super(new ByteArrayInputStream(compressed), inflater, IO_CHUNK);
+        }
+
+        // read() and skip() both go through here
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                inflated += count;
+                if (inflated > MAX_INFLATED_SIZE) {
+                    throw new IOException("Failed to decompress JSON: exceeds " + MAX_INFLATED_SIZE + " bytes");
+                }
+            }
+            return count;
+        }
+    }
+
+    // ByteArrayOutputStream whose array can be parsed in place and shrunk after a large record
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(IO_CHUNK);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        void trim(int maxRetained) {
+            if (buf.length > maxRetained) {
+                buf = new byte[IO_CHUNK];
+                count = 0;
+            }
+        }
+    }
+
+    private static final class State {
+        final Deflater deflater = new Deflater(DEFAULT_LEVEL);
+        final Inflater inflater = new Inflater();
+        final byte[] chunk = new byte[IO_CHUNK];
+        final Buffer buffer = new Buffer();
+        final DeflaterOutputStream zipped = new DeflaterOutputStream(buffer, deflater, IO_CHUNK);
+        final boolean pooled;
+        boolean busy;
+
+        private State(boolean pooled) {
+            this.pooled = pooled;
+        }
+
+        static State acquire() {
+            State state = STATE.get();
+            if (state.busy) {
+                // Re-entered from a serializer on this thread; use throwaway state
+                state = new State(false);
+            }
+            state.busy = true;
+            return state;
+        }
+
+        void release() {
+            busy = false;
+            if (!pooled) {
+                deflater.end();
+                inflater.end();
+            } else {
+                buffer.trim(MAX_RETAINED_BUFFER);
+            }
+        }
+    }
+}
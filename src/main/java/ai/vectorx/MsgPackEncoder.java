@@ -0,0 +1,362 @@
+package ai.vectorx;
+
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.buffer.MessageBuffer;
+import org.msgpack.core.buffer.MessageBufferOutput;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streaming MessagePack writer for upsert payloads.
+ *
+ * Fields are packed straight into a pooled, growable byte array instead of building an
+ * object graph for Jackson, and the finished array is handed to the HTTP client as
+ * read-only views without a further copy. Peak heap per batch is therefore about one
+ * payload. The array goes back to the pool once the request has completed and the client has
+ * stopped reading it.
+ */
+final class MsgPackEncoder {
+    private static final int MIN_CHUNK = 8192;
+    private static final int MAX_POOLED = 8;
+    private static final int MAX_POOLED_BYTES = 32 * 1024 * 1024;
+    private static final ConcurrentLinkedQueue<byte[]> POOL = new ConcurrentLinkedQueue<>();
+
+    private final GrowableOutput out;
+    private final MessagePacker packer;
+
+    private MsgPackEncoder(int sizeHint) {
+        this.out = new GrowableOutput(borrow(sizeHint));
+        this.packer = Codecs.MSGPACK_PACKER.newPacker(out);
+    }
+
+    /**
+     * @param sizeHint expected payload size in bytes, used to pick the initial buffer
+     */
+    static MsgPackEncoder open(int sizeHint) {
+        return new MsgPackEncoder(sizeHint);
+    }
+
+    MessagePacker packer() {
+        return packer;
+    }
+
+    // Packs vector[i] / divisor as float32; a divisor of 1 writes the values unchanged
+    void packFloats(float[] vector, double divisor) throws IOException {
+        packer.packArrayHeader(vector.length);
+        if (divisor == 1.0) {
+            for (float v : vector) {
+                packer.packFloat(v);
+            }
+        } else {
+            for (float v : vector) {
+                packer.packFloat((float) (v / divisor));
+            }
+        }
+    }
+
+    /**
+     * Packs vector[i] / divisor as one binary of little-endian IEEE half floats. The values
+     * are converted straight into the body buffer, without an intermediate array.
+     */
+    void packHalfFloats(float[] vector, double divisor) throws IOException {
+        int length = vector.length * 2;
+        packer.packBinaryHeader(length);
+        // Hand the packer's pending bytes to the output so the halves can follow them directly
+        packer.flush();
+        out.ensure(length);
+        VectorKernels.INSTANCE.toHalf(vector, divisor, out.buffer, out.position);
+        out.position += length;
+    }
+
+    // Packs a dense vector in the given encoding
+    void packVector(float[] vector, double divisor, VectorEncoding encoding) throws IOException {
+        if (encoding == VectorEncoding.FLOAT16) {
+            packHalfFloats(vector, divisor);
+        } else {
+            packFloats(vector, divisor);
+        }
+    }
+
+    void packInts(int[] values) throws IOException {
+        packer.packArrayHeader(values.length);
+        for (int v : values) {
+            packer.packInt(v);
+        }
+    }
+
+    void packBinary(byte[] bytes) throws IOException {
+        packer.packBinaryHeader(bytes.length);
+        packer.writePayload(bytes);
+    }
+
+    // Packs the values that can appear in metadata and filter maps
+    void packValue(Object value) throws IOException {
+        if (value == null) {
+            packer.packNil();
+        } else if (value instanceof String) {
+            packer.packString((String) value);
+        } else if (value instanceof Boolean) {
+            packer.packBoolean((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            packer.packInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            packer.packLong((Long) value);
+        } else if (value instanceof Float) {
+            packer.packFloat((Float) value);
+        } else if (value instanceof Double || value instanceof BigDecimal) {
+            packer.packDouble(((Number) value).doubleValue());
+        } else if (value instanceof BigInteger) {
+            packer.packBigInteger((BigInteger) value);
+        } else if (value instanceof byte[]) {
+            packBinary((byte[]) value);
+        } else if (value instanceof float[]) {
+            packFloats((float[]) value, 1.0);
+        } else if (value instanceof int[]) {
+            packInts((int[]) value);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            packer.packMapHeader(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                packer.packString(String.valueOf(entry.getKey()));
+                packValue(entry.getValue());
+            }
+        } else if (value instanceof Collection) {
+            Collection<?> items = (Collection<?>) value;
+            packer.packArrayHeader(items.size());
+            for (Object item : items) {
+                packValue(item);
+            }
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            packer.packArrayHeader(length);
+            for (int i = 0; i < length; i++) {
+                packValue(Array.get(value, i));
+            }
+        } else {
+            packer.packString(value.toString());
+        }
+    }
+
+    /**
+     * Flushes the packer and returns a body publisher over the packed bytes.
+     */
+    PooledBody finish() throws IOException {
+        packer.flush();
+        return new PooledBody(out.buffer, out.position);
+    }
+
+    // Bytes packed since the last drain
+    int pending() throws IOException {
+        packer.flush();
+        return out.position;
+    }
+
+    /**
+     * Moves everything packed since the last drain into {@code target} and starts over at the
+     * front of the staging array, so streaming bodies only ever hold one chunk in it.
+     */
+    void drainTo(ByteBuffer target) throws IOException {
+        packer.flush();
+        target.put(out.buffer, 0, out.position);
+        out.position = 0;
+    }
+
+    // Returns the staging array to the pool; the encoder must not be used afterwards
+    void discard() {
+        giveBack(out.buffer);
+    }
+
+    /**
+     * A request body backed by pooled memory. The transport calls {@link #release()} once the
+     * exchange has completed.
+     */
+    interface ReleasableBody extends HttpRequest.BodyPublisher {
+        void release();
+    }
+
+    // Releases the pooled body of a request, if it has one
+    static void releaseBody(HttpRequest request) {
+        request.bodyPublisher()
+                .filter(ReleasableBody.class::isInstance)
+                .ifPresent(body -> ((ReleasableBody) body).release());
+    }
+
+    private static byte[] borrow(int sizeHint) {
+        int size = Math.max(sizeHint, MIN_CHUNK * 2);
+        for (int i = 0; i < MAX_POOLED; i++) {
+            byte[] pooled = POOL.poll();
+            if (pooled == null) {
+                break;
+            }
+            if (pooled.length >= size) {
+                return pooled;
+            }
+            // Too small for this batch; let it go so the pool drifts toward the working size
+        }
+        return new byte[size];
+    }
+
+    private static void giveBack(byte[] buffer) {
+        if (buffer.length <= MAX_POOLED_BYTES && POOL.size() < MAX_POOLED) {
+            POOL.offer(buffer);
+        }
+    }
+
+    // Growable single-array output; MessagePacker writes directly into its free tail
+    private static final class GrowableOutput implements MessageBufferOutput {
+        private byte[] buffer;
+        private int position;
+
+        GrowableOutput(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public MessageBuffer next(int minimumSize) {
+            ensure(Math.max(minimumSize + 1, MIN_CHUNK));
+            return MessageBuffer.wrap(buffer, position, buffer.length - position);
+        }
+
+        @Override
+        public void writeBuffer(int length) {
+            position += length;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buffer, position, length);
+            position += length;
+        }
+
+        @Override
+        public void add(byte[] bytes, int offset, int length) {
+            write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void ensure(int free) {
+            if (buffer.length - position >= free) {
+                return;
+            }
+            long wanted = Math.max((long) buffer.length * 2, (long) position + free);
+            if (wanted > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Upsert payload too large: " + wanted + " bytes");
+            }
+            byte[] grown = new byte[(int) wanted];
+            System.arraycopy(buffer, 0, grown, 0, position);
+            giveBack(buffer);
+            buffer = grown;
+        }
+    }
+
+    /**
+     * Body publisher over a pooled array. Each subscription emits read-only views of the array
+     * in slices of {@link #SLICE} bytes, as far as the subscriber has requested, so the payload
+     * is never copied on its way to the client. {@link #release()} is called once the exchange
+     * has completed; the array is only recycled when no subscription is still reading it, so a
+     * late or retried send can never see another batch's bytes.
+     */
+    static final class PooledBody implements ReleasableBody {
+        static final int SLICE = 64 * 1024;
+
+        private final byte[] buffer;
+        private final int length;
+        private final AtomicInteger readers = new AtomicInteger();
+        private final AtomicBoolean recycled = new AtomicBoolean();
+        private volatile boolean released;
+
+        PooledBody(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            // Register as a reader before checking, so a concurrent release either sees this
+            // reader and leaves the array alone, or is seen here and the subscription backs out
+            readers.incrementAndGet();
+            if (released) {
+                finished();
+                rejectReleased(subscriber);
+                return;
+            }
+            subscriber.onSubscribe(new PullSubscription(subscriber) {
+                private int offset;
+
+                @Override
+                ByteBuffer nextItem() {
+                    if (offset == length) {
+                        return null;
+                    }
+                    int size = Math.min(SLICE, length - offset);
+                    ByteBuffer slice = ByteBuffer.wrap(buffer, offset, size).slice().asReadOnlyBuffer();
+                    offset += size;
+                    return slice;
+                }
+
+                @Override
+                void onTerminate() {
+                    finished();
+                }
+            });
+        }
+
+        @Override
+        public void release() {
+            released = true;
+            if (readers.get() == 0) {
+                recycle();
+            }
+        }
+
+        private void finished() {
+            if (readers.decrementAndGet() == 0 && released) {
+                recycle();
+            }
+        }
+
+        private void recycle() {
+            if (recycled.compareAndSet(false, true)) {
+                giveBack(buffer);
+            }
+        }
+    }
+
+    // Fails a subscription to a body whose memory has already gone back to the pool
+    static void rejectReleased(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(new IllegalStateException("Upsert body has already been released"));
+    }
+}
@@ -0,0 +1,97 @@
+package ai.vectorx;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Body subscription that produces items on whichever thread requests them, never more than
+ * demanded. Emission is serialized: a {@code request} made from inside {@code onNext} only
+ * adds to the demand, and the loop already running picks it up.
+ */
+abstract class PullSubscription implements Flow.Subscription {
+    private final Flow.Subscriber<? super ByteBuffer> subscriber;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile Throwable pendingError;
+    // Only touched inside drain(), which runs on one thread at a time
+    private boolean terminated;
+
+    PullSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        this.subscriber = subscriber;
+    }
+
+    // The next item to emit, or null once everything has been sent
+    abstract ByteBuffer nextItem() throws Exception;
+
+    // Called once, from the drain loop, when the subscription completes, fails or is cancelled
+    abstract void onTerminate();
+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            pendingError = new IllegalArgumentException("Non-positive request: " + n);
+        } else {
+            demand.getAndAccumulate(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        drain();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            if (!terminated) {
+                emit();
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void emit() {
+        while (true) {
+            if (cancelled) {
+                terminate();
+                return;
+            }
+            if (pendingError != null) {
+                terminate();
+                subscriber.onError(pendingError);
+                return;
+            }
+            if (demand.get() == 0) {
+                return;
+            }
+            ByteBuffer item;
+            try {
+                item = nextItem();
+            } catch (Throwable e) {
+                terminate();
+                subscriber.onError(e);
+                return;
+            }
+            if (item == null) {
+                terminate();
+                subscriber.onComplete();
+                return;
+            }
+            demand.decrementAndGet();
+            subscriber.onNext(item);
+        }
+    }
+
+    private void terminate() {
+        terminated = true;
+        onTerminate();
+    }
+}
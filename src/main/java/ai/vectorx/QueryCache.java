@@ -0,0 +1,186 @@
+package ai.vectorx;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of hybrid search responses, attached with {@link HybridIndex#setQueryCache}.
+ *
+ * Entries are keyed by the normalized dense vector, the sparse terms and the top-k settings,
+ * and hold the decoded server response before fusion, so {@code search} and {@code query}
+ * with any fusion strategy share entries. The least recently used entry is evicted once
+ * {@code maxEntries} is reached, and entries older than the TTL are dropped on access.
+ * The owning index clears the cache whenever it upserts or deletes.
+ */
+public class QueryCache {
+    private final int maxEntries;
+    private final Duration ttl;
+    private final long ttlNanos;
+    private final LinkedHashMap<Key, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    // Bumped by every invalidation; responses to requests sent before it are not stored
+    private long generation;
+
+    public QueryCache(int maxEntries, Duration ttl) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        }
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Cache TTL must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public int getMaxEntries() { return maxEntries; }
+    public Duration getTtl() { return ttl; }
+    public long getHitCount() { return hits.get(); }
+    public long getMissCount() { return misses.get(); }
+    // Entries dropped for size or age; invalidations are counted separately
+    public long getEvictionCount() { return evictions.get(); }
+    public long getInvalidationCount() { return invalidations.get(); }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0.0 : (double) hits.get() / total;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        generation++;
+        invalidations.incrementAndGet();
+    }
+
+    synchronized long generation() {
+        return generation;
+    }
+
+    SearchResponseDecoder.Result get(Key key) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && now - entry.storedAt < ttlNanos) {
+                hits.incrementAndGet();
+                return entry.result;
+            }
+            if (entry != null) {
+                entries.remove(key);
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    // Stores a response unless the cache was invalidated after its request was sent
+    void put(Key key, SearchResponseDecoder.Result result, long sentAtGeneration) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (sentAtGeneration != generation) {
+                return;
+            }
+            entries.put(key, new Entry(result, now));
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxEntries) {
+                eldest.next();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QueryCache{size=" + size()
+                + ", hits=" + hits.get()
+                + ", misses=" + misses.get()
+                + ", evictions=" + evictions.get()
+                + ", invalidations=" + invalidations.get() + "}";
+    }
+
+    private static final class Entry {
+        final SearchResponseDecoder.Result result;
+        final long storedAt;
+
+        Entry(SearchResponseDecoder.Result result, long storedAt) {
+            this.result = result;
+            this.storedAt = storedAt;
+        }
+    }
+
+    /**
+     * Everything that determines the server's answer. The hash is computed once; equality
+     * compares the full vectors, so a hash collision can never return another query's hits.
+     */
+    static final class Key {
+        private final String index;
+        private final float[] dense;
+        private final SparseVector sparse;
+        private final int sparseTopK;
+        private final int denseTopK;
+        private final boolean includeVectors;
+        private final Set<String> includeFields;
+        private final int hash;
+
+        // Takes ownership of dense, which the caller must not modify afterwards
+        Key(String index, float[] dense, SparseVector sparse, int sparseTopK, int denseTopK,
+            boolean includeVectors, Set<String> includeFields) {
+            this.index = index;
+            this.dense = dense;
+            // Immutable, and already sorted and merged, so equal queries give equal keys
+            this.sparse = sparse;
+            this.sparseTopK = sparseTopK;
+            this.denseTopK = denseTopK;
+            this.includeVectors = includeVectors;
+            // The server may trim metadata to the projection, so it is part of the answer
+            this.includeFields = includeFields;
+
+            int h = index.hashCode();
+            h = 31 * h + Arrays.hashCode(this.dense);
+            h = 31 * h + sparse.hashCode();
+            h = 31 * h + sparseTopK;
+            h = 31 * h + denseTopK;
+            h = 31 * h + (includeVectors ? 1 : 0);
+            this.hash = 31 * h + Objects.hashCode(includeFields);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash
+                    && sparseTopK == other.sparseTopK
+                    && denseTopK == other.denseTopK
+                    && includeVectors == other.includeVectors
+                    && index.equals(other.index)
+                    && Objects.equals(includeFields, other.includeFields)
+                    && Arrays.equals(dense, other.dense)
+                    && sparse.equals(other.sparse);
+        }
+    }
+}
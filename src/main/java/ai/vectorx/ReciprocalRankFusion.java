@@ -0,0 +1,52 @@
+package ai.vectorx;
+
+/**
+ * Weighted Reciprocal Rank Fusion of the dense and sparse result lists.
+ *
+ * A document scores {@code denseWeight / (k + denseRank) + sparseWeight / (k + sparseRank)},
+ * counting only the lists it appears in. With both weights at 1 this is plain RRF. When
+ * {@code limit} is positive only that many results are kept.
+ */
+public class ReciprocalRankFusion implements FusionStrategy {
+    public static final int DEFAULT_K = 60;
+
+    private final int k;
+    private final double denseWeight;
+    private final double sparseWeight;
+    private final int limit;
+
+    public ReciprocalRankFusion(int k) {
+        this(k, 1.0, 1.0, 0);
+    }
+
+    public ReciprocalRankFusion(int k, double denseWeight, double sparseWeight, int limit) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k cannot be negative");
+        }
+        Utils.checkFusionParams(denseWeight, sparseWeight, limit);
+        this.k = k;
+        this.denseWeight = denseWeight;
+        this.sparseWeight = sparseWeight;
+        this.limit = limit;
+    }
+
+    public int getK() { return k; }
+    public double getDenseWeight() { return denseWeight; }
+    public double getSparseWeight() { return sparseWeight; }
+    @Override
+    public int getLimit() { return limit; }
+
+    @Override
+    public void score(FusionCandidates candidates, double[] scores) {
+        for (int slot = 0; slot < candidates.size(); slot++) {
+            double score = 0.0;
+            if (candidates.inDense(slot)) {
+                score += denseWeight / (k + candidates.getDenseRank(slot));
+            }
+            if (candidates.inSparse(slot)) {
+                score += sparseWeight / (k + candidates.getSparseRank(slot));
+            }
+            scores[slot] = score;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ai.vectorx;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Second-stage ranking on the client: the server's candidates are re-ranked by the similarity
+ * between the query and vectors the caller keeps locally, either at full precision or as
+ * {@link VectorQuantizer} codes decoded on lookup.
+ *
+ * A first-stage strategy (RRF by default) picks the {@code depth} best candidates from the
+ * dense and sparse lists; each of those whose vector {@code vectors} can supply is scored by
+ * cosine similarity, inner product or negative squared L2 distance, following the index's
+ * space type. Candidates outside the depth, or without a local vector, score negative
+ * infinity and rank last. Pass it to {@code HybridIndex.query}; {@code HybridIndex.rescorer}
+ * builds one from the index's own space type and dimension.
+ */
+public class Rescorer implements FusionStrategy {
+    private final FusionStrategy firstStage;
+    private final float[] query;
+    private final double queryNorm;
+    private final Function<String, float[]> vectors;
+    private final String spaceType;
+    private final int depth;
+    private final int limit;
+
+    public Rescorer(float[] query, Function<String, float[]> vectors, String spaceType, int limit) {
+        this(new ReciprocalRankFusion(ReciprocalRankFusion.DEFAULT_K), query, vectors, spaceType, 0, limit);
+    }
+
+    /**
+     * @param depth how many first-stage candidates to rescore; 0 rescores all of them
+     * @param limit how many results to keep; 0 keeps all
+     */
+    public Rescorer(FusionStrategy firstStage, float[] query, Function<String, float[]> vectors, String spaceType,
+                    int depth, int limit) {
+        if (firstStage == null || query == null || vectors == null) {
+            throw new IllegalArgumentException("First stage, query and vectors are required");
+        }
+        if (!"cosine".equals(spaceType) && !"ip".equals(spaceType) && !"l2".equals(spaceType)) {
+            throw new IllegalArgumentException("Unsupported space type for rescoring: " + spaceType);
+        }
+        if (depth < 0 || limit < 0) {
+            throw new IllegalArgumentException("Depth and limit cannot be negative");
+        }
+        this.firstStage = firstStage;
+        this.query = query.clone();
+        this.queryNorm = Math.sqrt(VectorKernels.INSTANCE.sumOfSquares(query));
+        this.vectors = vectors;
+        this.spaceType = spaceType;
+        this.depth = depth;
+        this.limit = limit;
+    }
+
+    public FusionStrategy getFirstStage() { return firstStage; }
+    public String getSpaceType() { return spaceType; }
+    public int getDepth() { return depth; }
+    @Override
+    public int getLimit() { return limit; }
+
+    @Override
+    public void score(FusionCandidates candidates, double[] scores) {
+        int count = candidates.size();
+        firstStage.score(candidates, scores);
+        int[] rescored = HitTable.top(scores, count, depth);
+
+        double[] exact = new double[count];
+        Arrays.fill(exact, Double.NEGATIVE_INFINITY);
+        for (int slot : rescored) {
+            float[] vector = vectors.apply(candidates.getId(slot));
+            if (vector != null) {
+                exact[slot] = similarity(vector, candidates.getId(slot));
+            }
+        }
+        System.arraycopy(exact, 0, scores, 0, count);
+    }
+
+    private double similarity(float[] vector, String id) {
+        if (vector.length != query.length) {
+            throw new IllegalArgumentException("Vector " + id + " has dimension " + vector.length
+                    + ", expected " + query.length);
+        }
+        VectorKernels kernels = VectorKernels.INSTANCE;
+        switch (spaceType) {
+            case "cosine":
+                double norms = queryNorm * Math.sqrt(kernels.sumOfSquares(vector));
+                return norms == 0.0 ? 0.0 : kernels.dot(query, vector) / norms;
+            case "ip":
+                return kernels.dot(query, vector);
+            default:
+                // |q - v|^2 = |q|^2 + |v|^2 - 2 q.v
+                return -(queryNorm * queryNorm + kernels.sumOfSquares(vector) - 2 * kernels.dot(query, vector));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ai.vectorx;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How {@link ApiClient} retries, bounds and hedges calls, set with
+ * {@link ApiClient#setRetryPolicy}.
+ *
+ * Failed attempts are retried up to {@code maxAttempts} in total. The wait before retry
+ * {@code n} is drawn uniformly from zero up to {@code initialBackoff * 2^(n-1)}, capped at
+ * {@code maxBackoff} ("full jitter"), or longer when the server sends Retry-After.
+ *
+ * Retries respect idempotency. Searches, reads and deletes are retried on connection errors,
+ * timeouts and 429/502/503/504. Upserts are retried only when the server cannot have applied
+ * them: the connection was refused, or it answered 429 or 503.
+ *
+ * {@code deadline} bounds the whole call, waits included. When it passes, the call fails
+ * with {@code HttpTimeoutException} and the attempt in flight is cancelled.
+ *
+ * With a {@code hedgePercentile}, a search or read still unanswered after that percentile of
+ * recent read latencies gets one duplicate request. The first response wins and the other
+ * is cancelled.
+ */
+public class RetryPolicy {
+    public static final RetryPolicy NONE = new RetryPolicy(1, Duration.ZERO, Duration.ZERO, null, 0);
+    public static final RetryPolicy DEFAULT =
+            new RetryPolicy(3, Duration.ofMillis(100), Duration.ofSeconds(2), null, 0);
+
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration deadline;
+    private final double hedgePercentile;
+
+    public RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+        this(maxAttempts, initialBackoff, maxBackoff, null, 0);
+    }
+
+    /**
+     * @param maxAttempts     attempts per call, including the first
+     * @param initialBackoff  upper bound of the first retry's wait
+     * @param maxBackoff      upper bound of any retry's wait
+     * @param deadline        time budget for the whole call, or null for none
+     * @param hedgePercentile percentile of recent read latency, in (0, 100), after which a
+     *                        hedged request is sent; 0 turns hedging off
+     */
+    public RetryPolicy(int maxAttempts, Duration initialBackoff, Duration maxBackoff, Duration deadline,
+                       double hedgePercentile) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        if (initialBackoff == null || maxBackoff == null || initialBackoff.isNegative()
+                || maxBackoff.compareTo(initialBackoff) < 0) {
+            throw new IllegalArgumentException("Backoffs must be non-negative with maxBackoff >= initialBackoff");
+        }
+        if (deadline != null && (deadline.isZero() || deadline.isNegative())) {
+            throw new IllegalArgumentException("Deadline must be positive");
+        }
+        if (!(hedgePercentile >= 0 && hedgePercentile < 100)) {
+            throw new IllegalArgumentException("hedgePercentile must be in [0, 100)");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.deadline = deadline;
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    public int getMaxAttempts() { return maxAttempts; }
+    public Duration getInitialBackoff() { return initialBackoff; }
+    public Duration getMaxBackoff() { return maxBackoff; }
+    public Duration getDeadline() { return deadline; }
+    public double getHedgePercentile() { return hedgePercentile; }
+
+    // A single attempt with no deadline or hedging goes straight to the transport
+    boolean isNone() {
+        return maxAttempts == 1 && deadline == null && hedgePercentile == 0;
+    }
+
+    // Wait before the given retry, counting the first retry as 1
+    long backoffNanos(int retry) {
+        long cap = maxBackoff.toNanos();
+        long base = initialBackoff.toNanos();
+        int shift = retry - 1;
+        if (shift < 62 && base <= cap >> shift) {
+            cap = base << shift;
+        }
+        return cap == 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{maxAttempts=" + maxAttempts + ", initialBackoff=" + initialBackoff
+                + ", maxBackoff=" + maxBackoff + ", deadline=" + deadline + ", hedgePercentile=" + hedgePercentile + "}";
+    }
+}
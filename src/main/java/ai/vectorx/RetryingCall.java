@@ -0,0 +1,295 @@
+package ai.vectorx;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * One call under a {@link RetryPolicy}: attempts, backoff waits, an optional hedge and the
+ * deadline, ending in the first response that is final or the last error.
+ *
+ * A response whose status is still retryable when attempts or time run out completes the
+ * call as it is, so callers see the same status errors as without retries. The request body
+ * is only released once the whole call has settled, since every attempt re-sends it.
+ *
+ * Deadlines, hedges and backoff waits share one daemon timer thread. Timers still pending
+ * when the call settles are cancelled and removed from its queue, so long deadlines at high
+ * call rates do not pile up in the timer.
+ */
+final class RetryingCall<T> {
+    // Reads with fewer latency samples than this are not hedged
+    static final int MIN_HEDGE_SAMPLES = 20;
+    private static final ScheduledThreadPoolExecutor TIMER = timer();
+
+    private final ApiClient client;
+    private final HttpRequest request;
+    private final HttpResponse.BodyHandler<T> handler;
+    private final ApiClient.Call call;
+    private final RetryPolicy policy;
+    private final long deadline;
+    // Told the latency of the attempt that settles the call, may be null
+    private final LongConsumer attemptLatency;
+    private final CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+    // Guarded by this
+    private final List<CompletableFuture<HttpResponse<T>>> inFlight = new ArrayList<>(2);
+    private int attempts;
+    private boolean hedged;
+    private final List<ScheduledFuture<?>> timers = new ArrayList<>(2);
+
+    RetryingCall(ApiClient client, HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                 ApiClient.Call call, RetryPolicy policy, LongConsumer attemptLatency) {
+        this.client = client;
+        this.attemptLatency = attemptLatency;
+        this.request = request;
+        this.handler = handler;
+        this.call = call;
+        this.policy = policy;
+        this.deadline = policy.getDeadline() == null ? Long.MAX_VALUE
+                : System.nanoTime() + policy.getDeadline().toNanos();
+    }
+
+    CompletableFuture<HttpResponse<T>> start() {
+        result.whenComplete((response, error) -> {
+            cancelTimers();
+            cancelInFlight();
+            MsgPackEncoder.releaseBody(request);
+        });
+        if (policy.getDeadline() != null) {
+            schedule(policy.getDeadline().toNanos(), () ->
+                    result.completeExceptionally(new HttpTimeoutException(
+                            "Deadline of " + policy.getDeadline().toMillis() + " ms exceeded after " + attempts() + " attempts")));
+        }
+        attempt();
+        if (call == ApiClient.Call.READ && policy.getHedgePercentile() > 0) {
+            long delay = client.readLatency().percentileNanos(policy.getHedgePercentile(), MIN_HEDGE_SAMPLES);
+            if (delay >= 0) {
+                schedule(delay, this::hedge);
+            }
+        }
+        return result;
+    }
+
+    // Runs the task on the common pool after the delay, unless the call settles first
+    private void schedule(long delayNanos, Runnable task) {
+        synchronized (this) {
+            if (result.isDone()) {
+                return;
+            }
+            timers.removeIf(ScheduledFuture::isDone);
+            timers.add(TIMER.schedule(() -> ForkJoinPool.commonPool().execute(task), delayNanos, TimeUnit.NANOSECONDS));
+        }
+    }
+
+    private void cancelTimers() {
+        List<ScheduledFuture<?>> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(timers);
+            timers.clear();
+        }
+        for (ScheduledFuture<?> timer : pending) {
+            timer.cancel(false);
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor timer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "vectorx-retry-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    // Pending timers, for tests
+    static int pendingTimers() {
+        return TIMER.getQueue().size();
+    }
+
+    private void attempt() {
+        CompletableFuture<HttpResponse<T>> exchange;
+        synchronized (this) {
+            if (result.isDone()) {
+                return;
+            }
+            attempts++;
+            exchange = client.exchange(request, handler);
+            inFlight.add(exchange);
+        }
+        long sent = System.nanoTime();
+        exchange.whenComplete((response, error) -> settled(exchange, response, error, sent));
+    }
+
+    // Sends one duplicate of a read that is still waiting on its only attempt
+    private void hedge() {
+        synchronized (this) {
+            if (hedged || result.isDone() || inFlight.size() != 1) {
+                return;
+            }
+            hedged = true;
+            attempts--;
+        }
+        attempt();
+    }
+
+    private void settled(CompletableFuture<HttpResponse<T>> exchange, HttpResponse<T> response, Throwable error,
+                         long sent) {
+        boolean othersPending;
+        synchronized (this) {
+            inFlight.remove(exchange);
+            othersPending = !inFlight.isEmpty();
+        }
+        if (result.isDone()) {
+            return;
+        }
+        Throwable cause = unwrap(error);
+        if (cause instanceof CancellationException) {
+            return;
+        }
+        int status = cause == null ? response.statusCode() : statusOf(cause);
+        boolean retryable = status != 0 ? retryable(status) : retryable(cause);
+        long latency = System.nanoTime() - sent;
+        if (!retryable) {
+            if (cause == null && call == ApiClient.Call.READ && response.statusCode() / 100 == 2) {
+                client.readLatency().add(latency);
+            }
+            finish(response, cause, latency);
+            return;
+        }
+        if (othersPending) {
+            // A hedge is still running and may yet succeed
+            return;
+        }
+        long wait = policy.backoffNanos(attempts());
+        if (cause == null) {
+            wait = Math.max(wait, retryAfterNanos(response));
+        }
+        if (attempts() >= policy.getMaxAttempts() || System.nanoTime() + wait >= deadline) {
+            finish(response, cause, latency);
+            return;
+        }
+        if (wait == 0) {
+            attempt();
+        } else {
+            schedule(wait, this::attempt);
+        }
+    }
+
+    private void finish(HttpResponse<T> response, Throwable cause, long latency) {
+        if (attemptLatency != null) {
+            attemptLatency.accept(latency);
+        }
+        if (cause == null) {
+            result.complete(response);
+        } else {
+            result.completeExceptionally(cause);
+        }
+    }
+
+    private synchronized int attempts() {
+        return attempts;
+    }
+
+    private void cancelInFlight() {
+        List<CompletableFuture<HttpResponse<T>>> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(inFlight);
+        }
+        for (CompletableFuture<HttpResponse<T>> exchange : pending) {
+            exchange.cancel(true);
+        }
+    }
+
+    // 429 and 503 mean the request was turned away; 502 and 504 may follow partial processing
+    private boolean retryable(int status) {
+        if (status == 429 || status == 503) {
+            return true;
+        }
+        return call != ApiClient.Call.WRITE && (status == 502 || status == 504);
+    }
+
+    private boolean retryable(Throwable error) {
+        if (call == ApiClient.Call.WRITE) {
+            // Only failures to connect prove the server never saw the write
+            return error instanceof ConnectException || error instanceof HttpConnectTimeoutException
+                    || error.getCause() instanceof ConnectException;
+        }
+        return error instanceof IOException;
+    }
+
+    // Retry-After in seconds; the HTTP-date form is ignored
+    private static long retryAfterNanos(HttpResponse<?> response) {
+        return response.headers().firstValue("Retry-After").map(value -> {
+            try {
+                return TimeUnit.SECONDS.toNanos(Long.parseLong(value.trim()));
+            } catch (NumberFormatException e) {
+                return 0L;
+            }
+        }).orElse(0L);
+    }
+
+    // Status of an error response that failed while its body was decoded, or 0
+    static int statusOf(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof ApiClient.StatusException) {
+                return ((ApiClient.StatusException) e).statusCode();
+            }
+        }
+        return 0;
+    }
+
+    static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * Recent latencies of successful reads, the basis for the hedging delay. A fixed ring of
+     * samples keeps the percentile tracking the current state of the backend.
+     */
+    static final class LatencyWindow {
+        private final long[] samples;
+        private int next;
+        private int size;
+
+        LatencyWindow(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        synchronized void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        // The percentile of the window, or -1 with fewer than minSamples recorded
+        long percentileNanos(double percentile, int minSamples) {
+            long[] sorted;
+            synchronized (this) {
+                if (size < minSamples) {
+                    return -1;
+                }
+                sorted = Arrays.copyOf(samples, size);
+            }
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ai.vectorx;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * int8 scalar quantizer with a per-dimension range: each value is mapped linearly from
+ * {@code [min[d], max[d]]} onto 256 levels and stored as a signed byte, a quarter of the size
+ * of float32. Values outside the range are clamped.
+ *
+ * Use {@link #calibrate} to take the ranges from a sample of the vectors the index will hold.
+ */
+public class ScalarQuantizer implements VectorQuantizer {
+    private static final int LEVELS = 255;
+
+    private final float[] min;
+    private final float[] max;
+    private final float[] step;
+
+    public ScalarQuantizer(float[] min, float[] max) {
+        checkRange(min, max);
+        this.min = min.clone();
+        this.max = max.clone();
+        this.step = new float[min.length];
+        for (int d = 0; d < min.length; d++) {
+            step[d] = (max[d] - min[d]) / LEVELS;
+        }
+    }
+
+    /**
+     * Ranges from the per-dimension minimum and maximum of {@code sample}. On cosine indexes
+     * the sample is normalized first, as the vectors will be when they are upserted.
+     */
+    public static ScalarQuantizer calibrate(Collection<float[]> sample, String spaceType) {
+        float[][] range = range(sample, spaceType);
+        return new ScalarQuantizer(range[0], range[1]);
+    }
+
+    public float[] getMin() { return min.clone(); }
+    public float[] getMax() { return max.clone(); }
+
+    @Override
+    public int getDimension() {
+        return min.length;
+    }
+
+    @Override
+    public int getCodeSize() {
+        return min.length;
+    }
+
+    @Override
+    public void encode(float[] vector, double divisor, byte[] dst, int offset) {
+        checkLength(vector, min.length);
+        for (int d = 0; d < min.length; d++) {
+            float v = divisor == 1.0 ? vector[d] : (float) (vector[d] / divisor);
+            int level = step[d] == 0 ? 0 : Math.round((v - min[d]) / step[d]);
+            dst[offset + d] = (byte) (Math.max(0, Math.min(LEVELS, level)) - 128);
+        }
+    }
+
+    @Override
+    public float[] decode(byte[] codes, int offset) {
+        float[] vector = new float[min.length];
+        for (int d = 0; d < min.length; d++) {
+            vector[d] = min[d] + (codes[offset + d] + 128) * step[d];
+        }
+        return vector;
+    }
+
+    // Per-dimension {min, max} over the sample, normalized first on cosine indexes
+    static float[][] range(Collection<float[]> sample, String spaceType) {
+        if (sample == null || sample.isEmpty()) {
+            throw new IllegalArgumentException("Calibration sample cannot be empty");
+        }
+        int dimension = sample.iterator().next().length;
+        float[] min = new float[dimension];
+        float[] max = new float[dimension];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        float[] scratch = new float[dimension];
+        for (float[] vector : sample) {
+            checkLength(vector, dimension);
+            float[] values = vector;
+            if ("cosine".equals(spaceType)) {
+                double norm = Math.sqrt(VectorKernels.INSTANCE.sumOfSquares(vector));
+                if (norm != 0.0) {
+                    VectorKernels.INSTANCE.divide(vector, norm, scratch);
+                    values = scratch;
+                }
+            }
+            for (int d = 0; d < dimension; d++) {
+                min[d] = Math.min(min[d], values[d]);
+                max[d] = Math.max(max[d], values[d]);
+            }
+        }
+        return new float[][]{min, max};
+    }
+
+    static void checkRange(float[] min, float[] max) {
+        if (min == null || max == null || min.length == 0 || min.length != max.length) {
+            throw new IllegalArgumentException("min and max must be non-empty and of equal length");
+        }
+        for (int d = 0; d < min.length; d++) {
+            if (!(min[d] <= max[d]) || Float.isInfinite(min[d]) || Float.isInfinite(max[d])) {
+                throw new IllegalArgumentException("Invalid range at dimension " + d + ": [" + min[d] + ", " + max[d] + "]");
+            }
+        }
+    }
+
+    static void checkLength(float[] vector, int dimension) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Vector dimension mismatch: expected " + dimension + ", got " + vector.length);
+        }
+    }
+}
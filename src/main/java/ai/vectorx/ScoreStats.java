@@ -0,0 +1,63 @@
+package ai.vectorx;
+
+/**
+ * Summary of the raw scores in one result list, used by the score-based fusion strategies.
+ */
+final class ScoreStats {
+    final int count;
+    final double min;
+    final double max;
+    final double mean;
+    final double stdDev;
+
+    private ScoreStats(int count, double min, double max, double mean, double stdDev) {
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.stdDev = stdDev;
+    }
+
+    // Single pass with Welford's update, so large scores do not lose precision
+    static ScoreStats of(FusionCandidates candidates, boolean dense) {
+        int count = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double mean = 0.0;
+        double m2 = 0.0;
+        for (int slot = 0; slot < candidates.size(); slot++) {
+            if (dense ? !candidates.inDense(slot) : !candidates.inSparse(slot)) {
+                continue;
+            }
+            double score = dense ? candidates.getDenseScore(slot) : candidates.getSparseScore(slot);
+            count++;
+            min = Math.min(min, score);
+            max = Math.max(max, score);
+            double delta = score - mean;
+            mean += delta / count;
+            m2 += delta * (score - mean);
+        }
+        return new ScoreStats(count, min, max, mean, count == 0 ? 0.0 : Math.sqrt(m2 / count));
+    }
+
+    // Maps the list onto [0, 1]; a list whose scores are all equal maps to 1
+    double minMax(double score) {
+        double range = max - min;
+        return range > 0 ? (score - min) / range : 1.0;
+    }
+
+    // Standard score; 0 when the list has no spread
+    double zScore(double score) {
+        return stdDev > 0 ? (score - mean) / stdDev : 0.0;
+    }
+
+    // Min-max over mean +/- 3 standard deviations, clamped to [0, 1]; 0.5 when there is no spread
+    double distribution(double score) {
+        if (stdDev <= 0) {
+            return 0.5;
+        }
+        double low = mean - 3 * stdDev;
+        double normalized = (score - low) / (6 * stdDev);
+        return Math.max(0.0, Math.min(1.0, normalized));
+    }
+}
@@ -0,0 +1,46 @@
+package ai.vectorx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fused hits of a hybrid query, best first.
+ */
+public final class SearchResponse implements Iterable<SearchResult> {
+    private final SearchResult[] results;
+
+    SearchResponse(SearchResult[] results) {
+        this.results = results;
+    }
+
+    public int size() { return results.length; }
+    public boolean isEmpty() { return results.length == 0; }
+    public SearchResult get(int index) { return results[index]; }
+
+    public List<SearchResult> getResults() {
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    @Override
+    public Iterator<SearchResult> iterator() {
+        return getResults().iterator();
+    }
+
+    // The list-of-maps shape returned by HybridIndex.search
+    List<Map<String, Object>> toMaps(boolean includeVectors) {
+        List<Map<String, Object>> maps = new ArrayList<>(results.length);
+        for (SearchResult result : results) {
+            maps.add(result.toMap(includeVectors));
+        }
+        return maps;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResponse" + Arrays.toString(results);
+    }
+}
@@ -0,0 +1,359 @@
+package ai.vectorx;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * One-pass decoder for the {@code /hybrid/{name}/search_separate} response.
+ *
+ * Bytes are fed to Jackson's non-blocking parser as the HTTP client receives them, and hits
+ * are filled straight from the token stream; no String body, JsonNode tree or per-hit map is
+ * built. Required fields are validated while parsing. A missing or null result list reads as
+ * empty. Unknown fields are skipped, and so are vectors when the caller did not ask for them.
+ */
+final class SearchResponseDecoder {
+    private static final int TOP = 0;
+    private static final int OBJECT = 1;
+    private static final int SECTION = 2;
+    private static final int HIT = 3;
+    private static final int VECTOR = 4;
+    private static final int DONE = 5;
+
+    private static final int NONE = 0;
+    private static final int DENSE = 1;
+    private static final int SPARSE = 2;
+    private static final int METADATA = 3;
+
+    /** A ranked hit from the dense or sparse list. */
+    static final class Hit {
+        String id;
+        double score = Double.NaN;
+        int rank = -1;
+        float[] vector;
+    }
+
+    /** Decoded response: both ranked lists plus the base64 metadata by document ID. */
+    static final class Result {
+        final List<Hit> dense = new ArrayList<>();
+        final List<Hit> sparse = new ArrayList<>();
+        final Map<String, String> metadata = new HashMap<>();
+    }
+
+    private final JsonParser parser;
+    private final ByteBufferFeeder feeder;
+    private final boolean includeVectors;
+    private final Result result = new Result();
+
+    private int level = TOP;
+    private int section = NONE;
+    private int skipDepth;
+    private String field;
+    private Hit hit;
+    private String metaId;
+    private String metaValue;
+    private float[] vectorBuffer = new float[256];
+    private int vectorLength;
+
+    SearchResponseDecoder(JsonFactory factory, boolean includeVectors) throws IOException {
+        this.parser = factory.createNonBlockingByteBufferParser();
+        this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+        this.includeVectors = includeVectors;
+    }
+
+    /**
+     * Body handler that decodes 200/201 responses in one pass and fails any other status with
+     * the same message the blocking path used.
+     */
+    static HttpResponse.BodyHandler<Result> handler(JsonFactory factory, boolean includeVectors) {
+        return info -> {
+            if (info.statusCode() != 200 && info.statusCode() != 201) {
+                return HttpResponse.BodySubscribers.mapping(
+                        HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+                        body -> {
+                            throw new ApiClient.StatusException(info.statusCode(),
+                                    "HTTP request failed with status: " + info.statusCode() + ", body: " + body);
+                        });
+            }
+            try {
+                return new Subscriber(new SearchResponseDecoder(factory, includeVectors));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    void feed(ByteBuffer buffer) throws IOException {
+        if (!buffer.hasRemaining()) {
+            return;
+        }
+        // The feeder reads the buffer in place and must be drained before the next one
+        feeder.feedInput(buffer);
+        drain();
+        buffer.position(buffer.limit());
+    }
+
+    Result finish() throws IOException {
+        feeder.endOfInput();
+        drain();
+        if (level != DONE) {
+            throw new IOException("Truncated search response");
+        }
+        parser.close();
+        return result;
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            onToken(token);
+        }
+    }
+
+    private void onToken(JsonToken token) throws IOException {
+        if (skipDepth > 0) {
+            if (token.isStructStart()) {
+                skipDepth++;
+            } else if (token.isStructEnd()) {
+                skipDepth--;
+            }
+            return;
+        }
+
+        switch (level) {
+            case TOP:
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("Search response must be a JSON object");
+                }
+                level = OBJECT;
+                break;
+            case OBJECT:
+                onTopLevel(token);
+                break;
+            case SECTION:
+                onSection(token);
+                break;
+            case HIT:
+                onHitField(token);
+                break;
+            case VECTOR:
+                onVectorValue(token);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void onTopLevel(JsonToken token) throws IOException {
+        if (token == JsonToken.FIELD_NAME) {
+            field = parser.currentName();
+            return;
+        }
+        if (token == JsonToken.END_OBJECT) {
+            level = DONE;
+            return;
+        }
+        if (token == JsonToken.START_ARRAY) {
+            if ("dense_results".equals(field)) {
+                section = DENSE;
+            } else if ("sparse_results".equals(field)) {
+                section = SPARSE;
+            } else if ("metadata".equals(field)) {
+                section = METADATA;
+            } else {
+                skipDepth = 1;
+                return;
+            }
+            level = SECTION;
+            return;
+        }
+        if (token.isStructStart()) {
+            skipDepth = 1;
+        } else if (isSection(field) && token != JsonToken.VALUE_NULL) {
+            throw new IllegalArgumentException(field + " must be a list");
+        }
+    }
+
+    private void onSection(JsonToken token) {
+        if (token == JsonToken.END_ARRAY) {
+            section = NONE;
+            level = OBJECT;
+        } else if (token == JsonToken.START_OBJECT) {
+            if (section == METADATA) {
+                metaId = null;
+                metaValue = null;
+            } else {
+                hit = new Hit();
+            }
+            field = null;
+            level = HIT;
+        } else {
+            throw new IllegalArgumentException(sectionName() + " entries must be maps");
+        }
+    }
+
+    private void onHitField(JsonToken token) throws IOException {
+        if (token == JsonToken.FIELD_NAME) {
+            field = parser.currentName();
+            return;
+        }
+        if (token == JsonToken.END_OBJECT) {
+            endHit();
+            return;
+        }
+
+        if (section == METADATA) {
+            if ("id".equals(field)) {
+                metaId = parser.getValueAsString();
+            } else if ("meta".equals(field) && token == JsonToken.VALUE_STRING) {
+                metaValue = parser.getText();
+            } else if (token.isStructStart()) {
+                skipDepth = 1;
+            }
+            return;
+        }
+
+        switch (field == null ? "" : field) {
+            case "id":
+                hit.id = parser.getValueAsString();
+                break;
+            case "score":
+                hit.score = parser.getValueAsDouble();
+                break;
+            case "rank":
+                hit.rank = parser.getValueAsInt();
+                break;
+            case "vector":
+                if (token == JsonToken.START_ARRAY) {
+                    if (includeVectors) {
+                        vectorLength = 0;
+                        level = VECTOR;
+                    } else {
+                        skipDepth = 1;
+                    }
+                } else if (token == JsonToken.VALUE_STRING && includeVectors) {
+                    // float16 indexes may return base64 little-endian halves
+                    hit.vector = Utils.decodeVector(Base64.getDecoder().decode(parser.getText()));
+                }
+                break;
+            default:
+                if (token.isStructStart()) {
+                    skipDepth = 1;
+                }
+                break;
+        }
+    }
+
+    private void onVectorValue(JsonToken token) throws IOException {
+        if (token == JsonToken.END_ARRAY) {
+            hit.vector = Arrays.copyOf(vectorBuffer, vectorLength);
+            level = HIT;
+            return;
+        }
+        if (token.isNumeric()) {
+            if (vectorLength == vectorBuffer.length) {
+                vectorBuffer = Arrays.copyOf(vectorBuffer, vectorLength * 2);
+            }
+            vectorBuffer[vectorLength++] = parser.getFloatValue();
+        } else if (token.isStructStart()) {
+            skipDepth = 1;
+        }
+    }
+
+    private void endHit() {
+        level = SECTION;
+        if (section == METADATA) {
+            if (metaId == null) {
+                throw new IllegalArgumentException("metadata entry missing required key: id");
+            }
+            result.metadata.put(metaId, metaValue);
+            return;
+        }
+        if (hit.id == null || Double.isNaN(hit.score) || hit.rank < 0) {
+            throw new IllegalArgumentException(sectionName() + " entry missing required key: "
+                    + (hit.id == null ? "id" : Double.isNaN(hit.score) ? "score" : "rank"));
+        }
+        (section == DENSE ? result.dense : result.sparse).add(hit);
+        hit = null;
+    }
+
+    private String sectionName() {
+        return section == DENSE ? "dense_results" : section == SPARSE ? "sparse_results" : "metadata";
+    }
+
+    private static boolean isSection(String name) {
+        return "dense_results".equals(name) || "sparse_results".equals(name) || "metadata".equals(name);
+    }
+
+    // Feeds each received buffer to the decoder and completes with the decoded result
+    private static final class Subscriber implements HttpResponse.BodySubscriber<Result> {
+        private final SearchResponseDecoder decoder;
+        private final CompletableFuture<Result> body = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+
+        Subscriber(SearchResponseDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        public CompletionStage<Result> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (body.isDone()) {
+                return;
+            }
+            try {
+                for (ByteBuffer item : items) {
+                    decoder.feed(item);
+                }
+            } catch (Exception e) {
+                body.completeExceptionally(e);
+                subscription.cancel();
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (body.isDone()) {
+                return;
+            }
+            try {
+                body.complete(decoder.finish());
+            } catch (Exception e) {
+                body.completeExceptionally(e);
+            }
+        }
+    }
+}
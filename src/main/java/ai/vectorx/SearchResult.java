@@ -0,0 +1,97 @@
+package ai.vectorx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One fused hit from a hybrid query. {@link #getScore()} is the fused score; the raw
+ * per-list scores are kept alongside it.
+ *
+ * Scores and ranks are primitives and the vector stays a {@code float[]}. Metadata arrives
+ * compressed and is only decoded the first time {@link #getMeta()} is called, so callers
+ * that just need IDs and scores never inflate it. A rank of 0 means the document was not in
+ * that list.
+ */
+public final class SearchResult {
+    private final String id;
+    private final double score;
+    private final int denseRank;
+    private final int sparseRank;
+    private final double denseScore;
+    private final double sparseScore;
+    private final float[] vector;
+    // Null when the server sent no metadata entry for this ID
+    private final LazyMetadata meta;
+
+    SearchResult(String id, double score, int denseRank, int sparseRank, double denseScore, double sparseScore,
+                 float[] vector, String encodedMeta, boolean hasMeta, Set<String> includeFields) {
+        this.id = id;
+        this.score = score;
+        this.denseRank = denseRank;
+        this.sparseRank = sparseRank;
+        this.denseScore = denseScore;
+        this.sparseScore = sparseScore;
+        this.vector = vector;
+        this.meta = hasMeta ? new LazyMetadata(encodedMeta, LazyMetadata.Encoding.BASE64_ZLIB, id, includeFields)
+                : null;
+    }
+
+    public String getId() { return id; }
+    public double getScore() { return score; }
+    public int getDenseRank() { return denseRank; }
+    public int getSparseRank() { return sparseRank; }
+    // Raw server scores; NaN when the document was not in that list
+    public double getDenseScore() { return denseScore; }
+    public double getSparseScore() { return sparseScore; }
+    public boolean hasVector() { return vector != null; }
+    public int getDimension() { return vector == null ? 0 : vector.length; }
+
+    // A copy, so the result stays immutable; null unless vectors were requested
+    public float[] getVector() {
+        return vector == null ? null : vector.clone();
+    }
+
+    /**
+     * Decoded metadata, or an empty map when the server sent none. Decoding happens on the
+     * first read of the returned map, not on this call, and that read throws
+     * {@code IllegalStateException} if the metadata cannot be decoded. When the query named
+     * included fields, only those keys are present. The map is read-only.
+     */
+    public Map<String, Object> getMeta() {
+        return meta != null ? Collections.unmodifiableMap(meta) : Collections.emptyMap();
+    }
+
+    // The map shape returned by HybridIndex.search, where unreadable metadata is an empty map
+    Map<String, Object> toMap(boolean includeVector) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("id", id);
+        result.put("rrf_score", score);
+        result.put("sparse_rank", sparseRank);
+        result.put("dense_rank", denseRank);
+        result.put("meta", meta != null ? meta.emptyOnError() : "");
+        if (includeVector) {
+            result.put("vector", vector == null ? null : toDoubleList(vector));
+        }
+        return result;
+    }
+
+    private static List<Double> toDoubleList(float[] vector) {
+        List<Double> values = new ArrayList<>(vector.length);
+        for (float v : vector) {
+            values.add((double) v);
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResult{id=" + id
+                + ", score=" + score
+                + ", denseRank=" + denseRank
+                + ", sparseRank=" + sparseRank + "}";
+    }
+}
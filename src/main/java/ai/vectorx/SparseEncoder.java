@@ -0,0 +1,243 @@
+package ai.vectorx;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns text into {@link SparseVector}s for a hybrid index: a tokenizer, feature hashing into
+ * the index's {@code vocabSize} and BM25 or TF-IDF weighting from corpus statistics.
+ *
+ * The weighting is split the usual way for sparse retrieval, so that the server's dot
+ * product is the BM25 score. Document vectors carry the saturated, length-normalized term
+ * frequency, and query vectors carry each term's IDF. Statistics are gathered incrementally
+ * with {@link #fit} as documents arrive. Queries always use the current document
+ * frequencies. Under BM25, documents are length-normalized against the average document
+ * length fitted so far, so a document's stored weights depend on when it was encoded: with
+ * nothing fitted yet the normalization is 1, and it drifts as the average moves. Fit a
+ * representative sample before encoding documents, and pin the average with
+ * {@link #freezeAverageLength} so documents upserted early and late stay comparable;
+ * otherwise re-encode earlier documents once the average has shifted. TF-IDF document
+ * weights do not depend on corpus statistics.
+ *
+ * Tokens are maximal runs of letters and digits, lowercased. Each is hashed while it is
+ * scanned, so no strings are built. Documents and queries must be encoded with the same
+ * vocabSize, since the hash fixes which bucket a token lands in. All methods are safe to
+ * call from many threads: the statistics are atomic counters, and encoding keeps its state
+ * on the stack.
+ */
+public class SparseEncoder {
+    public enum Weighting { BM25, TF_IDF }
+
+    public static final double DEFAULT_K1 = 1.2;
+    public static final double DEFAULT_B = 0.75;
+
+    private final int vocabSize;
+    private final Weighting weighting;
+    private final double k1;
+    private final double b;
+    private final AtomicIntegerArray documentFrequency;
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong tokens = new AtomicLong();
+    // Average length documents are normalized against once frozen; 0 while it follows the corpus
+    private volatile double frozenAverageLength;
+
+    public SparseEncoder(int vocabSize) {
+        this(vocabSize, Weighting.BM25, DEFAULT_K1, DEFAULT_B);
+    }
+
+    public SparseEncoder(int vocabSize, Weighting weighting, double k1, double b) {
+        if (vocabSize <= 0) {
+            throw new IllegalArgumentException("vocabSize must be positive");
+        }
+        if (weighting == null) {
+            throw new IllegalArgumentException("Weighting cannot be null");
+        }
+        if (!(k1 >= 0) || !(b >= 0 && b <= 1)) {
+            throw new IllegalArgumentException("k1 must be non-negative and b between 0 and 1");
+        }
+        this.vocabSize = vocabSize;
+        this.weighting = weighting;
+        this.k1 = k1;
+        this.b = b;
+        this.documentFrequency = new AtomicIntegerArray(vocabSize);
+    }
+
+    public int getVocabSize() { return vocabSize; }
+    public Weighting getWeighting() { return weighting; }
+    public double getK1() { return k1; }
+    public double getB() { return b; }
+    public long getDocumentCount() { return documents.get(); }
+
+    public int getDocumentFrequency(int index) {
+        return documentFrequency.get(index);
+    }
+
+    // Average token count of the fitted documents
+    public double getAverageLength() {
+        long count = documents.get();
+        return count == 0 ? 0.0 : (double) tokens.get() / count;
+    }
+
+    /**
+     * Fixes the average document length {@link #encodeDocument} normalizes against, so later
+     * fits no longer change how documents are weighted. Pass {@link #getAverageLength()} after
+     * fitting a sample, or a known average for the corpus.
+     */
+    public void freezeAverageLength(double averageLength) {
+        if (!(averageLength > 0) || Double.isInfinite(averageLength)) {
+            throw new IllegalArgumentException("Average length must be positive and finite");
+        }
+        this.frozenAverageLength = averageLength;
+    }
+
+    // The frozen average length, or 0 while documents are normalized against the fitted corpus
+    public double getFrozenAverageLength() {
+        return frozenAverageLength;
+    }
+
+    // Bucket a single token hashes to, as the encoder would place it
+    public int indexOf(String token) {
+        int[] hashes = tokenize(token);
+        return hashes.length == 0 ? -1 : bucket(hashes[0]);
+    }
+
+    /**
+     * Adds a document to the corpus statistics. Call it for every document in the index,
+     * before {@link #encodeDocument}; see the class comment on length normalization.
+     */
+    public void fit(String text) {
+        Terms terms = terms(text);
+        for (int i = 0; i < terms.size; i++) {
+            documentFrequency.incrementAndGet(terms.indices[i]);
+        }
+        tokens.addAndGet(terms.length);
+        documents.incrementAndGet();
+    }
+
+    /**
+     * Document-side vector: BM25's saturated term frequency, normalized by the document's
+     * length against the frozen average, or else the average fitted so far (no normalization
+     * while nothing is fitted). TF-IDF uses {@code 1 + ln(tf)}.
+     */
+    public SparseVector encodeDocument(String text) {
+        Terms terms = terms(text);
+        double frozen = frozenAverageLength;
+        double averageLength = frozen > 0 ? frozen : getAverageLength();
+        double lengthNorm = averageLength == 0.0 ? 1.0 : 1 - b + b * terms.length / averageLength;
+        float[] values = new float[terms.size];
+        for (int i = 0; i < terms.size; i++) {
+            double tf = terms.counts[i];
+            values[i] = (float) (weighting == Weighting.BM25
+                    ? tf * (k1 + 1) / (tf + k1 * lengthNorm)
+                    : 1 + Math.log(tf));
+        }
+        return SparseVector.sorted(Arrays.copyOf(terms.indices, terms.size), values);
+    }
+
+    /**
+     * Query-side vector: each distinct term weighted by its IDF, scaled by how often it occurs
+     * in the query. Terms no fitted document contains still get the largest IDF.
+     */
+    public SparseVector encodeQuery(String text) {
+        Terms terms = terms(text);
+        long count = documents.get();
+        float[] values = new float[terms.size];
+        for (int i = 0; i < terms.size; i++) {
+            values[i] = (float) (terms.counts[i] * idf(documentFrequency.get(terms.indices[i]), count));
+        }
+        return SparseVector.sorted(Arrays.copyOf(terms.indices, terms.size), values);
+    }
+
+    // BM25's IDF, kept positive for very common terms; smoothed ln(N / df) for TF-IDF
+    private double idf(int df, long count) {
+        if (weighting == Weighting.BM25) {
+            return Math.log(1 + (count - df + 0.5) / (df + 0.5));
+        }
+        return Math.log((1.0 + count) / (1.0 + df)) + 1;
+    }
+
+    private int bucket(int hash) {
+        return Math.floorMod(hash, vocabSize);
+    }
+
+    // Distinct buckets of the text in ascending order, with their counts and the token total
+    private Terms terms(String text) {
+        int[] hashes = tokenize(text);
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = bucket(hashes[i]);
+        }
+        Arrays.sort(hashes);
+        Terms terms = new Terms(hashes.length);
+        for (int i = 0; i < hashes.length; i++) {
+            if (terms.size > 0 && terms.indices[terms.size - 1] == hashes[i]) {
+                terms.counts[terms.size - 1]++;
+            } else {
+                terms.indices[terms.size] = hashes[i];
+                terms.counts[terms.size++] = 1;
+            }
+        }
+        return terms;
+    }
+
+    private static final class Terms {
+        final int[] indices;
+        final int[] counts;
+        final int length;
+        int size;
+
+        Terms(int length) {
+            this.indices = new int[length];
+            this.counts = new int[length];
+            this.length = length;
+        }
+    }
+
+    /**
+     * Hashes of the lowercased letter-and-digit runs of {@code text}, in order. The hash is
+     * FNV-1a over the code points finished with MurmurHash3's mixer, and must stay stable:
+     * indexes built with one version have to be queried with the same buckets.
+     */
+    static int[] tokenize(String text) {
+        if (text == null) {
+            return new int[0];
+        }
+        int[] hashes = new int[16];
+        int count = 0;
+        int hash = 0;
+        boolean inToken = false;
+        for (int i = 0; i < text.length(); ) {
+            int c = text.codePointAt(i);
+            i += Character.charCount(c);
+            if (Character.isLetterOrDigit(c)) {
+                if (!inToken) {
+                    hash = 0x811c9dc5;
+                    inToken = true;
+                }
+                hash = (hash ^ Character.toLowerCase(c)) * 0x01000193;
+            } else if (inToken) {
+                if (count == hashes.length) {
+                    hashes = Arrays.copyOf(hashes, count * 2);
+                }
+                hashes[count++] = mix(hash);
+                inToken = false;
+            }
+        }
+        if (inToken) {
+            if (count == hashes.length) {
+                hashes = Arrays.copyOf(hashes, count + 1);
+            }
+            hashes[count++] = mix(hash);
+        }
+        return count == hashes.length ? hashes : Arrays.copyOf(hashes, count);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
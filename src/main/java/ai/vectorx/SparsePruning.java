@@ -0,0 +1,60 @@
+package ai.vectorx;
+
+/**
+ * Query-time pruning of sparse query terms, attached with {@link HybridIndex#setSparsePruning}.
+ *
+ * Learned sparse encoders emit hundreds of low-weight terms per query, and the server's
+ * sparse path slows down with every one of them while the tail barely moves the ranking.
+ * Terms below {@code minWeight} are dropped first, then only the heaviest terms carrying
+ * {@code massFraction} of the remaining absolute weight are kept, then at most
+ * {@code maxTerms} of those. Each step is off at its default: 0 terms, weight 0 and a
+ * fraction of 1. Weights are compared by absolute value and kept terms are sent unchanged.
+ */
+public class SparsePruning {
+    public static final SparsePruning NONE = new SparsePruning(0, 0f, 1.0);
+
+    private final int maxTerms;
+    private final float minWeight;
+    private final double massFraction;
+
+    public SparsePruning(int maxTerms) {
+        this(maxTerms, 0f, 1.0);
+    }
+
+    /**
+     * @param maxTerms     most terms to send; 0 sends all
+     * @param minWeight    smallest absolute weight to send
+     * @param massFraction share of the total absolute weight to keep, in (0, 1]
+     */
+    public SparsePruning(int maxTerms, float minWeight, double massFraction) {
+        if (maxTerms < 0) {
+            throw new IllegalArgumentException("maxTerms cannot be negative");
+        }
+        if (!(minWeight >= 0f) || Float.isInfinite(minWeight)) {
+            throw new IllegalArgumentException("minWeight must be a non-negative finite number");
+        }
+        if (!(massFraction > 0.0 && massFraction <= 1.0)) {
+            throw new IllegalArgumentException("massFraction must be in (0, 1]");
+        }
+        this.maxTerms = maxTerms;
+        this.minWeight = minWeight;
+        this.massFraction = massFraction;
+    }
+
+    public int getMaxTerms() { return maxTerms; }
+    public float getMinWeight() { return minWeight; }
+    public double getMassFraction() { return massFraction; }
+
+    public SparseVector apply(SparseVector vector) {
+        SparseVector pruned = minWeight > 0f ? vector.pruneBelow(minWeight) : vector;
+        if (massFraction < 1.0) {
+            pruned = pruned.keepMass(massFraction);
+        }
+        return maxTerms > 0 ? pruned.top(maxTerms) : pruned;
+    }
+
+    @Override
+    public String toString() {
+        return "SparsePruning{maxTerms=" + maxTerms + ", minWeight=" + minWeight + ", massFraction=" + massFraction + "}";
+    }
+}
@@ -0,0 +1,302 @@
+package ai.vectorx;
+
+import java.util.Arrays;
+
+/**
+ * Immutable sparse vector held as parallel {@code int[]} indices and {@code float[]} values,
+ * sorted by index with no duplicates. That layout lets dot products run as a linear merge and
+ * lets the wire encoders write terms straight from the arrays.
+ *
+ * The constructor sorts its input and sums the values of repeated indices, so term weights
+ * from several sources can be concatenated and passed in as they are.
+ */
+public final class SparseVector {
+    static final SparseVector EMPTY = sorted(new int[0], new float[0]);
+
+    // Sorted ascending and unique; shared with encoders and records, never modified
+    final int[] indices;
+    final float[] values;
+
+    public SparseVector(int[] indices, float[] values) {
+        if (indices == null || values == null || indices.length != values.length) {
+            throw new IllegalArgumentException("Sparse indices and values must be non-null and of the same length");
+        }
+        int[] sortedIndices = indices.clone();
+        float[] sortedValues = values.clone();
+        if (!isSortedUnique(sortedIndices)) {
+            sortByIndex(sortedIndices, sortedValues);
+        }
+        int size = mergeDuplicates(sortedIndices, sortedValues);
+        if (size > 0 && sortedIndices[0] < 0) {
+            throw new IllegalArgumentException("Sparse index cannot be negative: " + sortedIndices[0]);
+        }
+        this.indices = size == sortedIndices.length ? sortedIndices : Arrays.copyOf(sortedIndices, size);
+        this.values = size == sortedValues.length ? sortedValues : Arrays.copyOf(sortedValues, size);
+    }
+
+    private SparseVector(int[] indices, float[] values, Void trusted) {
+        this.indices = indices;
+        this.values = values;
+    }
+
+    // Takes ownership of arrays that are already sorted and unique
+    static SparseVector sorted(int[] indices, float[] values) {
+        return new SparseVector(indices, values, null);
+    }
+
+    public int size() { return indices.length; }
+    public int getIndex(int i) { return indices[i]; }
+    public float getValue(int i) { return values[i]; }
+    public int[] getIndices() { return indices.clone(); }
+    public float[] getValues() { return values.clone(); }
+
+    /**
+     * Throws when an index falls outside {@code [0, vocabSize)}, the space a hybrid index was
+     * created with. A non-positive vocabSize skips the check.
+     */
+    public SparseVector checkVocabSize(int vocabSize) {
+        checkIndices(indices, vocabSize);
+        return this;
+    }
+
+    // Dot product over the shared indices, as one merge pass over both sorted arrays
+    public double dot(SparseVector other) {
+        int[] a = indices;
+        int[] b = other.indices;
+        double sum = 0.0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                sum += (double) values[i++] * other.values[j++];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * The {@code k} terms with the largest absolute weight, still sorted by index. Ties keep
+     * the lower index. Returns this vector when it has at most {@code k} terms.
+     */
+    public SparseVector top(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k cannot be negative");
+        }
+        if (k >= indices.length) {
+            return this;
+        }
+        if (k == 0) {
+            return EMPTY;
+        }
+        // Weights of the kept terms in a min-heap, so the weakest is replaced first
+        int[] heap = new int[k];
+        for (int i = 0; i < k; i++) {
+            heap[i] = i;
+            siftUp(heap, i);
+        }
+        for (int i = k; i < indices.length; i++) {
+            if (Math.abs(values[i]) > Math.abs(values[heap[0]])) {
+                heap[0] = i;
+                siftDown(heap, k);
+            }
+        }
+        Arrays.sort(heap);
+        int[] keptIndices = new int[k];
+        float[] keptValues = new float[k];
+        for (int i = 0; i < k; i++) {
+            keptIndices[i] = indices[heap[i]];
+            keptValues[i] = values[heap[i]];
+        }
+        return sorted(keptIndices, keptValues);
+    }
+
+    // Drops the terms whose absolute weight is below minWeight
+    public SparseVector pruneBelow(float minWeight) {
+        boolean[] keep = new boolean[indices.length];
+        int count = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if (Math.abs(values[i]) >= minWeight) {
+                keep[i] = true;
+                count++;
+            }
+        }
+        return select(keep, count);
+    }
+
+    /**
+     * The fewest heaviest terms whose absolute weights add up to at least {@code fraction} of
+     * the vector's total, still sorted by index.
+     */
+    public SparseVector keepMass(double fraction) {
+        if (!(fraction >= 0.0 && fraction <= 1.0)) {
+            throw new IllegalArgumentException("Mass fraction must be between 0 and 1");
+        }
+        if (fraction == 1.0 || indices.length == 0) {
+            return this;
+        }
+        // Positions ordered by absolute weight, heaviest first, via packed (weight, position) longs
+        long[] order = new long[indices.length];
+        double total = 0.0;
+        for (int i = 0; i < indices.length; i++) {
+            float weight = Math.abs(values[i]);
+            total += weight;
+            order[i] = (long) Float.floatToIntBits(weight) << 32 | (indices.length - 1 - i);
+        }
+        Arrays.sort(order);
+        boolean[] keep = new boolean[indices.length];
+        double target = fraction * total;
+        double mass = 0.0;
+        int count = 0;
+        for (int k = order.length - 1; k >= 0 && mass < target; k--) {
+            int i = indices.length - 1 - (int) order[k];
+            mass += Math.abs(values[i]);
+            keep[i] = true;
+            count++;
+        }
+        return select(keep, count);
+    }
+
+    // Terms at the positions where keep is set, in order
+    private SparseVector select(boolean[] keep, int count) {
+        if (count == indices.length) {
+            return this;
+        }
+        int[] keptIndices = new int[count];
+        float[] keptValues = new float[count];
+        int n = 0;
+        for (int i = 0; i < indices.length; i++) {
+            if (keep[i]) {
+                keptIndices[n] = indices[i];
+                keptValues[n++] = values[i];
+            }
+        }
+        return sorted(keptIndices, keptValues);
+    }
+
+    static void checkIndices(int[] indices, int vocabSize) {
+        if (vocabSize <= 0) {
+            return;
+        }
+        for (int index : indices) {
+            if (index < 0 || index >= vocabSize) {
+                throw new IllegalArgumentException("Sparse index " + index + " is outside the vocabulary of size " + vocabSize);
+            }
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SparseVector)) {
+            return false;
+        }
+        SparseVector other = (SparseVector) o;
+        return Arrays.equals(indices, other.indices) && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(indices) + Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("SparseVector{");
+        for (int i = 0; i < indices.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(indices[i]).append('=').append(values[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    // Heap ordered by absolute weight; the lower index wins ties so it is kept
+    private boolean weaker(int a, int b) {
+        float wa = Math.abs(values[a]);
+        float wb = Math.abs(values[b]);
+        return wa < wb || (wa == wb && a > b);
+    }
+
+    private void siftUp(int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!weaker(heap[i], heap[parent])) {
+                break;
+            }
+            swap(heap, i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && weaker(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!weaker(heap[child], heap[i])) {
+                break;
+            }
+            swap(heap, i, child);
+            i = child;
+        }
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    private static boolean isSortedUnique(int[] indices) {
+        for (int i = 1; i < indices.length; i++) {
+            if (indices[i - 1] >= indices[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Sorts both arrays by index through packed (index, position) longs, which keeps equal
+    // indices in their original order
+    private static void sortByIndex(int[] indices, float[] values) {
+        long[] keys = new long[indices.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (long) indices[i] << 32 | i;
+        }
+        Arrays.sort(keys);
+        float[] original = values.clone();
+        for (int i = 0; i < keys.length; i++) {
+            indices[i] = (int) (keys[i] >> 32);
+            values[i] = original[(int) keys[i]];
+        }
+    }
+
+    // Sums runs of equal indices in place and returns the new length
+    private static int mergeDuplicates(int[] indices, float[] values) {
+        if (indices.length == 0) {
+            return 0;
+        }
+        int size = 1;
+        for (int i = 1; i < indices.length; i++) {
+            if (indices[i] == indices[size - 1]) {
+                values[size - 1] += values[i];
+            } else {
+                indices[size] = indices[i];
+                values[size++] = values[i];
+            }
+        }
+        return size;
+    }
+}
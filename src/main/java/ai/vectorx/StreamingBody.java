@@ -0,0 +1,106 @@
+package ai.vectorx;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+
+/**
+ * Upsert body that is encoded record by record as the HTTP client pulls it.
+ *
+ * Each demanded item is filled by packing records until roughly {@link #CHUNK_SIZE} bytes are
+ * staged, then copied into a fresh heap chunk. The batch never exists as one contiguous
+ * array, and encoding overlaps with sending. Records are packed into a small staging array
+ * first because msgpack-core can only write into direct buffers with internal JDK access
+ * opened.
+ *
+ * The client may still hold an emitted chunk after {@code onNext} returns, so chunks are never
+ * reused; the body keeps no reference to them, and each one becomes garbage once the client
+ * has written it. Peak memory per subscription is the staging array (two chunks, or one
+ * record if a record is larger) plus the chunks the client has taken but not yet written.
+ * The client only requests more as it drains its send queue (one item at a time on HTTP/1.1,
+ * within the flow-control window on HTTP/2), so that is a few chunks, not the batch. A new
+ * subscription (a retry) re-encodes from the first record.
+ */
+final class StreamingBody implements MsgPackEncoder.ReleasableBody {
+    static final int CHUNK_SIZE = 64 * 1024;
+    // Estimated payloads at or above this size are streamed instead of packed into one array
+    static final long DEFAULT_THRESHOLD = 8L * 1024 * 1024;
+    private static final int STAGING_SIZE = 2 * CHUNK_SIZE;
+
+    // Packs one record; called in order from 0 to count - 1
+    interface RecordWriter {
+        void write(MsgPackEncoder encoder, int index) throws IOException;
+    }
+
+    private final int count;
+    private final RecordWriter writer;
+    private volatile boolean released;
+
+    StreamingBody(int count, RecordWriter writer) {
+        this.count = count;
+        this.writer = writer;
+    }
+
+    @Override
+    public long contentLength() {
+        // Unknown up front: chunked on HTTP/1.1, plain DATA frames on HTTP/2
+        return -1;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (released) {
+            MsgPackEncoder.rejectReleased(subscriber);
+            return;
+        }
+        subscriber.onSubscribe(new Pull(subscriber));
+    }
+
+    @Override
+    public void release() {
+        released = true;
+    }
+
+    // One subscription: encodes on whichever thread requests, never more than demanded
+    private final class Pull extends PullSubscription {
+        // Only touched from the drain loop, which runs on one thread at a time
+        private MsgPackEncoder encoder;
+        private int next = -1;
+
+        Pull(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            super(subscriber);
+        }
+
+        // Packs records until a chunk's worth is staged; null once everything has been sent
+        @Override
+        ByteBuffer nextItem() throws IOException {
+            if (next == count) {
+                return null;
+            }
+            if (encoder == null) {
+                encoder = MsgPackEncoder.open(STAGING_SIZE);
+                encoder.packer().packArrayHeader(count);
+                next = 0;
+            }
+            while (next < count && encoder.pending() < CHUNK_SIZE) {
+                writer.write(encoder, next++);
+            }
+            ByteBuffer chunk = ByteBuffer.allocate(encoder.pending());
+            encoder.drainTo(chunk);
+            chunk.flip();
+            if (next == count) {
+                encoder.discard();
+                encoder = null;
+            }
+            return chunk.asReadOnlyBuffer();
+        }
+
+        @Override
+        void onTerminate() {
+            if (encoder != null) {
+                encoder.discard();
+                encoder = null;
+            }
+        }
+    }
+}
@@ -1,78 +1,101 @@
 package ai.vectorx;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
-import java.util.zip.Deflater;
-import java.util.zip.Inflater;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
 public class Utils {
   public static byte[] jsonZip(Map<String, Object> map) throws IOException {
-    if (map == null || map.isEmpty()) {
-      return new byte[0];
-    }
-
-    if (map == null || map.isEmpty()) {
-      return new byte[0]; // same as b'' in Python
-    }
-
-    // 1. Convert map to JSON
-    ObjectMapper jsonMapper = new ObjectMapper();
-    String jsonString = jsonMapper.writeValueAsString(map);
-
-    // 2. Convert JSON string to UTF-8 bytes
-    byte[] input = jsonString.getBytes("UTF-8");
-
-    // 3. Compress using zlib (Deflater)
-    Deflater deflater = new Deflater();
-    deflater.setInput(input);
-    deflater.finish();
-
-    byte[] buffer = new byte[1024];
-    int compressedDataLength = deflater.deflate(buffer);
-    deflater.end();
-
-    // 4. Copy only the compressed part
-    byte[] output = new byte[compressedDataLength];
-    System.arraycopy(buffer, 0, output, 0, compressedDataLength);
-//    System.out.println("Output" + output);
+    return MetadataCodec.zip(map, MetadataCodec.DEFAULT_LEVEL);
+  }
 
-    return output;
+  /**
+   * Compresses metadata at the given zlib level: 1 is fastest, 9 smallest, -1 the zlib default.
+   */
+  public static byte[] jsonZip(Map<String, Object> map, int level) throws IOException {
+    return MetadataCodec.zip(map, level);
   }
 
   public static Map<String, Object> jsonUnzip(byte[] compressedData) throws IOException {
-    if (compressedData == null || compressedData.length == 0) {
-      return Map.of(); // same as {} in Python
-    }
+    return MetadataCodec.unzip(compressedData);
+  }
 
-    Inflater inflater = new Inflater();
-    inflater.setInput(compressedData);
+  /**
+   * Waits for an async call and rethrows its failure unwrapped, so the blocking methods
+   * surface the same exceptions they always have.
+   */
+  static <T> T await(CompletableFuture<T> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof CompletionException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw e;
+    }
+  }
 
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    byte[] buffer = new byte[1024];
+  /**
+   * Percent-encodes a value for use as one path segment, so IDs containing {@code /},
+   * {@code ?}, {@code #} or spaces reach the intended route.
+   */
+  static String pathSegment(String value) {
+    if (value == null || value.isEmpty()) {
+      throw new IllegalArgumentException("Vector ID cannot be null or empty");
+    }
+    // URLEncoder targets form bodies: it writes spaces as '+', which a path would keep literally
+    return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+  }
 
-    try {
-      while (!inflater.finished()) {
-        int count = inflater.inflate(buffer);
-        if (count == 0 && inflater.needsInput()) {
-          break; // avoid infinite loop if data is malformed
-        }
-        baos.write(buffer, 0, count);
+  // Normalizes a metadata projection: null keeps every field, otherwise a sorted copy
+  static SortedSet<String> includeFields(Collection<String> fields) {
+    if (fields == null) {
+      return null;
+    }
+    SortedSet<String> names = new TreeSet<>();
+    for (String field : fields) {
+      if (field == null) {
+        throw new IllegalArgumentException("Included field names cannot be null");
       }
-    } catch (Exception e) {
-      throw new IOException("Failed to decompress JSON", e);
-    } finally {
-      inflater.end();
+      names.add(field);
     }
+    return Collections.unmodifiableSortedSet(names);
+  }
 
-    // 1. Convert decompressed bytes back to String
-    String jsonString = baos.toString("UTF-8");
+  // Decodes a vector the server returned as bytes, which are little-endian float16
+  static float[] decodeVector(byte[] bytes) {
+    float[] vector = new float[bytes.length / 2];
+    VectorKernels.INSTANCE.fromHalf(bytes, 0, vector);
+    return vector;
+  }
 
-    // 2. Parse JSON string into Map<String, Object>
-    ObjectMapper jsonMapper = new ObjectMapper();
-    return jsonMapper.readValue(jsonString, Map.class);
+  // Shared argument checks for the weighted fusion strategies
+  static void checkFusionParams(double denseWeight, double sparseWeight, int limit) {
+    if (!(denseWeight >= 0) || !(sparseWeight >= 0)) {
+      throw new IllegalArgumentException("Fusion weights must be non-negative");
+    }
+    if (limit < 0) {
+      throw new IllegalArgumentException("Limit cannot be negative");
+    }
   }
 
 }
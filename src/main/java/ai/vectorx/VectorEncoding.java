@@ -0,0 +1,19 @@
+package ai.vectorx;
+
+/**
+ * How dense vectors are written in upsert payloads.
+ *
+ * {@link #FLOAT32} packs each value as a MessagePack float. {@link #FLOAT16} converts each
+ * value to IEEE half precision (round to nearest even) and packs the whole vector as one
+ * MessagePack binary of little-endian halves, two bytes per dimension instead of five. Only
+ * indexes created with {@code useFp16} accept it, since they store half precision anyway.
+ */
+public enum VectorEncoding {
+    FLOAT32,
+    FLOAT16;
+
+    // Upper bound on packed bytes per dimension, for sizing upsert buffers
+    int bytesPerValue() {
+        return this == FLOAT16 ? 2 : 5;
+    }
+}
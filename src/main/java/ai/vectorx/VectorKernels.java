@@ -0,0 +1,172 @@
+package ai.vectorx;
+
+import java.util.Arrays;
+
+/**
+ * Bulk float kernels on the upsert and query paths: sum of squares for L2 norms, dot
+ * products, division by a norm, and IEEE 754 half-precision (binary16) conversion.
+ *
+ * This class is the portable scalar implementation and runs on any Java 11+ JVM. On JDK 17+
+ * started with {@code --add-modules jdk.incubator.vector}, {@link #INSTANCE} is instead the
+ * Vector API subclass from {@code src/main/java17}, which the {@code simd} build profile
+ * compiles and which is only ever loaded by reflection. It must agree with this class on a
+ * probe vector before it is used; otherwise, or when {@code -Dvectorx.simd=false} is set, the
+ * scalar kernels stay in place.
+ *
+ * Divisions are done in double and rounded once to float, so both implementations produce
+ * identical vectors for the same divisor. Sums may differ in the last bits because lanes are
+ * added in a different order. Squares are also taken in double, whereas the client before
+ * these kernels rounded each {@code v * v} to float first. A norm can therefore differ from
+ * that older client's in the last ulp, and so can the normalized values and the upsert bytes
+ * derived from it.
+ */
+class VectorKernels {
+    // Declared first: the self-test in load() already uses it
+    private static final float SUBNORMAL_MAGIC = Float.intBitsToFloat(113 << 23);
+
+    static final VectorKernels SCALAR = new VectorKernels();
+    static final VectorKernels INSTANCE = load();
+
+    String name() {
+        return "scalar";
+    }
+
+    double sumOfSquares(float[] vector) {
+        double sum = 0.0;
+        for (float v : vector) {
+            sum += (double) v * v;
+        }
+        return sum;
+    }
+
+    // Accumulated in double over the first min(a.length, b.length) values
+    double dot(float[] a, float[] b) {
+        int length = Math.min(a.length, b.length);
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            sum += (double) a[i] * b[i];
+        }
+        return sum;
+    }
+
+    // dst[i] = (float) (src[i] / divisor); src and dst may be the same array
+    void divide(float[] src, double divisor, float[] dst) {
+        for (int i = 0; i < src.length; i++) {
+            dst[i] = (float) (src[i] / divisor);
+        }
+    }
+
+    /**
+     * Writes {@code src[i] / divisor} as little-endian binary16, two bytes per value starting
+     * at {@code dst[offset]}.
+     */
+    void toHalf(float[] src, double divisor, byte[] dst, int offset) {
+        for (int i = 0; i < src.length; i++) {
+            float v = divisor == 1.0 ? src[i] : (float) (src[i] / divisor);
+            short half = floatToHalf(v);
+            dst[offset++] = (byte) half;
+            dst[offset++] = (byte) (half >>> 8);
+        }
+    }
+
+    // Reads dst.length little-endian binary16 values starting at src[offset]
+    void fromHalf(byte[] src, int offset, float[] dst) {
+        for (int i = 0; i < dst.length; i++) {
+            dst[i] = halfToFloat((short) ((src[offset++] & 0xff) | (src[offset++] << 8)));
+        }
+    }
+
+    /**
+     * Rounds to the nearest binary16 value, ties to even. Values of 65520 and above become
+     * infinity and every NaN becomes a quiet NaN (0x7e00, sign kept).
+     */
+    static short floatToHalf(float value) {
+        int f = Float.floatToRawIntBits(value);
+        int sign = (f >>> 16) & 0x8000;
+        f &= 0x7fffffff;
+        int h;
+        if (f >= 0x47800000) {
+            // 65536 or more, infinity or NaN
+            h = f > 0x7f800000 ? 0x7e00 : 0x7c00;
+        } else if (f < 0x38800000) {
+            // Below the smallest normal half: adding 0.5 lets the FPU round the subnormal bits
+            h = Float.floatToRawIntBits(Float.intBitsToFloat(f) + 0.5f) - 0x3f000000;
+        } else {
+            // Rebias the exponent and round the 13 dropped mantissa bits to even
+            int mantissaOdd = (f >>> 13) & 1;
+            h = (f + ((15 - 127) << 23) + 0xfff + mantissaOdd) >>> 13;
+        }
+        return (short) (h | sign);
+    }
+
+    static float halfToFloat(short half) {
+        int h = half & 0xffff;
+        int o = (h & 0x7fff) << 13;
+        int exponent = o & 0x0f800000;
+        o += (127 - 15) << 23;
+        if (exponent == 0x0f800000) {
+            o += (128 - 16) << 23; // infinity or NaN
+        } else if (exponent == 0) {
+            // Zero or subnormal: renormalize with a float subtraction
+            o = Float.floatToRawIntBits(Float.intBitsToFloat(o + (1 << 23)) - SUBNORMAL_MAGIC);
+        }
+        return Float.intBitsToFloat(o | (h & 0x8000) << 16);
+    }
+
+    // The Vector API kernels, or null when this JVM cannot run them
+    static VectorKernels simd() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return null;
+        }
+        try {
+            VectorKernels simd = (VectorKernels) Class.forName("ai.vectorx.SimdVectorKernels")
+                    .getDeclaredConstructor().newInstance();
+            return simd.agreesWith(SCALAR) ? simd : null;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            // Not built into this jar, or the incubator API differs on this JDK
+            return null;
+        }
+    }
+
+    private static VectorKernels load() {
+        VectorKernels simd = "false".equals(System.getProperty("vectorx.simd")) ? null : simd();
+        return simd != null ? simd : SCALAR;
+    }
+
+    // Checks every kernel against the other implementation, including the half-float edge cases
+    private boolean agreesWith(VectorKernels other) {
+        float[] probe = new float[67];
+        for (int i = 0; i < probe.length; i++) {
+            probe[i] = (i - 33) * 0.75f;
+        }
+        probe[1] = 65504f;
+        probe[2] = 65520f;
+        probe[3] = 1e-7f;
+        probe[4] = -0.0f;
+        probe[5] = Float.NaN;
+        probe[6] = Float.NEGATIVE_INFINITY;
+        probe[7] = 3.0518044e-5f;
+
+        float[] a = new float[probe.length];
+        float[] b = new float[probe.length];
+        divide(probe, 3.0, a);
+        other.divide(probe, 3.0, b);
+        byte[] halfA = new byte[probe.length * 2 + 1];
+        byte[] halfB = new byte[probe.length * 2 + 1];
+        toHalf(probe, 1.0, halfA, 1);
+        other.toHalf(probe, 1.0, halfB, 1);
+        if (!Arrays.equals(a, b) || !Arrays.equals(halfA, halfB)) {
+            return false;
+        }
+        toHalf(probe, 3.0, halfA, 1);
+        other.toHalf(probe, 3.0, halfB, 1);
+        fromHalf(halfA, 1, a);
+        other.fromHalf(halfA, 1, b);
+        // Past the special values, so the sums are exact and must match bit for bit
+        float[] small = Arrays.copyOfRange(probe, 8, probe.length);
+        float[] thirds = Arrays.copyOfRange(a, 8, a.length);
+        return Arrays.equals(halfA, halfB) && Arrays.equals(a, b)
+                && sumOfSquares(small) == other.sumOfSquares(small)
+                && dot(small, thirds) == other.dot(small, thirds);
+    }
+}
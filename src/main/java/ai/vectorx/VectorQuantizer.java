@@ -0,0 +1,37 @@
+package ai.vectorx;
+
+/**
+ * Compresses dense vectors to fixed-size codes, and approximately reconstructs them.
+ *
+ * Quantization is client-side only. The server has no format for codes or for the
+ * calibration ranges they depend on, so upserts and queries always send full vectors in the
+ * index's {@link VectorEncoding}. A quantizer is for the copy of the vectors the caller keeps
+ * for a {@link Rescorer}: storing int8 codes takes a quarter of the memory of float32, and
+ * binary codes a thirty-second. Look a candidate's codes up and decode them in the
+ * rescorer's vector function; the rescored ranking is then only as exact as the codes.
+ */
+public interface VectorQuantizer {
+    int getDimension();
+
+    // Bytes per encoded vector
+    int getCodeSize();
+
+    /**
+     * Encodes {@code vector[i] / divisor} into {@link #getCodeSize()} bytes at
+     * {@code dst[offset]}, without allocating.
+     */
+    void encode(float[] vector, double divisor, byte[] dst, int offset);
+
+    // Approximate vector for the code at codes[offset]
+    float[] decode(byte[] codes, int offset);
+
+    default byte[] encode(float[] vector) {
+        byte[] codes = new byte[getCodeSize()];
+        encode(vector, 1.0, codes, 0);
+        return codes;
+    }
+
+    default float[] decode(byte[] codes) {
+        return decode(codes, 0);
+    }
+}
@@ -1,15 +1,16 @@
 package ai.vectorx;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 
-import java.net.*;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 
@@ -17,10 +18,25 @@ public class VectorX {
     private String token;
     private String region = "local";
     private String baseUrl = "http://127.0.0.1:8080/";
-    private HttpClient apiClient;
+    private ApiClient apiClient;
+    // Resolved index handles by name, reused until the refresh interval has passed
+    static final Duration DEFAULT_HANDLE_REFRESH = Duration.ofMinutes(5);
+    private volatile long handleRefreshNanos = DEFAULT_HANDLE_REFRESH.toNanos();
+    private final ConcurrentHashMap<String, Handle<Index>> indexes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Handle<HybridIndex>> hybridIndexes = new ConcurrentHashMap<>();
 //    private static final List<String> SUPPORTED_REGIONS = Array.asList("us-west","india-west","local");
 
     public VectorX (String token) {
+        this(token, null, ApiClient.DEFAULT_CONNECT_TIMEOUT, ApiClient.DEFAULT_REQUEST_TIMEOUT, ApiClient.DEFAULT_KEEP_ALIVE);
+    }
+
+    /**
+     * Creates a client whose transport uses the given executor, timeouts and keep-alive.
+     * Every index handle returned by this instance shares the same transport. See
+     * {@link ApiClient#ApiClient(String, Executor, Duration, Duration, Duration)} for how
+     * {@code keepAlive} is applied to the JDK's pool, which is shared by the whole JVM.
+     */
+    public VectorX (String token, Executor executor, Duration connectTimeout, Duration requestTimeout, Duration keepAlive) {
         this.token = token;
         if(token != null) {
             String[] tokenParts = token.split(":");
@@ -30,10 +46,52 @@ public class VectorX {
             }
         }
 
-        this.apiClient = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_2)
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
+        this.apiClient = new ApiClient(baseUrl, executor, connectTimeout, requestTimeout, keepAlive);
+    }
+
+    // Client on an existing transport, with the token used as is
+    VectorX(String token, ApiClient apiClient) {
+        this.token = token;
+        this.apiClient = apiClient;
+    }
+
+    public ApiClient getApiClient() {
+        return apiClient;
+    }
+
+    /**
+     * How long {@link #getIndex} and {@link #getHybridIndex} reuse a resolved handle before
+     * calling {@code /info} again. A refresh updates the same instance in place, so its
+     * connections, caches and settings survive. While one caller refreshes a stale handle,
+     * concurrent callers get the instance they already had instead of waiting for
+     * {@code /info}. {@code Duration.ZERO} looks up on every call that does not overlap
+     * another lookup of the same index.
+     */
+    public void setHandleRefreshInterval(Duration interval) {
+        if (interval == null || interval.isNegative()) {
+            throw new IllegalArgumentException("Refresh interval cannot be negative");
+        }
+        this.handleRefreshNanos = interval.toNanos();
+    }
+
+    // Makes the next getIndex(name) call /info; the instance is kept if the index is unchanged
+    public void invalidateIndex(String name) {
+        Handle<Index> handle = indexes.get(name);
+        if (handle != null) {
+            handle.expire();
+        }
+    }
+
+    public void invalidateHybridIndex(String name) {
+        Handle<HybridIndex> handle = hybridIndexes.get(name);
+        if (handle != null) {
+            handle.expire();
+        }
+    }
+
+    public void invalidateAllIndexes() {
+        indexes.values().forEach(Handle::expire);
+        hybridIndexes.values().forEach(Handle::expire);
     }
 
     public String createIndex(String name, int dimension, String spaceType, int M, int efCon, boolean useFp16) throws Exception {
@@ -58,11 +116,10 @@ public class VectorX {
         data.put("use_fp16", useFp16);
         data.put("version", 1);
 
-        ObjectMapper mapper = new ObjectMapper();
-        String jsonString = mapper.writeValueAsString(data);
+        String jsonString = Codecs.JSON_WRITER.writeValueAsString(data);
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl+"/index/create"))
+        indexes.remove(name);
+        HttpRequest request = apiClient.request("/index/create")
                 .header("Authorization",token)
                 .header("Content-Type","application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(jsonString))
@@ -113,10 +170,10 @@ public class VectorX {
 //        }
 
         // Convert map to JSON string
-        String jsonPayload = new ObjectMapper().writeValueAsString(requestData);
+        String jsonPayload = Codecs.JSON_WRITER.writeValueAsString(requestData);
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl + "/hybrid/create")) // assume baseUrl is a class variable
+        hybridIndexes.remove(name);
+        HttpRequest request = apiClient.request("/hybrid/create")
                 .header("Authorization", token) // assume token is a class variable
                 .header("Content-Type", "application/json")
                 .POST(HttpRequest.BodyPublishers.ofString(jsonPayload))
@@ -134,8 +191,7 @@ public class VectorX {
 
 
     public String listIndexes() throws Exception {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl+"/index/list"))
+        HttpRequest request = apiClient.request("/index/list")
                 .header("Authorization",token)
                 .header("Content-Type","application/json")
                 .GET()
@@ -147,63 +203,109 @@ public class VectorX {
     }
 
     public Index getIndex(String name) throws Exception {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl+"/index/"+name+"/info"))
+        return resolve(indexes, name, current -> {
+            IndexParams params = fetchIndexParams(name);
+            return current != null && current.refresh(params) ? current
+                    : new Index(name,"", this.token, this.apiClient,1,params);
+        });
+    }
+
+    public HybridIndex getHybridIndex(String name) throws Exception {
+        return resolve(hybridIndexes, name, current -> {
+            HybridIndexParams params = fetchHybridIndexParams(name);
+            return current != null && current.refresh(params) ? current
+                    : new HybridIndex(name, this.token, this.apiClient,1,params);
+        });
+    }
+
+    // Looks an index up; given the cached instance, or null, returns the instance to use from now on
+    private interface Lookup<T> {
+        T resolve(T current) throws Exception;
+    }
+
+    /**
+     * A fresh handle is returned without locking. Once it is stale, one caller refreshes it
+     * while the others keep getting the cached instance. Only the first lookup of a name
+     * makes concurrent callers wait, and they share its result.
+     */
+    private <T> T resolve(ConcurrentHashMap<String, Handle<T>> handles, String name, Lookup<T> lookup) throws Exception {
+        Handle<T> handle = handles.computeIfAbsent(name, key -> new Handle<>());
+        Resolved<T> resolved = handle.resolved.get();
+        if (resolved != null) {
+            if (resolved.isFresh(handleRefreshNanos) || !handle.refreshing.compareAndSet(false, true)) {
+                return resolved.instance;
+            }
+            try {
+                return handle.update(lookup.resolve(resolved.instance));
+            } finally {
+                handle.refreshing.set(false);
+            }
+        }
+        synchronized (handle) {
+            resolved = handle.resolved.get();
+            if (resolved != null) {
+                return resolved.instance;
+            }
+            T instance;
+            try {
+                instance = lookup.resolve(null);
+            } catch (Exception e) {
+                // Only names that resolved at least once stay cached, so failed lookups of
+                // arbitrary names cannot grow the map
+                handles.remove(name, handle);
+                throw e;
+            }
+            handle.update(instance);
+            // A waiter can succeed after the first lookup failed and dropped the handle
+            handles.putIfAbsent(name, handle);
+            return instance;
+        }
+    }
+
+    private IndexParams fetchIndexParams(String name) throws Exception {
+        HttpRequest request = apiClient.request("/index/"+name+"/info")
                 .header("Authorization",token)
                 .header("Content-Type","application/json")
                 .GET()
                 .build();
 
-        ObjectMapper mapper = new ObjectMapper();
-
         HttpResponse<String> response = apiClient.send(request, HttpResponse.BodyHandlers.ofString());
-//        System.out.println(response.body());
 
-        JsonNode node = mapper.readTree(response.body());
+        JsonNode node = Codecs.TREE_READER.readTree(response.body());
         String token = node.get("lib_token").asText();
         int m = node.get("M").asInt();
         boolean useFp16 = node.get("use_fp16").asBoolean();
         int dimension = node.get("dimension").asInt();
-        int  efCon = node.get("ef_con").asInt();
         int totalElements =  node.get("total_elements").asInt();
         String spaceType = node.get("space_type").asText();
 
-        IndexParams params = new IndexParams(token,totalElements,spaceType,dimension,useFp16,m);
-
-        return new Index(name,"", this.token, this.baseUrl,1,params);
+        return new IndexParams(token,totalElements,spaceType,dimension,useFp16,m);
     }
 
-    public HybridIndex getHybridIndex(String name) throws Exception {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl+"/hybrid/"+name+"/info"))
+    private HybridIndexParams fetchHybridIndexParams(String name) throws Exception {
+        HttpRequest request = apiClient.request("/hybrid/"+name+"/info")
                 .header("Authorization",token)
                 .header("Content-Type","application/json")
                 .GET()
                 .build();
 
-        ObjectMapper mapper = new ObjectMapper();
-
         HttpResponse<String> response = apiClient.send(request, HttpResponse.BodyHandlers.ofString());
-//        System.out.println(response.body());
 
-        JsonNode node = mapper.readTree(response.body());
+        JsonNode node = Codecs.TREE_READER.readTree(response.body());
         String token = node.get("lib_token").asText();
         int m = node.get("M").asInt();
         boolean useFp16 = node.get("use_fp16").asBoolean();
         int dimension = node.get("dimension").asInt();
         int vocabSize = node.get("vocab_size").asInt();
-        int  efCon = node.get("ef_con").asInt();
         int totalElements =  node.get("total_elements").asInt();
         String spaceType = node.get("space_type").asText();
 
-        HybridIndexParams params = new HybridIndexParams(token,totalElements,spaceType,dimension,vocabSize,useFp16,m);
-
-        return new HybridIndex(name, this.token, this.baseUrl,1,params);
+        return new HybridIndexParams(token,totalElements,spaceType,dimension,vocabSize,useFp16,m);
     }
 
     public String deleteIndex(String name) throws Exception {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl+"/index/"+name+"/delete"))
+        indexes.remove(name);
+        HttpRequest request = apiClient.request("/index/"+name+"/delete")
                 .header("Authorization",token)
                 .header("Content-Type","application/json")
                 .DELETE()
@@ -215,9 +317,9 @@ public class VectorX {
     }
 
     public String deleteHybridIndex(String name) throws Exception {
+        hybridIndexes.remove(name);
         // Construct the request
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl + "/hybrid/" + name + "/delete")) // assume baseUrl is a class-level field
+        HttpRequest request = apiClient.request("/hybrid/" + name + "/delete")
                 .header("Authorization", token) // assume token is a class-level field
                 .DELETE()
                 .build();
@@ -239,4 +341,35 @@ public class VectorX {
     private boolean isValidIndexName(String indexname) {
         return indexname.matches("^[a-zA-Z0-9_]{1,48}$");
     }
-}
\ No newline at end of file
+
+    private static final class Handle<T> {
+        // Null until the first lookup succeeds, then replaced whole on every refresh
+        final AtomicReference<Resolved<T>> resolved = new AtomicReference<>();
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        T update(T instance) {
+            resolved.set(new Resolved<>(instance, System.nanoTime(), false));
+            return instance;
+        }
+
+        void expire() {
+            resolved.updateAndGet(current -> current == null ? null : new Resolved<>(current.instance, current.fetchedAt, true));
+        }
+    }
+
+    private static final class Resolved<T> {
+        final T instance;
+        final long fetchedAt;
+        final boolean expired;
+
+        Resolved(T instance, long fetchedAt, boolean expired) {
+            this.instance = instance;
+            this.fetchedAt = fetchedAt;
+            this.expired = expired;
+        }
+
+        boolean isFresh(long refreshNanos) {
+            return !expired && System.nanoTime() - fetchedAt < refreshNanos;
+        }
+    }
+}
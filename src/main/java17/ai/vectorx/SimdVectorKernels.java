@@ -0,0 +1,168 @@
+package ai.vectorx;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link VectorKernels} on the incubating Vector API. Built only by the {@code simd} profile
+ * on JDK 17+ and loaded by reflection; see {@link VectorKernels#INSTANCE}.
+ *
+ * Float lanes are widened to double for the arithmetic, so each loop step covers as many
+ * floats as the preferred double species has lanes, and results match the scalar kernels.
+ * The half-float conversions are the same branch-free bit manipulations as the scalar ones,
+ * with the branches turned into lane blends. Tails shorter than one vector fall back to the
+ * scalar code. Only API that is unchanged across JDK 17 to 21 is used.
+ */
+final class SimdVectorKernels extends VectorKernels {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // Same lane count as DOUBLES, at half and a quarter of its width
+    private static final VectorSpecies<Float> FLOATS =
+            VectorSpecies.of(float.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+    private static final VectorSpecies<Integer> INTS = FLOATS.withLanes(int.class);
+    private static final VectorSpecies<Short> SHORTS = halfSpecies();
+    private static final VectorSpecies<Byte> BYTES = SHORTS == null ? null : SHORTS.withLanes(byte.class);
+    private static final float SUBNORMAL_MAGIC = Float.intBitsToFloat(113 << 23);
+
+    @Override
+    String name() {
+        return "simd-" + DOUBLES.vectorBitSize();
+    }
+
+    @Override
+    double sumOfSquares(float[] vector) {
+        int lanes = DOUBLES.length();
+        int bound = DOUBLES.loopBound(vector.length);
+        DoubleVector sum = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (; i < bound; i += lanes) {
+            DoubleVector v = widen(vector, i);
+            sum = v.fma(v, sum);
+        }
+        double total = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < vector.length; i++) {
+            total += (double) vector[i] * vector[i];
+        }
+        return total;
+    }
+
+    @Override
+    double dot(float[] a, float[] b) {
+        int length = Math.min(a.length, b.length);
+        int lanes = DOUBLES.length();
+        int bound = DOUBLES.loopBound(length);
+        DoubleVector sum = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (; i < bound; i += lanes) {
+            sum = widen(a, i).fma(widen(b, i), sum);
+        }
+        double total = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            total += (double) a[i] * b[i];
+        }
+        return total;
+    }
+
+    @Override
+    void divide(float[] src, double divisor, float[] dst) {
+        int lanes = DOUBLES.length();
+        int bound = DOUBLES.loopBound(src.length);
+        int i = 0;
+        for (; i < bound; i += lanes) {
+            narrow(widen(src, i).div(divisor)).intoArray(dst, i);
+        }
+        for (; i < src.length; i++) {
+            dst[i] = (float) (src[i] / divisor);
+        }
+    }
+
+    @Override
+    void toHalf(float[] src, double divisor, byte[] dst, int offset) {
+        if (SHORTS == null) {
+            super.toHalf(src, divisor, dst, offset);
+            return;
+        }
+        int lanes = DOUBLES.length();
+        int bound = DOUBLES.loopBound(src.length);
+        int i = 0;
+        for (; i < bound; i += lanes) {
+            FloatVector v = divisor == 1.0 ? FloatVector.fromArray(FLOATS, src, i) : narrow(widen(src, i).div(divisor));
+            IntVector f = v.reinterpretAsInts();
+            IntVector sign = f.lanewise(VectorOperators.LSHR, 16).and(0x8000);
+            f = f.and(0x7fffffff);
+
+            IntVector normal = f.add(((15 - 127) << 23) + 0xfff)
+                    .add(f.lanewise(VectorOperators.LSHR, 13).and(1))
+                    .lanewise(VectorOperators.LSHR, 13);
+            IntVector subnormal = f.reinterpretAsFloats().add(0.5f).reinterpretAsInts().sub(0x3f000000);
+            IntVector special = IntVector.broadcast(INTS, 0x7c00)
+                    .blend(0x7e00, f.compare(VectorOperators.GT, 0x7f800000));
+            IntVector h = normal
+                    .blend(subnormal, f.compare(VectorOperators.LT, 0x38800000))
+                    .blend(special, f.compare(VectorOperators.GE, 0x47800000))
+                    .or(sign);
+
+            ShortVector halves = (ShortVector) h.convertShape(VectorOperators.I2S, SHORTS, 0);
+            halves.reinterpretAsBytes().intoArray(dst, offset + 2 * i);
+        }
+        for (; i < src.length; i++) {
+            float v = divisor == 1.0 ? src[i] : (float) (src[i] / divisor);
+            short half = floatToHalf(v);
+            dst[offset + 2 * i] = (byte) half;
+            dst[offset + 2 * i + 1] = (byte) (half >>> 8);
+        }
+    }
+
+    @Override
+    void fromHalf(byte[] src, int offset, float[] dst) {
+        if (SHORTS == null) {
+            super.fromHalf(src, offset, dst);
+            return;
+        }
+        int lanes = DOUBLES.length();
+        int bound = DOUBLES.loopBound(dst.length);
+        int i = 0;
+        for (; i < bound; i += lanes) {
+            ShortVector halves = ByteVector.fromArray(BYTES, src, offset + 2 * i).reinterpretAsShorts();
+            IntVector h = ((IntVector) halves.convertShape(VectorOperators.S2I, INTS, 0)).and(0xffff);
+
+            IntVector o = h.and(0x7fff).lanewise(VectorOperators.LSHL, 13);
+            IntVector exponent = o.and(0x0f800000);
+            o = o.add((127 - 15) << 23);
+            IntVector special = o.add((128 - 16) << 23);
+            IntVector subnormal = o.add(1 << 23).reinterpretAsFloats().sub(SUBNORMAL_MAGIC).reinterpretAsInts();
+            VectorMask<Integer> isSpecial = exponent.compare(VectorOperators.EQ, 0x0f800000);
+            VectorMask<Integer> isSubnormal = exponent.compare(VectorOperators.EQ, 0);
+            o = o.blend(special, isSpecial).blend(subnormal, isSubnormal)
+                    .or(h.and(0x8000).lanewise(VectorOperators.LSHL, 16));
+            o.reinterpretAsFloats().intoArray(dst, i);
+        }
+        for (; i < dst.length; i++) {
+            int at = offset + 2 * i;
+            dst[i] = halfToFloat((short) ((src[at] & 0xff) | (src[at + 1] << 8)));
+        }
+    }
+
+    private static DoubleVector widen(float[] values, int from) {
+        return (DoubleVector) FloatVector.fromArray(FLOATS, values, from).convertShape(VectorOperators.F2D, DOUBLES, 0);
+    }
+
+    private static FloatVector narrow(DoubleVector values) {
+        return (FloatVector) values.convertShape(VectorOperators.D2F, FLOATS, 0);
+    }
+
+    // Shorts at a quarter of the double width; none when that is below the smallest shape
+    private static VectorSpecies<Short> halfSpecies() {
+        try {
+            return VectorSpecies.of(short.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 4));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package ai.vectorx;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Linear, distribution-based and max-score fusion on a small hand-worked example.
+ */
+public class FusionStrategyTest {
+  // Dense scores 0.9, 0.5, 0.1 (mean 0.5); sparse scores 10 and 4 (mean 7, deviation 3)
+  private static final double DENSE_SD = Math.sqrt(0.32 / 3);
+
+  private static SearchResponseDecoder.Hit hit(String id, double score, int rank) {
+    SearchResponseDecoder.Hit hit = new SearchResponseDecoder.Hit();
+    hit.id = id;
+    hit.score = score;
+    hit.rank = rank;
+    return hit;
+  }
+
+  private static SearchResponseDecoder.Result data() {
+    SearchResponseDecoder.Result result = new SearchResponseDecoder.Result();
+    result.dense.addAll(List.of(hit("a", 0.9, 1), hit("b", 0.5, 2), hit("c", 0.1, 3)));
+    result.sparse.addAll(List.of(hit("b", 10, 1), hit("d", 4, 2)));
+    return result;
+  }
+
+  private static SearchResponse fuse(FusionStrategy strategy) {
+    return HitTable.fuse(strategy, data(), false, null);
+  }
+
+  private static void assertRanking(SearchResponse response, String... ids) {
+    List<String> actual = new ArrayList<>();
+    for (SearchResult result : response) {
+      actual.add(result.getId());
+    }
+    assertEquals(Arrays.asList(ids), actual);
+  }
+
+  private static double score(SearchResponse response, String id) {
+    for (SearchResult result : response) {
+      if (result.getId().equals(id)) {
+        return result.getScore();
+      }
+    }
+    throw new AssertionError("no result for " + id);
+  }
+
+  @Test
+  void linearMinMax() {
+    SearchResponse fused = fuse(new LinearFusion(LinearFusion.Normalization.MIN_MAX));
+    assertRanking(fused, "b", "a", "c", "d");
+    assertEquals(0.75, score(fused, "b"), 1e-12);
+    assertEquals(0.5, score(fused, "a"), 1e-12);
+    assertEquals(0.0, score(fused, "c"), 1e-12);
+    assertEquals(0.0, score(fused, "d"), 1e-12);
+  }
+
+  @Test
+  void linearZScore() {
+    SearchResponse fused = fuse(new LinearFusion(LinearFusion.Normalization.Z_SCORE, 1.0, 2.0, 0));
+    assertRanking(fused, "b", "a", "c", "d");
+    assertEquals(2.0, score(fused, "b"), 1e-12);
+    assertEquals(0.4 / DENSE_SD, score(fused, "a"), 1e-12);
+    assertEquals(-0.4 / DENSE_SD, score(fused, "c"), 1e-12);
+    assertEquals(-2.0, score(fused, "d"), 1e-12);
+  }
+
+  @Test
+  void distributionBased() {
+    SearchResponse fused = fuse(new DistributionBasedScoreFusion());
+    assertRanking(fused, "b", "a", "d", "c");
+    double low = 0.5 - 3 * DENSE_SD;
+    assertEquals((0.9 - low) / (6 * DENSE_SD), score(fused, "a"), 1e-12);
+    assertEquals(0.5 + 12.0 / 18, score(fused, "b"), 1e-12);
+    assertEquals((0.1 - low) / (6 * DENSE_SD), score(fused, "c"), 1e-12);
+    assertEquals(6.0 / 18, score(fused, "d"), 1e-12);
+  }
+
+  @Test
+  void maxScoreTakesTheBetterList() {
+    SearchResponse fused = fuse(new MaxScoreFusion());
+    // a and b tie at 1.0 and keep dense order
+    assertRanking(fused, "a", "b", "c", "d");
+    assertEquals(1.0, score(fused, "b"), 1e-12);
+
+    fused = fuse(new MaxScoreFusion(1.0, 0.25, 2));
+    assertRanking(fused, "a", "b");
+    assertEquals(0.5, score(fused, "b"), 1e-12);
+  }
+
+  @Test
+  void limitKeepsTheTopResults() {
+    assertRanking(fuse(new LinearFusion(LinearFusion.Normalization.MIN_MAX, 0.5, 0.5, 1)), "b");
+    assertRanking(fuse(new DistributionBasedScoreFusion(1.0, 1.0, 3)), "b", "a", "d");
+  }
+
+  @Test
+  void customStrategiesScoreThroughTheCandidateView() {
+    FusionStrategy sparseOnly = (candidates, scores) -> {
+      for (int slot = 0; slot < candidates.size(); slot++) {
+        scores[slot] = candidates.inSparse(slot) ? -candidates.getSparseRank(slot) : Double.NEGATIVE_INFINITY;
+      }
+    };
+    SearchResponse fused = fuse(sparseOnly);
+    assertRanking(fused, "b", "d", "a", "c");
+    assertEquals(1, fused.get(0).getSparseRank());
+    assertEquals(2, fused.get(0).getDenseRank());
+    assertEquals(10.0, fused.get(0).getSparseScore());
+    assertEquals(0.5, fused.get(0).getDenseScore());
+  }
+
+  @Test
+  void flatAndSingleScoreListsStayFinite() {
+    SearchResponseDecoder.Result result = new SearchResponseDecoder.Result();
+    result.dense.addAll(List.of(hit("a", 0.3, 1), hit("b", 0.3, 2)));
+    result.sparse.add(hit("c", 5, 1));
+    HitTable hits = new HitTable(result.dense, result.sparse);
+
+    ScoreStats dense = ScoreStats.of(hits, true);
+    assertEquals(1.0, dense.minMax(0.3));
+    assertEquals(0.0, dense.zScore(0.3));
+    assertEquals(0.5, dense.distribution(0.3));
+    ScoreStats sparse = ScoreStats.of(hits, false);
+    assertEquals(1, sparse.count);
+    assertEquals(1.0, sparse.minMax(5));
+
+    ScoreStats none = ScoreStats.of(new HitTable(List.of(), List.of()), true);
+    assertEquals(0, none.count);
+    assertEquals(0.0, none.stdDev);
+  }
+
+  @Test
+  void statsKeepPrecisionForLargeScores() {
+    SearchResponseDecoder.Result result = new SearchResponseDecoder.Result();
+    result.dense.addAll(List.of(hit("a", 1e9 + 1, 1), hit("b", 1e9 + 2, 2), hit("c", 1e9 + 3, 3)));
+    ScoreStats stats = ScoreStats.of(new HitTable(result.dense, result.sparse), true);
+    assertEquals(1e9 + 2, stats.mean, 1e-6);
+    assertEquals(Math.sqrt(2.0 / 3), stats.stdDev, 1e-6);
+  }
+
+  @Test
+  void distributionIsClampedToTheUnitRange() {
+    SearchResponseDecoder.Result result = new SearchResponseDecoder.Result();
+    result.dense.addAll(List.of(hit("a", 0, 1), hit("b", 1, 2)));
+    ScoreStats stats = ScoreStats.of(new HitTable(result.dense, result.sparse), true);
+    assertEquals(0.0, stats.distribution(-100));
+    assertEquals(1.0, stats.distribution(100));
+  }
+
+  @Test
+  void rejectsInvalidParameters() {
+    assertThrows(IllegalArgumentException.class, () -> new LinearFusion(null));
+    assertThrows(IllegalArgumentException.class,
+        () -> new LinearFusion(LinearFusion.Normalization.MIN_MAX, -0.5, 0.5, 0));
+    assertThrows(IllegalArgumentException.class, () -> new DistributionBasedScoreFusion(1, 1, -1));
+    assertThrows(IllegalArgumentException.class, () -> new MaxScoreFusion(Double.NaN, 1, 0));
+    assertThrows(IllegalArgumentException.class, () -> new ReciprocalRankFusion(-1));
+    assertThrows(IllegalArgumentException.class, () -> new ReciprocalRankFusion(-60, 1, 1, 0));
+    assertEquals(0, new ReciprocalRankFusion(0).getK());
+  }
+}
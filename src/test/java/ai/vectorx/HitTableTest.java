@@ -0,0 +1,189 @@
+package ai.vectorx;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The primitive hit table and RRF, checked against the baseline map-based fusion.
+ */
+public class HitTableTest {
+  private static SearchResponseDecoder.Hit hit(String id, double score, int rank) {
+    SearchResponseDecoder.Hit hit = new SearchResponseDecoder.Hit();
+    hit.id = id;
+    hit.score = score;
+    hit.rank = rank;
+    hit.vector = new float[]{rank, (float) score};
+    return hit;
+  }
+
+  private static SearchResponseDecoder.Result result(List<SearchResponseDecoder.Hit> dense,
+                                                     List<SearchResponseDecoder.Hit> sparse) {
+    SearchResponseDecoder.Result result = new SearchResponseDecoder.Result();
+    result.dense.addAll(dense);
+    result.sparse.addAll(sparse);
+    return result;
+  }
+
+  /**
+   * HybridIndex.reciprocalRankFusion as it was before the hit table, on hits instead of maps.
+   * Duplicates resolve the same way, through Map.put, so the last entry in either list wins.
+   * The one change is linked collections in place of HashMap/HashSet: the baseline left tied
+   * scores in hash order, and this pins them to first-seen order, which the table uses.
+   */
+  private static List<Object[]> mapBasedRrf(SearchResponseDecoder.Result data, int k) {
+    Map<String, Integer> denseRankMap = new LinkedHashMap<>();
+    Map<String, Integer> sparseRankMap = new LinkedHashMap<>();
+    for (SearchResponseDecoder.Hit doc : data.dense) {
+      denseRankMap.put(doc.id, doc.rank);
+    }
+    for (SearchResponseDecoder.Hit doc : data.sparse) {
+      sparseRankMap.put(doc.id, doc.rank);
+    }
+    Map<String, SearchResponseDecoder.Hit> denseDataMap = new HashMap<>();
+    Map<String, SearchResponseDecoder.Hit> sparseDataMap = new HashMap<>();
+    for (SearchResponseDecoder.Hit doc : data.dense) {
+      denseDataMap.put(doc.id, doc);
+    }
+    for (SearchResponseDecoder.Hit doc : data.sparse) {
+      sparseDataMap.put(doc.id, doc);
+    }
+
+    Set<String> allDocIds = new LinkedHashSet<>();
+    allDocIds.addAll(denseRankMap.keySet());
+    allDocIds.addAll(sparseRankMap.keySet());
+
+    List<Object[]> rrfResults = new ArrayList<>();
+    for (String docId : allDocIds) {
+      double rrfScore = 0.0;
+      Integer denseRank = denseRankMap.get(docId);
+      Integer sparseRank = sparseRankMap.get(docId);
+      if (denseRank != null) {
+        rrfScore += 1.0 / (k + denseRank);
+      }
+      if (sparseRank != null) {
+        rrfScore += 1.0 / (k + sparseRank);
+      }
+      float[] vector = denseDataMap.containsKey(docId) ? denseDataMap.get(docId).vector
+          : sparseDataMap.get(docId).vector;
+      rrfResults.add(new Object[]{docId, rrfScore, denseRank != null ? denseRank : 0,
+          sparseRank != null ? sparseRank : 0, vector});
+    }
+    rrfResults.sort((a, b) -> Double.compare((double) b[1], (double) a[1]));
+    return rrfResults;
+  }
+
+  @Test
+  void rrfMatchesTheMapBasedFusion() {
+    Random random = new Random(11);
+    for (int round = 0; round < 200; round++) {
+      // A small ID space gives overlaps between the lists and duplicates within one
+      int ids = 1 + random.nextInt(40);
+      List<SearchResponseDecoder.Hit> dense = new ArrayList<>();
+      List<SearchResponseDecoder.Hit> sparse = new ArrayList<>();
+      for (int i = random.nextInt(30); i > 0; i--) {
+        dense.add(hit("doc" + random.nextInt(ids), random.nextDouble(), 1 + dense.size()));
+      }
+      for (int i = random.nextInt(30); i > 0; i--) {
+        sparse.add(hit("doc" + random.nextInt(ids), random.nextDouble(), 1 + sparse.size()));
+      }
+      SearchResponseDecoder.Result data = result(dense, sparse);
+
+      List<Object[]> expected = mapBasedRrf(data, ReciprocalRankFusion.DEFAULT_K);
+      SearchResponse actual = HitTable.fuse(new ReciprocalRankFusion(ReciprocalRankFusion.DEFAULT_K), data, true, null);
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        Object[] want = expected.get(i);
+        SearchResult got = actual.get(i);
+        assertEquals(want[0], got.getId(), "round " + round + " position " + i);
+        assertEquals((double) want[1], got.getScore());
+        assertEquals(want[2], got.getDenseRank());
+        assertEquals(want[3], got.getSparseRank());
+        assertArrayEquals((float[]) want[4], got.getVector());
+      }
+    }
+  }
+
+  @Test
+  void slotsFollowDenseThenSparseOnlyOrder() {
+    HitTable table = new HitTable(
+        List.of(hit("a", 0.9, 1), hit("b", 0.8, 2), hit("a", 0.7, 3)),
+        List.of(hit("c", 5, 1), hit("b", 4, 2), hit("c", 3, 3)));
+    assertEquals(3, table.size());
+    assertEquals("a", table.getId(0));
+    assertEquals("b", table.getId(1));
+    assertEquals("c", table.getId(2));
+    // A duplicate keeps its last entry in either list
+    assertEquals(3, table.getDenseRank(0));
+    assertEquals(0.7, table.getDenseScore(0));
+    assertFalse(table.inSparse(0));
+    assertEquals(0, table.getSparseRank(0));
+    assertTrue(Double.isNaN(table.getSparseScore(0)));
+    assertTrue(table.inDense(1) && table.inSparse(1));
+    assertEquals(2, table.getSparseRank(1));
+    assertFalse(table.inDense(2));
+    assertEquals(3.0, table.getSparseScore(2));
+  }
+
+  @Test
+  void emptyListsFuseToNothing() {
+    assertTrue(HitTable.fuse(new ReciprocalRankFusion(60), result(List.of(), List.of()), false, null).isEmpty());
+  }
+
+  @Test
+  void topKeepsTheBestFirstAndBreaksTiesByLowerSlot() {
+    double[] scores = {0.5, 2.0, 0.5, 3.0, -1.0, 2.0};
+    assertArrayEquals(new int[]{3, 1, 5, 0, 2, 4}, HitTable.top(scores, scores.length, 0));
+    assertArrayEquals(new int[]{3, 1, 5, 0}, HitTable.top(scores, scores.length, 4));
+    assertArrayEquals(new int[]{3}, HitTable.top(scores, scores.length, 1));
+    assertArrayEquals(new int[]{3, 1, 5, 0, 2, 4}, HitTable.top(scores, scores.length, 100));
+    assertArrayEquals(new int[]{1, 0, 2}, HitTable.top(scores, 3, 0));
+    assertArrayEquals(new int[0], HitTable.top(scores, 0, 5));
+  }
+
+  @Test
+  void topAgreesWithAFullSort() {
+    Random random = new Random(5);
+    for (int round = 0; round < 100; round++) {
+      int count = random.nextInt(200);
+      double[] scores = new double[count];
+      Integer[] order = new Integer[count];
+      for (int i = 0; i < count; i++) {
+        // Few distinct values, so ties are common
+        scores[i] = random.nextInt(10);
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+      int limit = random.nextInt(count + 2);
+      int keep = limit == 0 ? count : Math.min(limit, count);
+      int[] expected = new int[keep];
+      for (int i = 0; i < keep; i++) {
+        expected[i] = order[i];
+      }
+      assertArrayEquals(expected, HitTable.top(scores, count, limit), "round " + round);
+    }
+  }
+
+  @Test
+  void weightedRrfWithALimit() {
+    SearchResponseDecoder.Result data = result(
+        List.of(hit("a", 0.9, 1), hit("b", 0.8, 2)),
+        List.of(hit("b", 7, 1), hit("c", 6, 2)));
+    SearchResponse fused = HitTable.fuse(new ReciprocalRankFusion(10, 2.0, 1.0, 2), data, false, null);
+    assertEquals(2, fused.size());
+    assertEquals("b", fused.get(0).getId());
+    assertEquals(2.0 / 12 + 1.0 / 11, fused.get(0).getScore(), 1e-15);
+    assertEquals("a", fused.get(1).getId());
+    assertEquals(2.0 / 11, fused.get(1).getScore(), 1e-15);
+    assertFalse(fused.get(0).hasVector());
+  }
+
+  @Test
+  void rejectsInvalidRrfParameters() {
+    assertThrows(IllegalArgumentException.class, () -> new ReciprocalRankFusion(60, -1, 1, 0));
+    assertThrows(IllegalArgumentException.class, () -> new ReciprocalRankFusion(60, 1, Double.NaN, 0));
+    assertThrows(IllegalArgumentException.class, () -> new ReciprocalRankFusion(60, 1, 1, -1));
+  }
+}
@@ -0,0 +1,374 @@
+package ai.vectorx;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Dense queries and vector routes against a stub that replies per path.
+ */
+public class IndexTest {
+  private HttpServer server;
+  private ApiClient api;
+  private final List<String> paths = new CopyOnWriteArrayList<>();
+  private final List<byte[]> bodies = new CopyOnWriteArrayList<>();
+  // Reply body by request path, built from the request body; other paths get "ok"
+  private final Map<String, Function<byte[], byte[]>> replies = new ConcurrentHashMap<>();
+  private volatile int status = 200;
+
+  @BeforeEach
+  void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", this::handle);
+    server.start();
+    api = new ApiClient("http://127.0.0.1:" + server.getAddress().getPort());
+  }
+
+  @AfterEach
+  void stop() {
+    server.stop(0);
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    String rawPath = exchange.getRequestURI().getRawPath();
+    String query = exchange.getRequestURI().getRawQuery();
+    paths.add(query == null ? rawPath : rawPath + "?" + query);
+    byte[] request = exchange.getRequestBody().readAllBytes();
+    bodies.add(request);
+    Function<byte[], byte[]> reply = replies.get(rawPath);
+    byte[] body = reply == null ? "ok".getBytes() : reply.apply(request);
+    exchange.sendResponseHeaders(status, body.length);
+    exchange.getResponseBody().write(body);
+    exchange.close();
+  }
+
+  private Index index(String spaceType) {
+    return new Index("idx", "", "token", api, 1, new IndexParams("", 0, spaceType, 4, false, 16));
+  }
+
+  private HybridIndex hybridIndex() {
+    return new HybridIndex("hyb", "token", api, 1, new HybridIndexParams("", 0, "cosine", 4, 100, false, 16));
+  }
+
+  // A hit or stored vector as the server packs it: [similarity?, id, zipped meta, filter, norm, vector]
+  private static void packStored(MessageBufferPacker packer, Double similarity, String id, Map<String, Object> meta,
+                                 String filter, float norm, float[] vector) throws IOException {
+    packer.packArrayHeader(similarity == null ? 5 : 6);
+    if (similarity != null) {
+      packer.packFloat(similarity.floatValue());
+    }
+    packer.packString(id);
+    byte[] zipped = MetadataCodec.zip(meta, MetadataCodec.DEFAULT_LEVEL);
+    packer.packBinaryHeader(zipped.length);
+    packer.writePayload(zipped);
+    packer.packString(filter);
+    packer.packFloat(norm);
+    packer.packArrayHeader(vector.length);
+    for (float v : vector) {
+      packer.packFloat(v);
+    }
+  }
+
+  private static byte[] hits(int first, int count) {
+    try (MessageBufferPacker packer = MessagePack.newDefaultBufferPacker()) {
+      packer.packArrayHeader(count);
+      for (int i = first; i < first + count; i++) {
+        packStored(packer, 1.0 - i / 10.0, "doc" + i, Map.of("title", "T" + i, "year", 2000 + i),
+            "{\"genre\":\"g" + i + "\"}", i + 1, new float[]{i, 0, 0, 1});
+      }
+      return packer.toByteArray();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static JsonNode json(byte[] body) throws IOException {
+    return Codecs.TREE_READER.readTree(body);
+  }
+
+  @Test
+  void searchDecodesEveryHitAndNormalizesTheQuery() throws Exception {
+    replies.put("/index/idx/search", request -> hits(0, 2));
+    List<Map<String, Object>> results = index("cosine").search(new float[]{3, 0, 4, 0}, 2, Map.of("genre", "g0"), 64, true);
+
+    assertEquals(2, results.size());
+    Map<String, Object> first = results.get(0);
+    assertEquals("doc0", first.get("id"));
+    assertEquals(1.0, (double) first.get("similarity"), 1e-6);
+    assertEquals(0.0, (double) first.get("distance"), 1e-6);
+    assertEquals(Map.of("title", "T0", "year", 2000), first.get("meta"));
+    assertEquals(Map.of("genre", "g0"), first.get("filter"));
+    assertEquals(1.0, (double) first.get("norm"), 1e-6);
+    assertArrayEquals(new float[]{0, 0, 0, 1}, (float[]) first.get("vector"));
+    Map<String, Object> second = results.get(1);
+    assertEquals("doc1", second.get("id"));
+    assertEquals(0.9, (double) second.get("similarity"), 1e-6);
+    assertEquals(0.1, (double) second.get("distance"), 1e-6);
+    assertEquals("T1", ((Map<?, ?>) second.get("meta")).get("title"));
+
+    JsonNode request = json(bodies.get(0));
+    assertEquals(0.6, request.get("vector").get(0).asDouble(), 1e-6);
+    assertEquals(0.8, request.get("vector").get(2).asDouble(), 1e-6);
+    assertEquals(2, request.get("k").asInt());
+    assertEquals(64, request.get("ef").asInt());
+    assertEquals("{\"genre\":\"g0\"}", request.get("filter").asText());
+  }
+
+  @Test
+  void onlyCosineQueriesAreNormalizedAndVectorsAreDroppedUnlessRequested() throws Exception {
+    replies.put("/index/idx/search", request -> hits(0, 1));
+    Map<String, Object> hit = index("l2").search(new float[]{3, 0, 4, 0}, 1, null, 16, false).get(0);
+    assertFalse(hit.containsKey("vector"));
+    assertEquals(1.0, (double) hit.get("norm"), 1e-6);
+
+    JsonNode request = json(bodies.get(0));
+    assertEquals(3.0, request.get("vector").get(0).asDouble());
+    assertEquals(4.0, request.get("vector").get(2).asDouble());
+    assertFalse(request.has("filter"));
+  }
+
+  @Test
+  void searchBatchReturnsOneHitListPerQueryInOrder() throws Exception {
+    replies.put("/index/idx/search/batch", request -> {
+      try (MessageBufferPacker packer = MessagePack.newDefaultBufferPacker()) {
+        int queries = json(request).get("vectors").size();
+        packer.packArrayHeader(queries);
+        for (int q = 0; q < queries; q++) {
+          byte[] list = hits(q * 10, q + 1);
+          packer.writePayload(list);
+        }
+        return packer.toByteArray();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    List<List<Map<String, Object>>> results = index("cosine").searchBatch(
+        List.of(new float[]{1, 0, 0, 0}, new float[]{0, 2, 0, 0}, new float[]{0, 0, 0, 5}), 3, null, 16, false,
+        List.of("title"));
+
+    assertEquals(3, results.size());
+    for (int q = 0; q < 3; q++) {
+      assertEquals(q + 1, results.get(q).size());
+      assertEquals("doc" + q * 10, results.get(q).get(0).get("id"));
+      assertEquals(Map.of("title", "T" + q * 10), results.get(q).get(0).get("meta"));
+    }
+    JsonNode request = json(bodies.get(0));
+    assertEquals(1.0, request.get("vectors").get(1).get(1).asDouble(), 1e-6);
+    assertEquals(1.0, request.get("vectors").get(2).get(3).asDouble(), 1e-6);
+    assertEquals("title", request.get("include_fields").get(0).asText());
+  }
+
+  @Test
+  void searchBatchAllowsAtMostOneHundredQueries() throws Exception {
+    replies.put("/index/idx/search/batch", request -> {
+      try (MessageBufferPacker packer = MessagePack.newDefaultBufferPacker()) {
+        int queries = json(request).get("vectors").size();
+        packer.packArrayHeader(queries);
+        for (int q = 0; q < queries; q++) {
+          packer.packArrayHeader(0);
+        }
+        return packer.toByteArray();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    Index index = index("cosine");
+    List<float[]> hundred = Collections.nCopies(100, new float[]{1, 0, 0, 0});
+    assertEquals(100, index.searchBatch(hundred, 1, null, 16, false).size());
+
+    List<float[]> tooMany = Collections.nCopies(101, new float[]{1, 0, 0, 0});
+    assertThrows(IllegalArgumentException.class, () -> index.searchBatch(tooMany, 1, null, 16, false));
+    assertThrows(IllegalArgumentException.class, () -> index.searchBatch(List.of(), 1, null, 16, false));
+    assertEquals(1, paths.size());
+  }
+
+  @Test
+  void searchBatchRejectsAReplyForTheWrongNumberOfQueries() {
+    replies.put("/index/idx/search/batch", request -> new byte[]{(byte) 0x91, (byte) 0x90});
+    Exception error = assertThrows(Exception.class, () -> index("cosine").searchBatch(
+        List.of(new float[]{1, 0, 0, 0}, new float[]{0, 1, 0, 0}), 1, null, 16, false));
+    assertTrue(String.valueOf(error.getMessage()).contains("Expected results for 2 queries, got 1"), error.toString());
+  }
+
+  @Test
+  void getVectorDecodesTheStoredFieldsAndProjectsMetadata() throws Exception {
+    replies.put("/index/idx/vector/get", request -> {
+      try (MessageBufferPacker packer = MessagePack.newDefaultBufferPacker()) {
+        packStored(packer, null, "doc7", Map.of("title", "T7", "year", 2007, "body", "long text"),
+            "{\"genre\":\"news\"}", 2.5f, new float[]{0.6f, 0, 0.8f, 0});
+        return packer.toByteArray();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    Index index = index("cosine");
+    Map<String, Object> vector = index.getVector("doc7");
+    assertEquals("doc7", vector.get("id"));
+    assertEquals(Map.of("title", "T7", "year", 2007, "body", "long text"), vector.get("meta"));
+    assertEquals(Map.of("genre", "news"), vector.get("filter"));
+    assertEquals(2.5, (double) vector.get("norm"), 1e-6);
+    assertArrayEquals(new float[]{0.6f, 0, 0.8f, 0}, (float[]) vector.get("vector"));
+    assertEquals("doc7", json(bodies.get(0)).get("id").asText());
+
+    Map<String, Object> projected = index.getVector("doc7", List.of("year", "title"));
+    assertEquals(Map.of("title", "T7", "year", 2007), projected.get("meta"));
+    JsonNode request = json(bodies.get(1));
+    assertEquals(2, request.get("include_fields").size());
+  }
+
+  @Test
+  void halfFloatVectorsAreDecoded() throws Exception {
+    replies.put("/index/idx/search", request -> {
+      try (MessageBufferPacker packer = MessagePack.newDefaultBufferPacker()) {
+        byte[] halves = new byte[8];
+        VectorKernels.SCALAR.toHalf(new float[]{0.5f, -1, 0, 2}, 1.0, halves, 0);
+        packer.packArrayHeader(1);
+        packer.packArrayHeader(6);
+        packer.packDouble(0.75);
+        packer.packString("h");
+        packer.packNil();
+        packer.packNil();
+        packer.packInt(1);
+        packer.packBinaryHeader(halves.length);
+        packer.writePayload(halves);
+        return packer.toByteArray();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    Map<String, Object> hit = index("ip").search(new float[]{1, 0, 0, 0}, 1, null, 16, true).get(0);
+    assertEquals(0.75, (double) hit.get("similarity"));
+    assertEquals(Map.of(), hit.get("meta"));
+    assertEquals(Map.of(), hit.get("filter"));
+    assertEquals(1.0, (double) hit.get("norm"));
+    assertArrayEquals(new float[]{0.5f, -1, 0, 2}, (float[]) hit.get("vector"));
+  }
+
+  @Test
+  void vectorIdsArePercentEncodedAsOnePathSegment() throws Exception {
+    replies.put("/hybrid/hyb/vector/a%2Fb%3Fc%23d%20e%2Bf%25", request -> "{\"id\":\"a/b?c#d e+f%\"}".getBytes());
+    String id = "a/b?c#d e+f%";
+
+    index("cosine").deleteVector(id);
+    HybridIndex hybrid = hybridIndex();
+    hybrid.deleteVector(id);
+    assertEquals("a/b?c#d e+f%", hybrid.getVector(id, List.of("title")).get("id"));
+
+    assertEquals(List.of(
+        "/index/idx/vector/a%2Fb%3Fc%23d%20e%2Bf%25",
+        "/hybrid/hyb/vector/a%2Fb%3Fc%23d%20e%2Bf%25",
+        "/hybrid/hyb/vector/a%2Fb%3Fc%23d%20e%2Bf%25?include_fields=title"), paths);
+  }
+
+  @Test
+  void upsertFailuresCarryTheStatusAndResponseBody() {
+    status = 400;
+    replies.put("/index/idx/vector/insert", request -> "bad dimension".getBytes());
+    replies.put("/hybrid/hyb/add", request -> "bad sparse vector".getBytes());
+
+    Exception dense = assertThrows(Exception.class, () -> index("cosine").upsertRecords(
+        List.of(new DenseRecord("a", new float[]{1, 2, 3, 4}, Map.of(), Map.of()))));
+    ApiClient.StatusException denseCause = statusCause(dense);
+    assertEquals(400, denseCause.statusCode());
+    assertTrue(denseCause.getMessage().contains("bad dimension"), denseCause.getMessage());
+
+    Exception hybrid = assertThrows(Exception.class, () -> hybridIndex().upsertRecords(
+        List.of(new HybridRecord("a", new float[]{1, 2, 3, 4}, new int[]{3}, new float[]{1}))));
+    ApiClient.StatusException hybridCause = statusCause(hybrid);
+    assertEquals(400, hybridCause.statusCode());
+    assertTrue(hybridCause.getMessage().contains("bad sparse vector"), hybridCause.getMessage());
+    assertTrue(hybridCause.getMessage().contains("/hybrid/hyb/add"), hybridCause.getMessage());
+  }
+
+  private static ApiClient.StatusException statusCause(Throwable error) {
+    for (Throwable e = error; e != null; e = e.getCause()) {
+      if (e instanceof ApiClient.StatusException) {
+        return (ApiClient.StatusException) e;
+      }
+    }
+    throw new AssertionError("No status in " + error, error);
+  }
+
+  @Test
+  void mismatchedSparseQueryListsAreCutToTheShorterOne() throws Exception {
+    replies.put("/hybrid/hyb/search_separate", request -> "{\"dense_results\":[],\"sparse_results\":[]}".getBytes());
+    HybridIndex index = hybridIndex();
+    List<Double> dense = List.of(1.0, 0.0, 0.0, 0.0);
+
+    assertTrue(index.search(dense, Map.of("indices", List.of(3, 7, 9), "values", List.of(0.5)), 5, 5, false, 60).isEmpty());
+    JsonNode terms = json(bodies.get(0)).get("sparse_vector");
+    assertEquals(1, terms.size());
+    assertEquals(3, terms.get(0).get("index").asInt());
+
+    assertTrue(index.query(dense, Map.of("indices", List.of(4), "values", List.of(0.5, 0.25)), 5, 5, false, 60)
+        .getResults().isEmpty());
+    assertEquals(1, json(bodies.get(1)).get("sparse_vector").size());
+
+    // A query that cannot be converted fails the future rather than the call
+    Map<String, Object> bad = Map.of("indices", List.of("x"), "values", List.of(0.5));
+    CompletableFuture<List<Map<String, Object>>> search = index.searchAsync(dense, bad, 5, 5, false, 60);
+    ExecutionException e = assertThrows(ExecutionException.class, () -> search.get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof IllegalArgumentException, e.toString());
+    CompletableFuture<SearchResponse> query = index.queryAsync(dense, bad, 5, 5, false, 60);
+    assertThrows(ExecutionException.class, () -> query.get(5, TimeUnit.SECONDS));
+    assertEquals(2, bodies.size());
+  }
+
+  @Test
+  void oversizedUpsertsFailTheFuture() throws Exception {
+    List<Map<String, Object>> items = new ArrayList<>();
+    for (int i = 0; i < 1001; i++) {
+      items.add(Map.of("id", "v" + i, "vector", List.of(1.0, 0.0, 0.0, 0.0)));
+    }
+    CompletableFuture<String> dense = index("cosine").upsertAsync(items);
+    ExecutionException e = assertThrows(ExecutionException.class, () -> dense.get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof IllegalArgumentException, e.toString());
+    CompletableFuture<String> hybrid = hybridIndex().upsertAsync(items);
+    e = assertThrows(ExecutionException.class, () -> hybrid.get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof IllegalArgumentException, e.toString());
+    assertThrows(IllegalArgumentException.class, () -> index("cosine").upsert(items));
+    assertTrue(bodies.isEmpty());
+  }
+
+  @Test
+  void oversizedRecordUpsertsFailTheFuture() throws Exception {
+    List<DenseRecord> denseRecords = new ArrayList<>();
+    List<HybridRecord> hybridRecords = new ArrayList<>();
+    for (int i = 0; i < 1001; i++) {
+      denseRecords.add(new DenseRecord("v" + i, new float[]{1, 0, 0, 0}, Map.of(), Map.of()));
+      hybridRecords.add(new HybridRecord("v" + i, new float[]{1, 0, 0, 0}, new int[]{1}, new float[]{1}));
+    }
+    CompletableFuture<String> dense = index("cosine").upsertRecordsAsync(denseRecords);
+    ExecutionException e = assertThrows(ExecutionException.class, () -> dense.get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof IllegalArgumentException, e.toString());
+    CompletableFuture<String> hybrid = hybridIndex().upsertRecordsAsync(hybridRecords);
+    e = assertThrows(ExecutionException.class, () -> hybrid.get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof IllegalArgumentException, e.toString());
+    assertThrows(IllegalArgumentException.class, () -> hybridIndex().upsertRecords(hybridRecords));
+    assertTrue(bodies.isEmpty());
+  }
+
+  @Test
+  void emptyOrNullVectorIdsAreRejectedBeforeSending() {
+    Index index = index("cosine");
+    HybridIndex hybrid = hybridIndex();
+    assertThrows(IllegalArgumentException.class, () -> index.deleteVector(""));
+    assertThrows(IllegalArgumentException.class, () -> index.deleteVector(null));
+    assertThrows(IllegalArgumentException.class, () -> hybrid.deleteVector(""));
+    assertThrows(IllegalArgumentException.class, () -> hybrid.getVector(null));
+    assertTrue(paths.isEmpty());
+  }
+}
@@ -0,0 +1,79 @@
+package ai.vectorx;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Deferred decoding, and how each API surfaces metadata that cannot be read.
+ */
+public class LazyMetadataTest {
+  private static final String GARBAGE = Base64.getEncoder().encodeToString("not zlib".getBytes(StandardCharsets.UTF_8));
+
+  private static String zipped(Map<String, Object> meta) throws Exception {
+    return Base64.getEncoder().encodeToString(MetadataCodec.zip(meta, MetadataCodec.DEFAULT_LEVEL));
+  }
+
+  @Test
+  void decodesOnFirstReadOnly() throws Exception {
+    LazyMetadata meta = new LazyMetadata(zipped(Map.of("title", "A", "year", 2020)),
+        LazyMetadata.Encoding.BASE64_ZLIB, "a", null);
+    assertFalse(meta.isDecoded());
+    assertEquals("A", meta.get("title"));
+    assertTrue(meta.isDecoded());
+    assertEquals(Map.of("title", "A", "year", 2020), meta);
+  }
+
+  @Test
+  void typedResultsThrowOnUnreadableMetadata() {
+    SearchResult result = new SearchResult("doc-1", 0.5, 1, 0, 0.9, Double.NaN, null, GARBAGE, true, null);
+    Map<String, Object> meta = result.getMeta();
+    IllegalStateException error = assertThrows(IllegalStateException.class, meta::size);
+    assertTrue(error.getMessage().contains("doc-1"));
+    assertNotNull(error.getCause());
+    assertThrows(IllegalStateException.class, () -> meta.get("title"));
+  }
+
+  @Test
+  void legacySearchMapsReadUnreadableMetadataAsEmpty() {
+    SearchResult result = new SearchResult("doc-1", 0.5, 1, 0, 0.9, Double.NaN, null, GARBAGE, true, null);
+    Map<String, Object> map = result.toMap(false);
+    Object meta = map.get("meta");
+    assertEquals(Map.of(), meta);
+    assertDoesNotThrow(map::toString);
+    assertEquals(map, result.toMap(false));
+  }
+
+  @Test
+  void legacyMapsKeepTheBaselineShapeForGoodAndMissingMetadata() throws Exception {
+    SearchResult withMeta = new SearchResult("a", 0.5, 1, 0, 0.9, Double.NaN, null, zipped(Map.of("k", "v")), true, null);
+    assertEquals(Map.of("k", "v"), withMeta.toMap(false).get("meta"));
+    assertEquals(Map.of("k", "v"), withMeta.getMeta());
+
+    SearchResult withoutMeta = new SearchResult("b", 0.5, 1, 0, 0.9, Double.NaN, null, null, false, null);
+    assertEquals("", withoutMeta.toMap(false).get("meta"));
+    assertEquals(Map.of(), withoutMeta.getMeta());
+  }
+
+  @Test
+  void metaFromAResultIsReadOnly() throws Exception {
+    SearchResult result = new SearchResult("a", 0.5, 1, 0, 0.9, Double.NaN, null, zipped(Map.of("k", "v")), true, null);
+    assertThrows(UnsupportedOperationException.class, () -> result.getMeta().put("k", "changed"));
+    assertThrows(UnsupportedOperationException.class, () -> result.getMeta().clear());
+    assertEquals(Map.of("k", "v"), result.getMeta());
+
+    SearchResult empty = new SearchResult("b", 0.5, 1, 0, 0.9, Double.NaN, null, null, false, null);
+    assertThrows(UnsupportedOperationException.class, () -> empty.getMeta().put("k", "v"));
+  }
+
+  @Test
+  void emptyOnErrorAlsoCoversPlainBase64Json() {
+    LazyMetadata meta = new LazyMetadata("%%% not base64", LazyMetadata.Encoding.BASE64_JSON, "a", null, true);
+    assertTrue(meta.isEmpty());
+    LazyMetadata strict = new LazyMetadata("%%% not base64", LazyMetadata.Encoding.BASE64_JSON, "a", null);
+    assertThrows(IllegalStateException.class, strict::isEmpty);
+  }
+}
@@ -0,0 +1,355 @@
+package ai.vectorx;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Concurrency limiting and circuit breaking against a local stub that fails or stalls
+ * requests on cue.
+ */
+public class LoadSheddingTest {
+  private static final byte[] EMPTY_HITS = {(byte) 0x90};
+  private static final float[] QUERY = {1, 0, 0, 0};
+
+  private HttpServer server;
+  private ExecutorService executor;
+  private ApiClient api;
+  private volatile int status = 200;
+  private volatile long delayMillis;
+  // Requests hold here until released when set
+  private volatile CountDownLatch gate;
+  private final AtomicInteger requests = new AtomicInteger();
+  // This many requests get 503 before status applies again
+  private final AtomicInteger failNext = new AtomicInteger();
+
+  @BeforeEach
+  void start() throws IOException {
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", this::handle);
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.start();
+    api = new ApiClient("http://127.0.0.1:" + server.getAddress().getPort());
+  }
+
+  @AfterEach
+  void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    exchange.getRequestBody().readAllBytes();
+    try {
+      CountDownLatch latch = gate;
+      if (latch != null) {
+        latch.await();
+      }
+      if (delayMillis > 0) {
+        Thread.sleep(delayMillis);
+      }
+    } catch (InterruptedException e) {
+      exchange.close();
+      return;
+    }
+    int code = failNext.getAndUpdate(n -> Math.max(0, n - 1)) > 0 ? 503 : status;
+    byte[] body = code != 200 ? "unavailable".getBytes()
+        : exchange.getRequestURI().getPath().endsWith("/search") ? EMPTY_HITS : "ok".getBytes();
+    exchange.sendResponseHeaders(code, body.length);
+    exchange.getResponseBody().write(body);
+    exchange.close();
+  }
+
+  private Index index() {
+    return new Index("idx", "", "token", api, 1, new IndexParams("", 0, "cosine", 4, false, 16));
+  }
+
+  private static Throwable rootOf(Throwable e) {
+    while ((e instanceof ExecutionException || e instanceof CompletionException) && e.getCause() != null) {
+      e = e.getCause();
+    }
+    return e;
+  }
+
+  private static void searchQuietly(Index index) {
+    try {
+      index.search(QUERY, 5, null, 64, false);
+    } catch (Exception e) {
+      // Failures are what these tests feed the breaker and limiter
+    }
+  }
+
+  @Test
+  void callsOverTheLimitAreRejectedWithoutReachingTheServer() throws Exception {
+    Index index = index();
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10, Duration.ofSeconds(5));
+    index.setConcurrencyLimiter(limiter);
+    gate = new CountDownLatch(1);
+    CompletableFuture<List<Map<String, Object>>> first = index.searchAsync(QUERY, 5, null, 64, false);
+    CompletableFuture<List<Map<String, Object>>> second = index.searchAsync(QUERY, 5, null, 64, false);
+    CompletableFuture<List<Map<String, Object>>> third = index.searchAsync(QUERY, 5, null, 64, false);
+    ExecutionException e = assertThrows(ExecutionException.class, () -> third.get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof RejectedExecutionException, e.toString());
+    assertEquals(2, limiter.getInFlight());
+    assertEquals(1, limiter.getRejectedCount());
+    gate.countDown();
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+    assertEquals(0, limiter.getInFlight());
+    assertEquals(2, requests.get());
+  }
+
+  @Test
+  void limitShrinksOnOverloadAndSlowCallsAndStaysAboveTheMinimum() {
+    Index index = index();
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 4, 50, Duration.ofMillis(100));
+    index.setConcurrencyLimiter(limiter);
+    status = 503;
+    for (int i = 0; i < 3; i++) {
+      searchQuietly(index);
+    }
+    assertTrue(limiter.getLimit() < 20, limiter.toString());
+    status = 200;
+    delayMillis = 200;
+    int before = limiter.getLimit();
+    searchQuietly(index);
+    assertTrue(limiter.getLimit() < before, limiter.toString());
+    delayMillis = 0;
+    status = 503;
+    for (int i = 0; i < 50; i++) {
+      searchQuietly(index);
+    }
+    assertEquals(4, limiter.getLimit());
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  void limitGrowsOnlyWhileFastCallsUseIt() {
+    long fast = TimeUnit.MILLISECONDS.toNanos(1);
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 8, Duration.ofSeconds(1));
+    for (int i = 0; i < 100; i++) {
+      assertTrue(limiter.tryAcquire());
+      limiter.release(fast, false);
+    }
+    // Growth stops once the calls in flight use less than half the limit
+    assertEquals(3, limiter.getLimit());
+    for (int i = 0; i < 100; i++) {
+      assertTrue(limiter.tryAcquire());
+      assertTrue(limiter.tryAcquire());
+      limiter.release(fast, false);
+      limiter.release(fast, false);
+    }
+    assertEquals(5, limiter.getLimit());
+  }
+
+  @Test
+  void breakerOpensOnFailuresRejectsFastAndClosesAfterASuccessfulTrial() throws Exception {
+    Index index = index();
+    CircuitBreaker breaker = new CircuitBreaker(0.5, 10, 4, Duration.ofMillis(200));
+    index.setCircuitBreaker(breaker);
+    status = 503;
+    for (int i = 0; i < 4; i++) {
+      searchQuietly(index);
+    }
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertEquals(4, requests.get());
+
+    Exception e = assertThrows(Exception.class, () -> index.search(QUERY, 5, null, 64, false));
+    assertTrue(rootOf(e) instanceof RejectedExecutionException, e.toString());
+    assertEquals(4, requests.get());
+    assertEquals(1, breaker.getRejectedCount());
+
+    Thread.sleep(250);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    status = 200;
+    assertTrue(index.search(QUERY, 5, null, 64, false).isEmpty());
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  void failedTrialReopensTheBreaker() throws Exception {
+    Index index = index();
+    CircuitBreaker breaker = new CircuitBreaker(1, 2, 2, Duration.ofMillis(100));
+    index.setCircuitBreaker(breaker);
+    status = 500;
+    searchQuietly(index);
+    searchQuietly(index);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    Thread.sleep(150);
+    searchQuietly(index);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    assertEquals(3, requests.get());
+  }
+
+  @Test
+  void onlyOneTrialRunsWhileHalfOpen() throws Exception {
+    Index index = index();
+    CircuitBreaker breaker = new CircuitBreaker(1, 1, 1, Duration.ofMillis(50));
+    index.setCircuitBreaker(breaker);
+    status = 503;
+    searchQuietly(index);
+    Thread.sleep(100);
+    status = 200;
+    gate = new CountDownLatch(1);
+    CompletableFuture<List<Map<String, Object>>> trial = index.searchAsync(QUERY, 5, null, 64, false);
+    ExecutionException e = assertThrows(ExecutionException.class,
+        () -> index.searchAsync(QUERY, 5, null, 64, false).get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof RejectedExecutionException, e.toString());
+    gate.countDown();
+    trial.get(5, TimeUnit.SECONDS);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  void clientErrorsDoNotTripTheBreaker() {
+    Index index = index();
+    CircuitBreaker breaker = new CircuitBreaker(0.5, 10, 2, Duration.ofSeconds(10));
+    index.setCircuitBreaker(breaker);
+    status = 404;
+    for (int i = 0; i < 5; i++) {
+      searchQuietly(index);
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    assertEquals(5, requests.get());
+  }
+
+  @Test
+  void rejectedUpsertDoesNotReachTheServer() {
+    Index index = index();
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, Duration.ofSeconds(1));
+    assertTrue(limiter.tryAcquire());
+    index.setConcurrencyLimiter(limiter);
+    Exception e = assertThrows(Exception.class, () -> index.upsertRecords(
+        List.of(new DenseRecord("a", new float[]{1, 2, 3, 4}, Map.of("k", "v"), Map.of()))));
+    assertTrue(rootOf(e) instanceof RejectedExecutionException, e.toString());
+    assertEquals(0, requests.get());
+  }
+
+  @Test
+  void bulkUpsertWaitsForTheLimiterInsteadOfFailingBatches() throws Exception {
+    Index index = index();
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, Duration.ofSeconds(5));
+    index.setConcurrencyLimiter(limiter);
+    delayMillis = 20;
+    List<DenseRecord> records = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      records.add(new DenseRecord("r" + i, new float[]{1, 2, 3, 4}, Map.of("k", "v"), Map.of()));
+    }
+    BulkUpsertResult result = index.upsertRecordsBulk(records.iterator(), 1, 4, null);
+    assertTrue(result.isSuccess(), result.toString());
+    assertEquals(8, requests.get());
+    assertTrue(limiter.getRejectedCount() > 0, limiter.toString());
+  }
+
+  @Test
+  void bulkUpsertLatencyExcludesTheWaitForTheLimiter() throws Exception {
+    Index index = index();
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, Duration.ofSeconds(5));
+    index.setConcurrencyLimiter(limiter);
+    assertTrue(limiter.tryAcquire());
+    ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    try {
+      timer.schedule(limiter::cancel, 300, TimeUnit.MILLISECONDS);
+      BulkUpsertResult result = index.upsertRecordsBulk(
+          List.of(new DenseRecord("a", new float[]{1, 2, 3, 4}, Map.of("k", "v"), Map.of())).iterator(), 1, 1, null);
+      assertTrue(result.isSuccess(), result.toString());
+      assertTrue(result.getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(300), result.toString());
+      assertTrue(result.getBatches().get(0).getLatencyNanos() < TimeUnit.MILLISECONDS.toNanos(250), result.toString());
+    } finally {
+      timer.shutdownNow();
+    }
+  }
+
+  @Test
+  void bulkUpsertGivesUpOnAStuckLimitAtTheDeadline() throws Exception {
+    api.setRetryPolicy(new RetryPolicy(1, Duration.ZERO, Duration.ZERO, Duration.ofMillis(200), 0));
+    Index index = index();
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, Duration.ofSeconds(5));
+    index.setConcurrencyLimiter(limiter);
+    assertTrue(limiter.tryAcquire());
+    try {
+      long start = System.nanoTime();
+      BulkUpsertResult result = index.upsertRecordsBulk(
+          List.of(new DenseRecord("a", new float[]{1, 2, 3, 4}, Map.of("k", "v"), Map.of())).iterator(), 1, 1, null);
+      long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      assertFalse(result.isSuccess());
+      assertTrue(result.getBatches().get(0).getError() instanceof ConcurrencyLimiter.LimitExceededException,
+          result.toString());
+      assertEquals(List.of("a"), result.getFailedIds());
+      assertTrue(elapsed >= 200 && elapsed < 2000, "Gave up after " + elapsed + " ms");
+      assertEquals(0, requests.get());
+    } finally {
+      limiter.cancel();
+    }
+  }
+
+  @Test
+  void bulkUpsertStillFailsFastWhileTheBreakerIsOpen() throws Exception {
+    Index index = index();
+    CircuitBreaker breaker = new CircuitBreaker(1, 1, 1, Duration.ofSeconds(10));
+    index.setCircuitBreaker(breaker);
+    status = 503;
+    searchQuietly(index);
+    requests.set(0);
+    BulkUpsertResult result = index.upsertRecordsBulk(
+        List.of(new DenseRecord("a", new float[]{1, 2, 3, 4}, Map.of("k", "v"), Map.of())).iterator(), 1, 1, null);
+    assertFalse(result.isSuccess());
+    assertTrue(result.getBatches().get(0).getError() instanceof RejectedExecutionException);
+    assertEquals(0, requests.get());
+  }
+
+  @Test
+  void retryBackoffDoesNotCountAsLatency() throws Exception {
+    api.setRetryPolicy(new RetryPolicy(2, Duration.ofMillis(300), Duration.ofMillis(300)));
+    Index index = index();
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10, Duration.ofMillis(100));
+    index.setConcurrencyLimiter(limiter);
+    // The backoff is drawn from [0, 300] ms; try until one call waits longer than the threshold
+    for (int i = 0; i < 20; i++) {
+      failNext.set(1);
+      long start = System.nanoTime();
+      index.search(QUERY, 5, null, 64, false);
+      if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) > 150) {
+        assertEquals(10, limiter.getLimit(), limiter.toString());
+        return;
+      }
+    }
+    fail("No call waited out a backoff longer than the latency threshold");
+  }
+
+  @Test
+  void removingTheGuardsRestoresPlainCalls() throws Exception {
+    Index index = index();
+    index.setConcurrencyLimiter(new ConcurrencyLimiter(1, 1, 1, Duration.ofSeconds(1)));
+    index.setCircuitBreaker(new CircuitBreaker());
+    index.setConcurrencyLimiter(null);
+    assertNull(index.getConcurrencyLimiter());
+    assertNotNull(index.getCircuitBreaker());
+    index.setCircuitBreaker(null);
+    assertTrue(index.search(QUERY, 5, null, 64, false).isEmpty());
+  }
+
+  @Test
+  void rejectsInvalidSettings() {
+    assertThrows(IllegalArgumentException.class, () -> new ConcurrencyLimiter(0, 0, 1, Duration.ofSeconds(1)));
+    assertThrows(IllegalArgumentException.class, () -> new ConcurrencyLimiter(5, 1, 4, Duration.ofSeconds(1)));
+    assertThrows(IllegalArgumentException.class, () -> new ConcurrencyLimiter(2, 1, 4, Duration.ZERO));
+    assertThrows(IllegalArgumentException.class, () -> new ConcurrencyLimiter(2, 1, 4, Duration.ofSeconds(1), 1));
+    assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(0, 10, 5, Duration.ofSeconds(1)));
+    assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(0.5, 10, 11, Duration.ofSeconds(1)));
+  }
+}
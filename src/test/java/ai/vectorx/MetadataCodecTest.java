@@ -0,0 +1,159 @@
+package ai.vectorx;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Metadata compression: round trips of any size, field projection and refusal of bad input.
+ */
+public class MetadataCodecTest {
+  private static Map<String, Object> sample() {
+    Map<String, Object> meta = new LinkedHashMap<>();
+    meta.put("title", "Ünïcode title");
+    meta.put("year", 2020);
+    meta.put("score", 0.25);
+    meta.put("tags", List.of("a", "b"));
+    meta.put("nested", Map.of("k", true));
+    return meta;
+  }
+
+  private static byte[] deflate(byte[] bytes, int level) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Deflater deflater = new Deflater(level);
+    try (DeflaterOutputStream zipped = new DeflaterOutputStream(out, deflater)) {
+      zipped.write(bytes);
+    } finally {
+      deflater.end();
+    }
+    return out.toByteArray();
+  }
+
+  // {"skip":"aaa…","k":1} with more than MAX_INFLATED_SIZE bytes of padding, deflated as it is written
+  private static byte[] oversized() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (DeflaterOutputStream zipped = new DeflaterOutputStream(out)) {
+      zipped.write("{\"skip\":\"".getBytes(StandardCharsets.UTF_8));
+      byte[] padding = new byte[64 * 1024];
+      Arrays.fill(padding, (byte) 'a');
+      for (long written = 0; written <= MetadataCodec.MAX_INFLATED_SIZE; written += padding.length) {
+        zipped.write(padding);
+      }
+      zipped.write("\",\"k\":1}".getBytes(StandardCharsets.UTF_8));
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  void roundTripsMetadata() throws Exception {
+    Map<String, Object> meta = sample();
+    assertEquals(meta, MetadataCodec.unzip(MetadataCodec.zip(meta, MetadataCodec.DEFAULT_LEVEL)));
+    for (int level = 0; level <= 9; level++) {
+      assertEquals(meta, MetadataCodec.unzip(MetadataCodec.zip(meta, level)));
+    }
+  }
+
+  @Test
+  void outputIsPlainZlibOfTheJson() throws Exception {
+    Map<String, Object> meta = sample();
+    byte[] json = Codecs.MAP_WRITER.writeValueAsBytes(meta);
+    assertArrayEquals(deflate(json, Deflater.DEFAULT_COMPRESSION), MetadataCodec.zip(meta, MetadataCodec.DEFAULT_LEVEL));
+    assertArrayEquals(deflate(json, 1), MetadataCodec.zip(meta, 1));
+  }
+
+  @Test
+  void largeMetadataIsNotTruncated() throws Exception {
+    // Random text compresses poorly, so the output is far past the old 1024-byte buffer
+    Random random = new Random(9);
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 300_000; i++) {
+      text.append((char) ('a' + random.nextInt(26)));
+    }
+    Map<String, Object> meta = Map.of("body", text.toString(), "id", 1);
+    byte[] zipped = MetadataCodec.zip(meta, MetadataCodec.DEFAULT_LEVEL);
+    assertTrue(zipped.length > 100_000, "compressed to " + zipped.length);
+    assertEquals(meta, MetadataCodec.unzip(zipped));
+    // The shrunk per-thread buffer still works for the next record
+    assertEquals(sample(), MetadataCodec.unzip(MetadataCodec.zip(sample(), MetadataCodec.DEFAULT_LEVEL)));
+  }
+
+  @Test
+  void emptyMetadataIsEmptyBytes() throws Exception {
+    assertEquals(0, MetadataCodec.zip(null, MetadataCodec.DEFAULT_LEVEL).length);
+    assertEquals(0, MetadataCodec.zip(Map.of(), MetadataCodec.DEFAULT_LEVEL).length);
+    assertEquals(Map.of(), MetadataCodec.unzip(null));
+    assertEquals(Map.of(), MetadataCodec.unzip(new byte[0]));
+    assertEquals(Map.of(), MetadataCodec.unzip(new byte[0], Set.of("title")));
+  }
+
+  @Test
+  void projectionKeepsOnlyTheRequestedKeys() throws Exception {
+    byte[] zipped = MetadataCodec.zip(sample(), MetadataCodec.DEFAULT_LEVEL);
+    Map<String, Object> projected = MetadataCodec.unzip(zipped, Set.of("year", "nested", "missing"));
+    assertEquals(Map.of("year", 2020, "nested", Map.of("k", true)), projected);
+    assertEquals(sample(), MetadataCodec.unzip(zipped, null));
+    assertTrue(MetadataCodec.unzip(zipped, Set.of()).isEmpty());
+  }
+
+  @Test
+  void truncatedOrCorruptDataIsRejected() throws Exception {
+    byte[] zipped = MetadataCodec.zip(sample(), MetadataCodec.DEFAULT_LEVEL);
+    byte[] truncated = Arrays.copyOf(zipped, zipped.length / 2);
+    assertThrows(IOException.class, () -> MetadataCodec.unzip(truncated));
+    assertThrows(IOException.class, () -> MetadataCodec.unzip(truncated, Set.of("missing")));
+
+    byte[] corrupt = "not zlib at all".getBytes(StandardCharsets.UTF_8);
+    assertThrows(IOException.class, () -> MetadataCodec.unzip(corrupt));
+    assertThrows(IOException.class, () -> MetadataCodec.unzip(corrupt, Set.of("title")));
+
+    byte[] array = deflate("[1,2]".getBytes(StandardCharsets.UTF_8), Deflater.DEFAULT_COMPRESSION);
+    assertThrows(IOException.class, () -> MetadataCodec.unzip(array, Set.of("title")));
+  }
+
+  @Test
+  void inflationIsCappedOnBothPaths() throws Exception {
+    byte[] bomb = oversized();
+    IOException e = assertThrows(IOException.class, () -> MetadataCodec.unzip(bomb));
+    assertTrue(e.getMessage().contains("exceeds"), e.getMessage());
+    // Skipping the padding to reach "k" must not get past the cap either
+    e = assertThrows(IOException.class, () -> MetadataCodec.unzip(bomb, Set.of("k")));
+    assertTrue(e.getMessage().contains("exceeds"), e.getMessage());
+  }
+
+  @Test
+  void threadsDoNotShareCodecState() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        int seed = t;
+        futures.add(pool.submit(() -> {
+          for (int i = 0; i < 200; i++) {
+            Map<String, Object> meta = Map.of("thread", seed, "i", i, "text", "x".repeat(i * 10));
+            assertEquals(meta, MetadataCodec.unzip(MetadataCodec.zip(meta, seed % 10)));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void rejectsInvalidLevels() {
+    assertThrows(IllegalArgumentException.class, () -> MetadataCodec.zip(sample(), 10));
+    assertThrows(IllegalArgumentException.class, () -> MetadataCodec.zip(sample(), -2));
+  }
+}
@@ -0,0 +1,72 @@
+package ai.vectorx;
+
+import java.util.*;
+
+/**
+ * Times Utils.jsonZip / jsonUnzip on metadata from 100 B to 1 MB of JSON at several zlib
+ * levels, and checks every payload round-trips intact. Runs offline:
+ *
+ *   mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ai.vectorx.MetadataCompressionBenchmark
+ */
+public class MetadataCompressionBenchmark {
+  private static final int[] SIZES = {100, 1_000, 10_000, 100_000, 1_000_000};
+  private static final int[] LEVELS = {1, -1, 9};
+
+  public static void main(String[] args) throws Exception {
+    Random random = new Random(42);
+    System.out.printf("%10s %6s %12s %12s %10s %10s %8s%n",
+        "json bytes", "level", "zip ns/op", "unzip ns/op", "zip MB/s", "unzip MB/s", "ratio");
+
+    for (int size : SIZES) {
+      Map<String, Object> meta = metadata(size, random);
+      int jsonBytes = Codecs.JSON.writeValueAsBytes(meta).length;
+      int iterations = Math.max(20, 20_000_000 / jsonBytes);
+
+      for (int level : LEVELS) {
+        byte[] zipped = Utils.jsonZip(meta, level);
+        if (!meta.equals(Utils.jsonUnzip(zipped))) {
+          throw new AssertionError("Round trip failed at " + size + " bytes, level " + level);
+        }
+
+        // Warm up, then measure
+        for (int i = 0; i < iterations; i++) {
+          Utils.jsonUnzip(Utils.jsonZip(meta, level));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+          zipped = Utils.jsonZip(meta, level);
+        }
+        double zipNs = (double) (System.nanoTime() - start) / iterations;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+          Utils.jsonUnzip(zipped);
+        }
+        double unzipNs = (double) (System.nanoTime() - start) / iterations;
+
+        System.out.printf("%10d %6d %12.0f %12.0f %10.1f %10.1f %8.2f%n",
+            jsonBytes, level, zipNs, unzipNs,
+            jsonBytes * 1e3 / zipNs, jsonBytes * 1e3 / unzipNs,
+            (double) jsonBytes / zipped.length);
+      }
+    }
+  }
+
+  // Mix of repetitive and random fields, roughly like real document metadata
+  private static Map<String, Object> metadata(int targetBytes, Random random) {
+    Map<String, Object> meta = new LinkedHashMap<>();
+    meta.put("title", "Introduction to Machine Learning");
+    meta.put("category", "technology");
+    List<Object> tags = new ArrayList<>();
+    meta.put("tags", tags);
+    StringBuilder body = new StringBuilder();
+    String[] words = {"vector", "index", "search", "dense", "sparse", "score", "query", "model"};
+    while (body.length() + tags.size() * 12 < targetBytes - 80) {
+      body.append(words[random.nextInt(words.length)]).append(' ');
+      if (random.nextInt(8) == 0) {
+        tags.add(Long.toHexString(random.nextLong()));
+      }
+    }
+    meta.put("body", body.toString());
+    return meta;
+  }
+}
@@ -0,0 +1,196 @@
+package ai.vectorx;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The streaming encoder must write exactly what the Jackson object-graph path it replaced
+ * wrote for the same values.
+ */
+public class MsgPackEncoderTest {
+  private static final ObjectMapper JACKSON = new ObjectMapper(new MessagePackFactory());
+
+  private static byte[] encode(MsgPackEncoder.PooledBody body) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    body.subscribe(new Flow.Subscriber<ByteBuffer>() {
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+      }
+
+      @Override
+      public void onNext(ByteBuffer item) {
+        byte[] bytes = new byte[item.remaining()];
+        item.get(bytes);
+        out.write(bytes, 0, bytes.length);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        done.completeExceptionally(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        done.complete(null);
+      }
+    });
+    done.get(5, TimeUnit.SECONDS);
+    return out.toByteArray();
+  }
+
+  @Test
+  void metadataValuesMatchJackson() throws Exception {
+    Map<String, Object> nested = new LinkedHashMap<>();
+    nested.put("k", List.of(1.0f, -2.5f));
+    Map<String, Object> value = new LinkedHashMap<>();
+    value.put("s", "text ünïcode");
+    value.put("i", 7);
+    value.put("neg", -40000);
+    value.put("l", 1L << 40);
+    value.put("d", 1.5);
+    value.put("f", 2.5f);
+    value.put("b", true);
+    value.put("n", null);
+    value.put("list", Arrays.asList(1, "a", null, false));
+    value.put("nested", nested);
+
+    MsgPackEncoder encoder = MsgPackEncoder.open(0);
+    encoder.packValue(value);
+    assertArrayEquals(JACKSON.writeValueAsBytes(value), encode(encoder.finish()));
+  }
+
+  @Test
+  void largeVectorGrowsTheBufferAndMatchesJackson() throws Exception {
+    Random random = new Random(3);
+    float[] vector = new float[100_000];
+    List<Float> boxed = new ArrayList<>(vector.length);
+    for (int i = 0; i < vector.length; i++) {
+      vector[i] = random.nextFloat() - 0.5f;
+      boxed.add(vector[i]);
+    }
+    MsgPackEncoder encoder = MsgPackEncoder.open(16);
+    encoder.packFloats(vector, 1.0);
+    assertArrayEquals(JACKSON.writeValueAsBytes(boxed), encode(encoder.finish()));
+  }
+
+  @Test
+  void upsertBodyMatchesTheOldJacksonPayload() throws Exception {
+    List<byte[]> bodies = new CopyOnWriteArrayList<>();
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", exchange -> {
+      bodies.add(exchange.getRequestBody().readAllBytes());
+      exchange.sendResponseHeaders(200, 2);
+      exchange.getResponseBody().write("ok".getBytes());
+      exchange.close();
+    });
+    server.start();
+    try {
+      ApiClient api = new ApiClient("http://127.0.0.1:" + server.getAddress().getPort());
+      Index index = new Index("idx", "", "token", api, 1, new IndexParams("", 0, "cosine", 4, false, 16));
+      Map<String, Object> meta = Map.of("title", "A", "year", 2020);
+      Map<String, Object> filter = Map.of("genre", "news");
+      index.upsertRecords(List.of(
+          new DenseRecord("a", new float[]{3, 0, 4, 0}, meta, filter),
+          new DenseRecord("b", new float[]{0, 0, 0, 0}, null, null)));
+
+      // The list-of-lists graph the client used to hand to Jackson
+      List<Object> first = Arrays.asList("a", MetadataCodec.zip(meta, MetadataCodec.DEFAULT_LEVEL), filter, 5.0f,
+          List.of(0.6f, 0.0f, 0.8f, 0.0f));
+      List<Object> second = Arrays.asList("b", new byte[0], Map.of(), 0.0f, List.of(0.0f, 0.0f, 0.0f, 0.0f));
+      assertArrayEquals(JACKSON.writeValueAsBytes(List.of(first, second)), bodies.get(0));
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void releasedBodyCannotBeSubscribedAgain() throws Exception {
+    MsgPackEncoder encoder = MsgPackEncoder.open(0);
+    encoder.packValue("payload");
+    MsgPackEncoder.PooledBody body = encoder.finish();
+    byte[] bytes = encode(body);
+    assertArrayEquals(encode(body), bytes);
+    body.release();
+    ExecutionException error = assertThrows(ExecutionException.class, () -> encode(body));
+    assertInstanceOf(IllegalStateException.class, error.getCause());
+  }
+
+  @Test
+  void bodyIsEmittedAsReadOnlyViewsOfThePooledArray() {
+    byte[] payload = new byte[MsgPackEncoder.PooledBody.SLICE * 2 + 10];
+    MsgPackEncoder.PooledBody body = new MsgPackEncoder.PooledBody(payload, payload.length - 5);
+    List<ByteBuffer> items = new ArrayList<>();
+    AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+    AtomicBoolean completed = new AtomicBoolean();
+    body.subscribe(new Flow.Subscriber<ByteBuffer>() {
+      @Override
+      public void onSubscribe(Flow.Subscription s) {
+        subscription.set(s);
+      }
+
+      @Override
+      public void onNext(ByteBuffer item) {
+        items.add(item);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        fail(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        completed.set(true);
+      }
+    });
+
+    assertTrue(items.isEmpty());
+    subscription.get().request(1);
+    assertEquals(1, items.size());
+    subscription.get().request(2);
+    assertEquals(3, items.size());
+    subscription.get().request(1);
+    assertEquals(3, items.size());
+    assertTrue(completed.get());
+
+    assertEquals(List.of(MsgPackEncoder.PooledBody.SLICE, MsgPackEncoder.PooledBody.SLICE, 5),
+        List.of(items.get(0).remaining(), items.get(1).remaining(), items.get(2).remaining()));
+    for (ByteBuffer item : items) {
+      assertTrue(item.isReadOnly());
+    }
+    // Writes to the array show through every slice, so none of them is a copy
+    payload[0] = 1;
+    payload[MsgPackEncoder.PooledBody.SLICE + 7] = 2;
+    payload[payload.length - 6] = 3;
+    assertEquals(1, items.get(0).get(0));
+    assertEquals(2, items.get(1).get(7));
+    assertEquals(3, items.get(2).get(4));
+  }
+
+  @Test
+  void releaseOfARequestWithoutAPooledBodyIsANoOp() {
+    HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1/"))
+        .POST(HttpRequest.BodyPublishers.ofString("x")).build();
+    assertDoesNotThrow(() -> MsgPackEncoder.releaseBody(request));
+  }
+}
@@ -0,0 +1,167 @@
+package ai.vectorx;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round trips through the int8 and 1-bit quantizers, and rescoring over their codes.
+ */
+public class QuantizerTest {
+  @Test
+  void scalarRoundTripIsWithinHalfAStep() {
+    float[] min = {-1, 0, 10};
+    float[] max = {1, 0.5f, 20};
+    ScalarQuantizer quantizer = new ScalarQuantizer(min, max);
+    assertEquals(3, quantizer.getCodeSize());
+    Random random = new Random(4);
+    for (int i = 0; i < 1000; i++) {
+      float[] vector = new float[3];
+      for (int d = 0; d < 3; d++) {
+        vector[d] = min[d] + random.nextFloat() * (max[d] - min[d]);
+      }
+      float[] decoded = quantizer.decode(quantizer.encode(vector));
+      for (int d = 0; d < 3; d++) {
+        float halfStep = (max[d] - min[d]) / 255 / 2;
+        assertEquals(vector[d], decoded[d], halfStep * 1.0001f, "dimension " + d);
+      }
+    }
+  }
+
+  @Test
+  void scalarEndpointsAreExactAndOutliersClamp() {
+    ScalarQuantizer quantizer = new ScalarQuantizer(new float[]{-2, 5}, new float[]{2, 5});
+    assertArrayEquals(new byte[]{-128, -128}, quantizer.encode(new float[]{-2, 5}));
+    assertArrayEquals(new byte[]{127, -128}, quantizer.encode(new float[]{2, 5}));
+    assertArrayEquals(new byte[]{-128, -128}, quantizer.encode(new float[]{-50, 9}));
+    assertArrayEquals(new byte[]{127, -128}, quantizer.encode(new float[]{50, -9}));
+    // A dimension with no range decodes to its only value
+    assertArrayEquals(new float[]{2, 5}, quantizer.decode(new byte[]{127, 33}));
+  }
+
+  @Test
+  void divisorAndOffsetMatchThePlainEncoding() {
+    ScalarQuantizer quantizer = new ScalarQuantizer(new float[]{-1, -1, -1}, new float[]{1, 1, 1});
+    float[] vector = {3, -4, 0};
+    byte[] expected = quantizer.encode(new float[]{0.6f, -0.8f, 0});
+    byte[] codes = new byte[5];
+    Arrays.fill(codes, (byte) 99);
+    quantizer.encode(vector, 5.0, codes, 1);
+    assertEquals(99, codes[0]);
+    assertEquals(99, codes[4]);
+    assertArrayEquals(expected, Arrays.copyOfRange(codes, 1, 4));
+    assertArrayEquals(quantizer.decode(expected), quantizer.decode(codes, 1));
+  }
+
+  @Test
+  void binaryBitsArePackedMostSignificantFirst() {
+    float[] min = new float[10];
+    float[] max = new float[10];
+    Arrays.fill(min, -1);
+    Arrays.fill(max, 1);
+    BinaryQuantizer quantizer = new BinaryQuantizer(min, max);
+    assertEquals(2, quantizer.getCodeSize());
+    float[] vector = {1, -1, 1, 1, -1, -1, -1, 0.5f, 0.25f, 0};
+    // The midpoint itself is not above the threshold
+    assertArrayEquals(new byte[]{(byte) 0b1011_0001, (byte) 0b1000_0000}, quantizer.encode(vector));
+
+    float[] decoded = quantizer.decode(quantizer.encode(vector));
+    for (int d = 0; d < vector.length; d++) {
+      assertEquals(vector[d] > 0 ? 0.5f : -0.5f, decoded[d], "dimension " + d);
+    }
+  }
+
+  @Test
+  void binaryRoundTripKeepsTheSide() {
+    BinaryQuantizer quantizer = new BinaryQuantizer(new float[]{0, -10, 2}, new float[]{4, 10, 3});
+    float[] decoded = quantizer.decode(quantizer.encode(new float[]{3.9f, -0.1f, 2.6f}));
+    assertArrayEquals(new float[]{3, -5, 2.75f}, decoded);
+  }
+
+  @Test
+  void calibrationNormalizesOnCosineIndexes() {
+    List<float[]> sample = List.of(new float[]{3, 4}, new float[]{-6, 8}, new float[]{0, -2});
+    ScalarQuantizer cosine = ScalarQuantizer.calibrate(sample, "cosine");
+    assertArrayEquals(new float[]{-0.6f, -1}, cosine.getMin());
+    assertArrayEquals(new float[]{0.6f, 0.8f}, cosine.getMax());
+    BinaryQuantizer l2 = BinaryQuantizer.calibrate(sample, "l2");
+    assertArrayEquals(new float[]{-6, -2}, l2.getMin());
+    assertArrayEquals(new float[]{3, 8}, l2.getMax());
+  }
+
+  @Test
+  void rescoringOverDecodedCodesRanksLikeFullPrecision() {
+    float[][] vectors = {{0.9f, 0.1f, 0}, {0.1f, 0.9f, 0}, {0.6f, 0.6f, 0.5f}};
+    ScalarQuantizer quantizer = ScalarQuantizer.calibrate(Arrays.asList(vectors), "cosine");
+    Map<String, byte[]> codes = new HashMap<>();
+    for (int i = 0; i < vectors.length; i++) {
+      codes.put("v" + i, quantizer.encode(vectors[i]));
+    }
+    SearchResponseDecoder.Result data = new SearchResponseDecoder.Result();
+    for (int i = 0; i < vectors.length; i++) {
+      SearchResponseDecoder.Hit hit = new SearchResponseDecoder.Hit();
+      hit.id = "v" + i;
+      hit.rank = i + 1;
+      data.dense.add(hit);
+    }
+    float[] query = {0.2f, 1, 0};
+    Rescorer rescorer = new Rescorer(query, id -> codes.containsKey(id) ? quantizer.decode(codes.get(id)) : null,
+        "cosine", 0);
+    SearchResponse ranked = HitTable.fuse(rescorer, data, false, null);
+    assertEquals(List.of("v1", "v2", "v0"),
+        List.of(ranked.get(0).getId(), ranked.get(1).getId(), ranked.get(2).getId()));
+  }
+
+  @Test
+  void upsertsSendFullVectorsRegardlessOfQuantization() throws Exception {
+    List<byte[]> bodies = new CopyOnWriteArrayList<>();
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", exchange -> {
+      bodies.add(exchange.getRequestBody().readAllBytes());
+      exchange.sendResponseHeaders(200, 2);
+      exchange.getResponseBody().write("ok".getBytes());
+      exchange.close();
+    });
+    server.start();
+    try {
+      ApiClient api = new ApiClient("http://127.0.0.1:" + server.getAddress().getPort());
+      Index index = new Index("idx", "", "token", api, 1, new IndexParams("", 0, "cosine", 4, false, 16));
+      index.upsertRecords(List.of(new DenseRecord("a", new float[]{3, 0, 4, 0}, null, null)));
+
+      // One row of id, metadata, filter, norm and vector
+      MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(bodies.get(0));
+      assertEquals(1, unpacker.unpackArrayHeader());
+      assertEquals(5, unpacker.unpackArrayHeader());
+      for (int i = 0; i < 4; i++) {
+        unpacker.skipValue();
+      }
+      assertEquals(4, unpacker.unpackArrayHeader());
+      float[] sent = new float[4];
+      for (int i = 0; i < 4; i++) {
+        sent[i] = unpacker.unpackFloat();
+      }
+      assertArrayEquals(new float[]{0.6f, 0, 0.8f, 0}, sent);
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void rejectsInvalidRangesAndDimensions() {
+    assertThrows(IllegalArgumentException.class, () -> new ScalarQuantizer(new float[]{1}, new float[]{0}));
+    assertThrows(IllegalArgumentException.class, () -> new ScalarQuantizer(new float[]{0}, new float[]{0, 1}));
+    assertThrows(IllegalArgumentException.class, () -> new BinaryQuantizer(new float[]{Float.NaN}, new float[]{1}));
+    assertThrows(IllegalArgumentException.class,
+        () -> new BinaryQuantizer(new float[]{0}, new float[]{Float.POSITIVE_INFINITY}));
+    assertThrows(IllegalArgumentException.class,
+        () -> new ScalarQuantizer(new float[]{0, 0}, new float[]{1, 1}).encode(new float[]{0.5f}));
+    assertThrows(IllegalArgumentException.class, () -> ScalarQuantizer.calibrate(List.of(), "l2"));
+  }
+}
@@ -0,0 +1,164 @@
+package ai.vectorx;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Size, age and invalidation limits of the hybrid query cache, alone and behind an index.
+ */
+public class QueryCacheTest {
+  private static final String SEPARATE = "{\"dense_results\":[{\"id\":\"a\",\"score\":0.9,\"rank\":1}],"
+      + "\"sparse_results\":[],\"metadata\":[]}";
+  private static final SparseVector SPARSE = new SparseVector(new int[]{3}, new float[]{0.5f});
+
+  private HttpServer server;
+  private ExecutorService executor;
+  private ApiClient api;
+  private final AtomicInteger searches = new AtomicInteger();
+
+  @BeforeEach
+  void start() throws IOException {
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", exchange -> {
+      exchange.getRequestBody().readAllBytes();
+      byte[] body = "ok".getBytes();
+      if (exchange.getRequestURI().getPath().endsWith("/search_separate")) {
+        searches.incrementAndGet();
+        body = SEPARATE.getBytes();
+      }
+      exchange.sendResponseHeaders(200, body.length);
+      exchange.getResponseBody().write(body);
+      exchange.close();
+    });
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.start();
+    api = new ApiClient("http://127.0.0.1:" + server.getAddress().getPort());
+  }
+
+  @AfterEach
+  void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private static QueryCache.Key key(float... dense) {
+    return new QueryCache.Key("idx", dense, SPARSE, 10, 10, false, null);
+  }
+
+  private HybridIndex hybridIndex(QueryCache cache) {
+    HybridIndex index = new HybridIndex("hyb", "token", api, 1, new HybridIndexParams("", 0, "cosine", 2, 100, false, 16));
+    index.setQueryCache(cache);
+    return index;
+  }
+
+  private static SearchResponse query(HybridIndex index, List<Double> dense, Collection<String> fields)
+      throws Exception {
+    return index.query(dense, Map.of("indices", List.of(3), "values", List.of(0.5)), 10, 10, false,
+        new ReciprocalRankFusion(60), fields);
+  }
+
+  @Test
+  void leastRecentlyUsedEntryIsEvicted() {
+    QueryCache cache = new QueryCache(2, Duration.ofMinutes(1));
+    SearchResponseDecoder.Result a = new SearchResponseDecoder.Result();
+    SearchResponseDecoder.Result b = new SearchResponseDecoder.Result();
+    cache.put(key(1, 0), a, cache.generation());
+    cache.put(key(0, 1), b, cache.generation());
+    // Reading a makes b the eldest
+    assertSame(a, cache.get(key(1, 0)));
+    cache.put(key(1, 1), new SearchResponseDecoder.Result(), cache.generation());
+    assertEquals(2, cache.size());
+    assertNull(cache.get(key(0, 1)));
+    assertSame(a, cache.get(key(1, 0)));
+    assertEquals(1, cache.getEvictionCount());
+    assertEquals(2, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  void entriesExpireAfterTheTtl() throws Exception {
+    QueryCache cache = new QueryCache(10, Duration.ofMillis(50));
+    SearchResponseDecoder.Result result = new SearchResponseDecoder.Result();
+    cache.put(key(1, 0), result, cache.generation());
+    assertSame(result, cache.get(key(1, 0)));
+    Thread.sleep(80);
+    assertNull(cache.get(key(1, 0)));
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.getEvictionCount());
+  }
+
+  @Test
+  void responsesToRequestsSentBeforeAnInvalidationAreDropped() {
+    QueryCache cache = new QueryCache(10, Duration.ofMinutes(1));
+    long sentAt = cache.generation();
+    cache.invalidateAll();
+    cache.put(key(1, 0), new SearchResponseDecoder.Result(), sentAt);
+    assertEquals(0, cache.size());
+    cache.put(key(1, 0), new SearchResponseDecoder.Result(), cache.generation());
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.getInvalidationCount());
+  }
+
+  @Test
+  void keysCompareTheWholeQuery() {
+    assertEquals(key(1, 0), key(1, 0));
+    assertEquals(key(1, 0).hashCode(), key(1, 0).hashCode());
+    assertNotEquals(key(1, 0), key(0, 1));
+    // Sparse terms are sorted and merged before they reach the key
+    QueryCache.Key reordered = new QueryCache.Key("idx", new float[]{1, 0},
+        new SparseVector(new int[]{7, 3}, new float[]{1, 0.5f}), 10, 10, false, null);
+    QueryCache.Key sorted = new QueryCache.Key("idx", new float[]{1, 0},
+        new SparseVector(new int[]{3, 7}, new float[]{0.5f, 1}), 10, 10, false, null);
+    assertEquals(sorted, reordered);
+    assertNotEquals(key(1, 0), new QueryCache.Key("idx", new float[]{1, 0}, SPARSE, 10, 10, true, null));
+    assertNotEquals(key(1, 0), new QueryCache.Key("idx", new float[]{1, 0}, SPARSE, 10, 10, false, Set.of("k")));
+    assertNotEquals(key(1, 0), new QueryCache.Key("other", new float[]{1, 0}, SPARSE, 10, 10, false, null));
+  }
+
+  @Test
+  void repeatedQueriesAreServedFromTheCache() throws Exception {
+    QueryCache cache = new QueryCache(10, Duration.ofMinutes(1));
+    HybridIndex index = hybridIndex(cache);
+    SearchResponse first = query(index, Arrays.asList(3.0, 4.0), null);
+    // The same direction at another length normalizes to the same key
+    SearchResponse second = query(index, Arrays.asList(6.0, 8.0), null);
+    assertEquals(1, searches.get());
+    assertEquals("a", second.get(0).getId());
+    assertEquals(first.get(0).getScore(), second.get(0).getScore());
+
+    query(index, Arrays.asList(3.0, 4.0), List.of("title"));
+    assertEquals(2, searches.get());
+    assertEquals(1.0 / 3, cache.getHitRate());
+  }
+
+  @Test
+  void writesInvalidateTheCache() throws Exception {
+    QueryCache cache = new QueryCache(10, Duration.ofMinutes(1));
+    HybridIndex index = hybridIndex(cache);
+    query(index, Arrays.asList(1.0, 0.0), null);
+    index.upsertRecords(List.of(new HybridRecord("a", new float[]{1, 0}, new int[]{3}, new float[]{1})));
+    assertEquals(0, cache.size());
+    query(index, Arrays.asList(1.0, 0.0), null);
+    assertEquals(2, searches.get());
+  }
+
+  @Test
+  void rejectsInvalidSettings() {
+    assertThrows(IllegalArgumentException.class, () -> new QueryCache(0, Duration.ofSeconds(1)));
+    assertThrows(IllegalArgumentException.class, () -> new QueryCache(1, Duration.ZERO));
+    assertThrows(IllegalArgumentException.class, () -> new QueryCache(1, null));
+  }
+}
@@ -0,0 +1,267 @@
+package ai.vectorx;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Retries, deadlines and hedging against a local stub that fails requests on cue.
+ */
+public class RetryPolicyTest {
+  private static final byte[] EMPTY_HITS = {(byte) 0x90};
+  private static final String EMPTY_SEPARATE = "{\"dense_results\":[],\"sparse_results\":[],\"metadata\":[]}";
+
+  private HttpServer server;
+  private ExecutorService executor;
+  private ApiClient api;
+  // Scripted replies, taken one per request; requests beyond the script succeed
+  private final Queue<Fault> faults = new ConcurrentLinkedQueue<>();
+  private final List<byte[]> bodies = new CopyOnWriteArrayList<>();
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private static final class Fault {
+    final int status;
+    final long delayMillis;
+
+    Fault(int status, long delayMillis) {
+      this.status = status;
+      this.delayMillis = delayMillis;
+    }
+  }
+
+  @BeforeEach
+  void start() throws IOException {
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", this::handle);
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.start();
+    api = new ApiClient("http://127.0.0.1:" + server.getAddress().getPort());
+  }
+
+  @AfterEach
+  void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    bodies.add(exchange.getRequestBody().readAllBytes());
+    Fault fault = faults.poll();
+    if (fault != null && fault.delayMillis > 0) {
+      try {
+        Thread.sleep(fault.delayMillis);
+      } catch (InterruptedException e) {
+        exchange.close();
+        return;
+      }
+    }
+    int status = fault == null ? 200 : fault.status;
+    String path = exchange.getRequestURI().getPath();
+    byte[] body = status != 200 ? "unavailable".getBytes()
+        : path.endsWith("/search") ? EMPTY_HITS
+        : path.endsWith("/search_separate") ? EMPTY_SEPARATE.getBytes()
+        : "ok".getBytes();
+    exchange.sendResponseHeaders(status, body.length);
+    exchange.getResponseBody().write(body);
+    exchange.close();
+  }
+
+  private Index index() {
+    return new Index("idx", "", "token", api, 1, new IndexParams("", 0, "cosine", 4, false, 16));
+  }
+
+  private HybridIndex hybridIndex() {
+    return new HybridIndex("hyb", "token", api, 1, new HybridIndexParams("", 0, "cosine", 2, 100, false, 16));
+  }
+
+  private static RetryPolicy quickRetries(int attempts) {
+    return new RetryPolicy(attempts, Duration.ofMillis(5), Duration.ofMillis(20));
+  }
+
+  private static List<DenseRecord> records() {
+    return List.of(new DenseRecord("a", new float[]{1, 2, 3, 4}, Map.of("k", "v"), Map.of()));
+  }
+
+  @Test
+  void noPolicySendsOnce() {
+    faults.add(new Fault(503, 0));
+    assertThrows(RuntimeException.class, () -> index().search(new float[]{1, 0, 0, 0}, 5, null, 64, false));
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  void searchIsRetriedThroughUnavailableReplies() throws Exception {
+    api.setRetryPolicy(quickRetries(3));
+    faults.add(new Fault(503, 0));
+    faults.add(new Fault(502, 0));
+    assertTrue(index().search(new float[]{1, 0, 0, 0}, 5, null, 64, false).isEmpty());
+    assertEquals(3, requests.get());
+  }
+
+  @Test
+  void exhaustedRetriesSurfaceTheLastStatus() {
+    api.setRetryPolicy(quickRetries(2));
+    for (int i = 0; i < 3; i++) {
+      faults.add(new Fault(504, 0));
+    }
+    RuntimeException e = assertThrows(RuntimeException.class,
+        () -> index().search(new float[]{1, 0, 0, 0}, 5, null, 64, false));
+    assertTrue(e.getMessage().contains("504"), e.getMessage());
+    assertEquals(2, requests.get());
+  }
+
+  @Test
+  void clientErrorsAreNotRetried() {
+    api.setRetryPolicy(quickRetries(3));
+    faults.add(new Fault(400, 0));
+    assertThrows(RuntimeException.class, () -> index().search(new float[]{1, 0, 0, 0}, 5, null, 64, false));
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  void hybridSearchIsRetriedWhenTheDecoderSeesTheError() throws Exception {
+    api.setRetryPolicy(quickRetries(3));
+    faults.add(new Fault(503, 0));
+    List<Map<String, Object>> results = hybridIndex().search(Arrays.asList(1.0, 0.0),
+        Map.of("indices", List.of(1), "values", List.of(0.5)), 5, 5, false, 60);
+    assertTrue(results.isEmpty());
+    assertEquals(2, requests.get());
+  }
+
+  @Test
+  void upsertIsRetriedWhenTurnedAwayAndResendsTheSameBody() throws Exception {
+    api.setRetryPolicy(quickRetries(3));
+    faults.add(new Fault(503, 0));
+    faults.add(new Fault(429, 0));
+    index().upsertRecords(records());
+    assertEquals(3, requests.get());
+    assertArrayEquals(bodies.get(0), bodies.get(1));
+    assertArrayEquals(bodies.get(0), bodies.get(2));
+  }
+
+  @Test
+  void streamedUpsertIsReencodedForEachAttempt() throws Exception {
+    api.setRetryPolicy(quickRetries(2));
+    Index index = index();
+    index.setStreamingThreshold(0);
+    faults.add(new Fault(503, 0));
+    index.upsertRecords(records());
+    assertEquals(2, requests.get());
+    assertArrayEquals(bodies.get(0), bodies.get(1));
+  }
+
+  @Test
+  void upsertIsNotRetriedAfterTheServerMayHaveAppliedIt() {
+    api.setRetryPolicy(quickRetries(3));
+    faults.add(new Fault(502, 0));
+    assertThrows(RuntimeException.class, () -> index().upsertRecords(records()));
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  void upsertIsRetriedWhenTheConnectionIsRefused() throws Exception {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    ApiClient refused = new ApiClient("http://127.0.0.1:" + port);
+    refused.setRetryPolicy(quickRetries(3));
+    Index index = new Index("idx", "", "token", refused, 1, new IndexParams("", 0, "cosine", 4, false, 16));
+    assertThrows(Exception.class, () -> index.upsertRecords(records()));
+    assertEquals(3, refused.getRequestCount());
+  }
+
+  @Test
+  void deadlineBoundsTheWholeCall() {
+    api.setRetryPolicy(new RetryPolicy(5, Duration.ofMillis(5), Duration.ofMillis(20), Duration.ofMillis(300), 0));
+    faults.add(new Fault(200, 3000));
+    long start = System.nanoTime();
+    Exception e = assertThrows(Exception.class, () -> index().search(new float[]{1, 0, 0, 0}, 5, null, 64, false));
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    assertTrue(e instanceof HttpTimeoutException || e.getCause() instanceof HttpTimeoutException, e.toString());
+    assertTrue(elapsed < 2000, "took " + elapsed + " ms");
+  }
+
+  @Test
+  void settledCallsLeaveNoDeadlineTimersBehind() throws Exception {
+    api.setRetryPolicy(new RetryPolicy(3, Duration.ofMillis(5), Duration.ofMillis(20), Duration.ofMinutes(10), 0));
+    Index index = index();
+    for (int i = 0; i < 50; i++) {
+      index.search(new float[]{1, 0, 0, 0}, 5, null, 64, false);
+    }
+    // Timers are cancelled as the call settles, which may trail the caller's wake-up slightly
+    long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+    while (RetryingCall.pendingTimers() > 0 && System.nanoTime() < until) {
+      Thread.sleep(5);
+    }
+    assertEquals(0, RetryingCall.pendingTimers());
+  }
+
+  @Test
+  void slowReadIsHedgedAfterTheLatencyPercentile() throws Exception {
+    api.setRetryPolicy(new RetryPolicy(1, Duration.ZERO, Duration.ZERO, null, 95));
+    Index index = index();
+    for (int i = 0; i < RetryingCall.MIN_HEDGE_SAMPLES; i++) {
+      index.search(new float[]{1, 0, 0, 0}, 5, null, 64, false);
+    }
+    requests.set(0);
+    faults.add(new Fault(200, 3000));
+    long start = System.nanoTime();
+    assertTrue(index.search(new float[]{1, 0, 0, 0}, 5, null, 64, false).isEmpty());
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    assertEquals(2, requests.get());
+    assertTrue(elapsed < 2000, "took " + elapsed + " ms");
+  }
+
+  @Test
+  void writesAreNeverHedged() throws Exception {
+    api.setRetryPolicy(new RetryPolicy(1, Duration.ZERO, Duration.ZERO, null, 50));
+    Index index = index();
+    for (int i = 0; i < RetryingCall.MIN_HEDGE_SAMPLES; i++) {
+      index.search(new float[]{1, 0, 0, 0}, 5, null, 64, false);
+    }
+    requests.set(0);
+    faults.add(new Fault(200, 300));
+    index.upsertRecords(records());
+    assertEquals(1, requests.get());
+  }
+
+  @Test
+  void backoffStaysWithinTheExponentialCap() {
+    RetryPolicy policy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofSeconds(1));
+    for (int retry = 1; retry <= 10; retry++) {
+      long cap = Math.min(TimeUnit.MILLISECONDS.toNanos(100) << (retry - 1), TimeUnit.SECONDS.toNanos(1));
+      for (int i = 0; i < 100; i++) {
+        long wait = policy.backoffNanos(retry);
+        assertTrue(wait >= 0 && wait <= cap, "retry " + retry + " waited " + wait);
+      }
+    }
+  }
+
+  @Test
+  void rejectsInvalidPolicies() {
+    assertThrows(IllegalArgumentException.class, () -> new RetryPolicy(0, Duration.ZERO, Duration.ZERO));
+    assertThrows(IllegalArgumentException.class,
+        () -> new RetryPolicy(3, Duration.ofSeconds(2), Duration.ofSeconds(1)));
+    assertThrows(IllegalArgumentException.class,
+        () -> new RetryPolicy(3, Duration.ZERO, Duration.ZERO, Duration.ZERO, 0));
+    assertThrows(IllegalArgumentException.class,
+        () -> new RetryPolicy(3, Duration.ZERO, Duration.ZERO, null, 100));
+  }
+}
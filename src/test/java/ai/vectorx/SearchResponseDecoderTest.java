@@ -0,0 +1,163 @@
+package ai.vectorx;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The one-pass hybrid search decoder, fed whole bodies, split bodies and broken ones.
+ */
+public class SearchResponseDecoderTest {
+  private static final String RESPONSE = "{\"dense_results\":["
+      + "{\"id\":\"a\",\"score\":0.75,\"rank\":0,\"vector\":[1.5,-2,0.25],\"extra\":{\"x\":[1,{\"y\":2}]}},"
+      + "{\"id\":\"b\",\"score\":-1e-3,\"rank\":1}],"
+      + "\"took\":{\"ms\":[3,4]},"
+      + "\"sparse_results\":[{\"rank\":0,\"score\":12,\"id\":\"ü-é\"}],"
+      + "\"metadata\":[{\"id\":\"a\",\"meta\":\"bWV0YQ==\"},{\"id\":\"b\",\"meta\":null}]}";
+
+  private static SearchResponseDecoder.Result decode(byte[] bytes, int chunk, boolean includeVectors)
+      throws IOException {
+    SearchResponseDecoder decoder = new SearchResponseDecoder(Codecs.JSON_FACTORY, includeVectors);
+    for (int i = 0; i < bytes.length; i += chunk) {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes, i, Math.min(chunk, bytes.length - i));
+      decoder.feed(buffer);
+      assertFalse(buffer.hasRemaining());
+    }
+    return decoder.finish();
+  }
+
+  private static SearchResponseDecoder.Result decode(String json, boolean includeVectors) throws IOException {
+    byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+    return decode(bytes, Math.max(1, bytes.length), includeVectors);
+  }
+
+  private static void assertSameResult(SearchResponseDecoder.Result expected, SearchResponseDecoder.Result actual) {
+    assertSameHits(expected.dense, actual.dense);
+    assertSameHits(expected.sparse, actual.sparse);
+    assertEquals(expected.metadata, actual.metadata);
+  }
+
+  private static void assertSameHits(List<SearchResponseDecoder.Hit> expected, List<SearchResponseDecoder.Hit> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).id, actual.get(i).id);
+      assertEquals(expected.get(i).score, actual.get(i).score);
+      assertEquals(expected.get(i).rank, actual.get(i).rank);
+      assertArrayEquals(expected.get(i).vector, actual.get(i).vector);
+    }
+  }
+
+  @Test
+  void decodesBothListsAndTheMetadata() throws Exception {
+    SearchResponseDecoder.Result result = decode(RESPONSE, true);
+    assertEquals(2, result.dense.size());
+    SearchResponseDecoder.Hit a = result.dense.get(0);
+    assertEquals("a", a.id);
+    assertEquals(0.75, a.score);
+    assertEquals(0, a.rank);
+    assertArrayEquals(new float[]{1.5f, -2f, 0.25f}, a.vector);
+    assertEquals(-1e-3, result.dense.get(1).score);
+    assertNull(result.dense.get(1).vector);
+
+    assertEquals(1, result.sparse.size());
+    assertEquals("ü-é", result.sparse.get(0).id);
+    assertEquals(12.0, result.sparse.get(0).score);
+
+    Map<String, String> meta = new HashMap<>();
+    meta.put("a", "bWV0YQ==");
+    meta.put("b", null);
+    assertEquals(meta, result.metadata);
+  }
+
+  @Test
+  void vectorsAreSkippedUnlessRequested() throws Exception {
+    SearchResponseDecoder.Result result = decode(RESPONSE, false);
+    assertNull(result.dense.get(0).vector);
+    assertEquals("b", result.dense.get(1).id);
+  }
+
+  @Test
+  void bodySplitAtEveryByteDecodesTheSame() throws Exception {
+    byte[] bytes = RESPONSE.getBytes(StandardCharsets.UTF_8);
+    SearchResponseDecoder.Result whole = decode(bytes, bytes.length, true);
+    // Chunks of one and two bytes split numbers, field names and multi-byte characters
+    for (int chunk = 1; chunk <= 7; chunk++) {
+      assertSameResult(whole, decode(bytes, chunk, true));
+    }
+  }
+
+  @Test
+  void longVectorsGrowTheBuffer() throws Exception {
+    StringBuilder json = new StringBuilder("{\"dense_results\":[{\"id\":\"a\",\"score\":1,\"rank\":0,\"vector\":[");
+    float[] expected = new float[1000];
+    for (int i = 0; i < expected.length; i++) {
+      expected[i] = i * 0.5f;
+      json.append(i == 0 ? "" : ",").append(expected[i]);
+    }
+    json.append("]}],\"sparse_results\":[]}");
+    assertArrayEquals(expected, decode(json.toString(), true).dense.get(0).vector);
+  }
+
+  @Test
+  void base64VectorsAreDecodedAsHalfFloats() throws Exception {
+    float[] vector = {1.0f, -2.5f, 0.5f, 0.0f, 65504f};
+    byte[] halves = new byte[vector.length * 2];
+    VectorKernels.SCALAR.toHalf(vector, 1.0, halves, 0);
+    String json = "{\"dense_results\":[{\"id\":\"a\",\"score\":1,\"rank\":0,\"vector\":\""
+        + Base64.getEncoder().encodeToString(halves) + "\"}],\"sparse_results\":[]}";
+    assertArrayEquals(vector, decode(json, true).dense.get(0).vector);
+    assertNull(decode(json, false).dense.get(0).vector);
+  }
+
+  @Test
+  void everyTruncationIsRejected() {
+    byte[] bytes = RESPONSE.getBytes(StandardCharsets.UTF_8);
+    for (int length = 0; length < bytes.length; length++) {
+      byte[] prefix = Arrays.copyOf(bytes, length);
+      assertThrows(IOException.class, () -> decode(prefix, 3, true), "prefix of " + length + " bytes");
+    }
+  }
+
+  @Test
+  void missingOrNullListsAreEmpty() throws Exception {
+    SearchResponseDecoder.Result result = decode("{\"dense_results\":[{\"id\":\"a\",\"score\":1,\"rank\":0}]}", false);
+    assertEquals(1, result.dense.size());
+    assertTrue(result.sparse.isEmpty());
+
+    result = decode("{\"dense_results\":null,\"sparse_results\":[{\"id\":\"b\",\"score\":2,\"rank\":0}]}", false);
+    assertTrue(result.dense.isEmpty());
+    assertEquals("b", result.sparse.get(0).id);
+
+    result = decode("{\"sparse_results\":null}", false);
+    assertTrue(result.dense.isEmpty());
+    assertTrue(result.sparse.isEmpty());
+    assertTrue(decode("{}", false).metadata.isEmpty());
+  }
+
+  @Test
+  void missingEntryKeysAreNamed() {
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+        () -> decode("{\"dense_results\":[{\"id\":\"a\",\"rank\":0}],\"sparse_results\":[]}", false));
+    assertEquals("dense_results entry missing required key: score", e.getMessage());
+
+    e = assertThrows(IllegalArgumentException.class,
+        () -> decode("{\"dense_results\":[],\"sparse_results\":[{\"id\":\"a\",\"score\":1}]}", false));
+    assertEquals("sparse_results entry missing required key: rank", e.getMessage());
+
+    e = assertThrows(IllegalArgumentException.class,
+        () -> decode("{\"dense_results\":[],\"sparse_results\":[],\"metadata\":[{\"meta\":\"x\"}]}", false));
+    assertEquals("metadata entry missing required key: id", e.getMessage());
+  }
+
+  @Test
+  void malformedShapesAreRejected() {
+    assertThrows(IllegalArgumentException.class, () -> decode("[]", false));
+    assertThrows(IllegalArgumentException.class, () -> decode("{\"dense_results\":5,\"sparse_results\":[]}", false));
+    assertThrows(IllegalArgumentException.class, () -> decode("{\"dense_results\":[1],\"sparse_results\":[]}", false));
+  }
+}
@@ -0,0 +1,170 @@
+package ai.vectorx;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tokenizing, hashing and BM25/TF-IDF weighting, with scores worked out by hand.
+ */
+public class SparseEncoderTest {
+  // Large enough that the handful of test words land in distinct buckets
+  private static final int VOCAB = 1 << 20;
+
+  private static SparseEncoder fitted(SparseEncoder encoder) {
+    encoder.fit("The cat sat");
+    encoder.fit("the dog");
+    encoder.fit("cat, cat, dog runs!");
+    return encoder;
+  }
+
+  private static double score(SparseEncoder encoder, String query, String document) {
+    return encoder.encodeQuery(query).dot(encoder.encodeDocument(document));
+  }
+
+  @Test
+  void tokensAreLowercasedRunsOfLettersAndDigits() {
+    assertArrayEquals(SparseEncoder.tokenize("hello world 42"), SparseEncoder.tokenize("  HELLO,world...42\n"));
+    assertEquals(4, SparseEncoder.tokenize("don't stop-me").length);
+    assertEquals(2, SparseEncoder.tokenize("na\u00efve \ud835\udc00bc").length);
+    assertEquals(0, SparseEncoder.tokenize(" ,.! ").length);
+    assertEquals(0, SparseEncoder.tokenize(null).length);
+    assertEquals(40, SparseEncoder.tokenize("a ".repeat(40)).length);
+  }
+
+  @Test
+  void hashesStayStable() {
+    // Indexes built with one release are queried with the next, so these must never change
+    assertArrayEquals(new int[]{-2003995026, 105664825, 686566589}, SparseEncoder.tokenize("hello world 42"));
+    SparseEncoder encoder = new SparseEncoder(VOCAB);
+    assertEquals(904860, encoder.indexOf("cat"));
+    assertEquals(904860, encoder.indexOf("CAT"));
+    assertEquals(-1, encoder.indexOf("--"));
+    assertEquals(Math.floorMod(-2003995026, 1000), new SparseEncoder(1000).indexOf("hello"));
+  }
+
+  @Test
+  void fitCountsDocumentsLengthsAndFrequencies() {
+    SparseEncoder encoder = fitted(new SparseEncoder(VOCAB));
+    assertEquals(3, encoder.getDocumentCount());
+    assertEquals(3.0, encoder.getAverageLength());
+    assertEquals(2, encoder.getDocumentFrequency(encoder.indexOf("cat")));
+    assertEquals(2, encoder.getDocumentFrequency(encoder.indexOf("dog")));
+    assertEquals(2, encoder.getDocumentFrequency(encoder.indexOf("the")));
+    assertEquals(1, encoder.getDocumentFrequency(encoder.indexOf("runs")));
+  }
+
+  @Test
+  void bm25ScoreMatchesTheTextbookFormula() {
+    SparseEncoder encoder = fitted(new SparseEncoder(VOCAB));
+    // N = 3, avgdl = 9 / 3 = 3, df(cat) = df(dog) = 2, so idf = ln(1 + 1.5 / 2.5) = ln 1.6
+    double idf = Math.log(1.6);
+    // "cat cat dog runs": dl = 4, length norm = 0.25 + 0.75 * 4 / 3 = 1.25
+    double cat = 2 * 2.2 / (2 + 1.2 * 1.25);
+    double dog = 1 * 2.2 / (1 + 1.2 * 1.25);
+    assertEquals(idf * cat, score(encoder, "cat", "cat cat dog runs"), 1e-6);
+    assertEquals(idf * (cat + dog), score(encoder, "cat dog", "cat cat dog runs"), 1e-6);
+    // "The cat sat": dl = avgdl, so the term weight is (k1 + 1) / (1 + k1) = 1
+    assertEquals(idf, score(encoder, "cat", "The cat sat"), 1e-6);
+    // Repeating a query term counts it twice
+    assertEquals(2 * idf, score(encoder, "cat cat", "The cat sat"), 1e-6);
+    assertEquals(0.0, score(encoder, "bird", "The cat sat"));
+  }
+
+  @Test
+  void unseenTermsGetTheLargestIdf() {
+    SparseEncoder encoder = fitted(new SparseEncoder(VOCAB));
+    SparseVector query = encoder.encodeQuery("bird runs cat");
+    assertEquals((float) Math.log(1 + 3.5 / 0.5), query.getValue(indexIn(query, encoder.indexOf("bird"))), 1e-6);
+    assertEquals((float) Math.log(1 + 2.5 / 1.5), query.getValue(indexIn(query, encoder.indexOf("runs"))), 1e-6);
+
+    // Before any fit, lengths are not normalized and every term has idf ln 2
+    SparseEncoder empty = new SparseEncoder(VOCAB);
+    assertEquals(Math.log(2), empty.encodeQuery("cat").getValue(0), 1e-6);
+    assertEquals(1.0, empty.encodeDocument("cat dog").getValue(0), 1e-6);
+  }
+
+  @Test
+  void tfIdfWeights() {
+    SparseEncoder encoder = fitted(new SparseEncoder(VOCAB, SparseEncoder.Weighting.TF_IDF, 1.2, 0.75));
+    SparseVector document = encoder.encodeDocument("cat cat dog");
+    assertEquals(1 + Math.log(2), document.getValue(indexIn(document, encoder.indexOf("cat"))), 1e-6);
+    assertEquals(1.0, document.getValue(indexIn(document, encoder.indexOf("dog"))), 1e-6);
+    SparseVector query = encoder.encodeQuery("cat bird");
+    assertEquals(Math.log(4.0 / 3) + 1, query.getValue(indexIn(query, encoder.indexOf("cat"))), 1e-6);
+    assertEquals(Math.log(4.0) + 1, query.getValue(indexIn(query, encoder.indexOf("bird"))), 1e-6);
+  }
+
+  @Test
+  void vectorsAreSortedAndWithinTheVocabulary() {
+    SparseEncoder encoder = fitted(new SparseEncoder(7));
+    SparseVector vector = encoder.encodeDocument("many words fall into only seven buckets here");
+    assertEquals(vector, new SparseVector(vector.getIndices(), vector.getValues()));
+    assertSame(vector, vector.checkVocabSize(7));
+  }
+
+  @Test
+  void concurrentFitsAreAllCounted() throws Exception {
+    SparseEncoder encoder = new SparseEncoder(VOCAB);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(pool.submit(() -> {
+          for (int i = 0; i < 500; i++) {
+            encoder.fit("cat dog");
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    assertEquals(2000, encoder.getDocumentCount());
+    assertEquals(2.0, encoder.getAverageLength());
+    assertEquals(2000, encoder.getDocumentFrequency(encoder.indexOf("cat")));
+  }
+
+  @Test
+  void documentWeightsDriftWithTheAverageUntilItIsFrozen() {
+    SparseEncoder encoder = new SparseEncoder(VOCAB);
+    // Nothing fitted: no length normalization, so tf = 1 weighs (k1 + 1) / (1 + k1) = 1
+    assertArrayEquals(new float[]{1, 1}, encoder.encodeDocument("cat sat").getValues());
+
+    fitted(encoder);
+    SparseVector early = encoder.encodeDocument("cat sat");
+    encoder.fit("a much longer document that pulls the average length up a long way");
+    assertNotEquals(early, encoder.encodeDocument("cat sat"));
+
+    encoder.freezeAverageLength(3.0);
+    assertEquals(3.0, encoder.getFrozenAverageLength());
+    assertEquals(early, encoder.encodeDocument("cat sat"));
+    encoder.fit("yet another long document to move the running average even further away");
+    assertEquals(early, encoder.encodeDocument("cat sat"));
+    assertNotEquals(3.0, encoder.getAverageLength());
+  }
+
+  @Test
+  void rejectsInvalidSettings() {
+    assertThrows(IllegalArgumentException.class, () -> new SparseEncoder(0));
+    assertThrows(IllegalArgumentException.class, () -> new SparseEncoder(8).freezeAverageLength(0));
+    assertThrows(IllegalArgumentException.class, () -> new SparseEncoder(8).freezeAverageLength(Double.NaN));
+    assertThrows(IllegalArgumentException.class, () -> new SparseEncoder(10, null, 1.2, 0.75));
+    assertThrows(IllegalArgumentException.class, () -> new SparseEncoder(10, SparseEncoder.Weighting.BM25, -1, 0.75));
+    assertThrows(IllegalArgumentException.class, () -> new SparseEncoder(10, SparseEncoder.Weighting.BM25, 1.2, 1.5));
+  }
+
+  private static int indexIn(SparseVector vector, int index) {
+    for (int i = 0; i < vector.size(); i++) {
+      if (vector.getIndex(i) == index) {
+        return i;
+      }
+    }
+    throw new AssertionError("no term " + index);
+  }
+}
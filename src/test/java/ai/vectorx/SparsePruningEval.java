@@ -0,0 +1,223 @@
+package ai.vectorx;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.Executors;
+
+/**
+ * Recall versus latency of SparsePruning settings, measured through HybridIndex.query against
+ * a local stand-in for /hybrid/{name}/search_separate. The stand-in scores a synthetic
+ * learned-sparse corpus term at a time over posting lists, so like the real sparse path its
+ * cost grows with the number and popularity of query terms. Recall@k is taken against the
+ * unpruned query's results. Runs offline:
+ *
+ *   mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ai.vectorx.SparsePruningEval
+ */
+public class SparsePruningEval {
+  private static final int DOCS = 50_000;
+  private static final int VOCAB = 30_000;
+  private static final int DOC_TERMS = 120;
+  private static final int QUERIES = 200;
+  private static final int QUERY_TERMS = 300;
+  private static final int TOP_K = 10;
+
+  public static void main(String[] args) throws Exception {
+    Random random = new Random(7);
+    Corpus corpus = new Corpus(random);
+    HttpServer server = corpus.serve();
+    try {
+      HybridIndex index = new HybridIndex("eval", "token",
+          new ApiClient("http://127.0.0.1:" + server.getAddress().getPort()), 1,
+          new HybridIndexParams("", DOCS, "ip", 1, VOCAB, false, 16));
+      List<SparseVector> queries = new ArrayList<>();
+      for (int q = 0; q < QUERIES; q++) {
+        queries.add(corpus.query(random));
+      }
+
+      SparsePruning[] settings = {
+          SparsePruning.NONE,
+          new SparsePruning(200), new SparsePruning(100), new SparsePruning(50), new SparsePruning(25),
+          new SparsePruning(0, 0.5f, 1.0), new SparsePruning(0, 1.0f, 1.0),
+          new SparsePruning(0, 0f, 0.9), new SparsePruning(0, 0f, 0.75), new SparsePruning(0, 0f, 0.5),
+          new SparsePruning(64, 0.25f, 0.9),
+      };
+
+      index.setSparsePruning(SparsePruning.NONE);
+      List<Set<String>> truth = new ArrayList<>();
+      for (SparseVector query : queries) {
+        truth.add(ids(search(index, query)));
+      }
+
+      System.out.printf("%-55s %8s %10s %10s %10s%n", "pruning", "terms", "recall@" + TOP_K, "p50 ms", "p95 ms");
+      for (SparsePruning pruning : settings) {
+        index.setSparsePruning(pruning);
+        // Warm up, then measure
+        for (SparseVector query : queries) {
+          search(index, query);
+        }
+        long[] nanos = new long[queries.size()];
+        double recall = 0;
+        double terms = 0;
+        for (int q = 0; q < queries.size(); q++) {
+          long start = System.nanoTime();
+          SearchResponse response = search(index, queries.get(q));
+          nanos[q] = System.nanoTime() - start;
+          Set<String> found = ids(response);
+          found.retainAll(truth.get(q));
+          recall += truth.get(q).isEmpty() ? 1.0 : (double) found.size() / truth.get(q).size();
+          terms += pruning.apply(queries.get(q)).size();
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%-55s %8.1f %10.3f %10.2f %10.2f%n", pruning.toString().replace("SparsePruning", ""),
+            terms / queries.size(), recall / queries.size(),
+            nanos[nanos.length / 2] / 1e6, nanos[(int) (nanos.length * 0.95)] / 1e6);
+      }
+    } finally {
+      server.stop(0);
+    }
+    System.exit(0);
+  }
+
+  private static SearchResponse search(HybridIndex index, SparseVector query) throws Exception {
+    return index.query(Collections.singletonList(1.0), query, TOP_K, 0, false,
+        new ReciprocalRankFusion(ReciprocalRankFusion.DEFAULT_K), null);
+  }
+
+  private static Set<String> ids(SearchResponse response) {
+    Set<String> ids = new HashSet<>();
+    for (SearchResult result : response) {
+      ids.add(result.getId());
+    }
+    return ids;
+  }
+
+  /**
+   * Zipf-distributed terms with SPLADE-like weights: common terms get long posting lists and
+   * low weights, rare terms short lists and high weights.
+   */
+  private static final class Corpus {
+    private final double[] cumulative = new double[VOCAB];
+    private final int[][] postingDocs = new int[VOCAB][];
+    private final float[][] postingWeights = new float[VOCAB][];
+    private final ThreadLocal<float[]> accumulators = ThreadLocal.withInitial(() -> new float[DOCS]);
+
+    Corpus(Random random) {
+      double total = 0;
+      for (int t = 0; t < VOCAB; t++) {
+        total += 1.0 / Math.pow(t + 1, 1.05);
+        cumulative[t] = total;
+      }
+      for (int t = 0; t < VOCAB; t++) {
+        cumulative[t] /= total;
+      }
+      int[] lengths = new int[VOCAB];
+      int[][] docTerms = new int[DOCS][];
+      float[][] docWeights = new float[DOCS][];
+      for (int d = 0; d < DOCS; d++) {
+        SparseVector doc = vector(random, DOC_TERMS);
+        docTerms[d] = doc.getIndices();
+        docWeights[d] = doc.getValues();
+        for (int term : docTerms[d]) {
+          lengths[term]++;
+        }
+      }
+      for (int t = 0; t < VOCAB; t++) {
+        postingDocs[t] = new int[lengths[t]];
+        postingWeights[t] = new float[lengths[t]];
+        lengths[t] = 0;
+      }
+      for (int d = 0; d < DOCS; d++) {
+        for (int i = 0; i < docTerms[d].length; i++) {
+          int term = docTerms[d][i];
+          postingDocs[term][lengths[term]] = d;
+          postingWeights[term][lengths[term]++] = docWeights[d][i];
+        }
+      }
+    }
+
+    SparseVector query(Random random) {
+      return vector(random, QUERY_TERMS);
+    }
+
+    private SparseVector vector(Random random, int terms) {
+      int[] indices = new int[terms];
+      float[] values = new float[terms];
+      for (int i = 0; i < terms; i++) {
+        int term = Arrays.binarySearch(cumulative, random.nextDouble());
+        indices[i] = Math.min(VOCAB - 1, term < 0 ? -term - 1 : term);
+        // Rarer terms weigh more, with a long tail of small weights
+        double rarity = Math.log(2 + indices[i]) / Math.log(VOCAB);
+        values[i] = (float) (rarity * rarity * -Math.log(1 - random.nextDouble()));
+      }
+      return new SparseVector(indices, values);
+    }
+
+    HttpServer serve() throws Exception {
+      // Without it, delayed ACKs add a fixed ~40 ms per exchange that hides the scoring cost
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+      HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+      server.createContext("/", exchange -> {
+        int status = 200;
+        byte[] body;
+        try {
+          body = search(Codecs.TREE_READER.readTree(exchange.getRequestBody()));
+        } catch (Exception e) {
+          status = 500;
+          body = e.toString().getBytes();
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+      });
+      server.setExecutor(Executors.newFixedThreadPool(4));
+      server.start();
+      return server;
+    }
+
+    // Term-at-a-time scoring of the sparse query, then the top sparse_top_k documents
+    private byte[] search(JsonNode request) throws Exception {
+      float[] scores = accumulators.get();
+      Arrays.fill(scores, 0f);
+      for (JsonNode term : request.get("sparse_vector")) {
+        int t = term.get("index").asInt();
+        float weight = (float) term.get("value").asDouble();
+        int[] docs = postingDocs[t];
+        float[] weights = postingWeights[t];
+        for (int i = 0; i < docs.length; i++) {
+          scores[docs[i]] += weight * weights[i];
+        }
+      }
+      int k = request.get("sparse_top_k").asInt();
+      double[] ranked = new double[DOCS];
+      for (int d = 0; d < DOCS; d++) {
+        ranked[d] = scores[d];
+      }
+      int[] top = HitTable.top(ranked, DOCS, k);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (JsonGenerator json = Codecs.JSON_FACTORY.createGenerator(out)) {
+        json.writeStartObject();
+        json.writeArrayFieldStart("dense_results");
+        json.writeEndArray();
+        json.writeArrayFieldStart("sparse_results");
+        for (int rank = 0; rank < top.length && scores[top[rank]] > 0; rank++) {
+          json.writeStartObject();
+          json.writeStringField("id", "doc-" + top[rank]);
+          json.writeNumberField("score", scores[top[rank]]);
+          json.writeNumberField("rank", rank + 1);
+          json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeArrayFieldStart("metadata");
+        json.writeEndArray();
+        json.writeEndObject();
+      }
+      return out.toByteArray();
+    }
+  }
+}
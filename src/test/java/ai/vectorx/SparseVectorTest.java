@@ -0,0 +1,174 @@
+package ai.vectorx;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Construction, products and term selection of sparse vectors, checked against plain maps and
+ * sorts.
+ */
+public class SparseVectorTest {
+  private static SparseVector vector(int[] indices, float[] values) {
+    return new SparseVector(indices, values);
+  }
+
+  private static SparseVector random(Random random, int terms, int vocab) {
+    int[] indices = new int[terms];
+    float[] values = new float[terms];
+    for (int i = 0; i < terms; i++) {
+      indices[i] = random.nextInt(vocab);
+      // Few distinct magnitudes, so weight ties are common
+      values[i] = (random.nextInt(9) - 4) * 0.5f;
+    }
+    return new SparseVector(indices, values);
+  }
+
+  @Test
+  void constructorSortsAndMergesDuplicates() {
+    int[] indices = {5, 1, 5, 3, 1};
+    float[] values = {1, 2, 3, 4, 0.5f};
+    SparseVector vector = vector(indices, values);
+    assertArrayEquals(new int[]{1, 3, 5}, vector.getIndices());
+    assertArrayEquals(new float[]{2.5f, 4, 4}, vector.getValues());
+    // The caller's arrays are left as they were
+    assertArrayEquals(new int[]{5, 1, 5, 3, 1}, indices);
+    assertArrayEquals(new float[]{1, 2, 3, 4, 0.5f}, values);
+  }
+
+  @Test
+  void sortedInputIsCopied() {
+    int[] indices = {1, 2};
+    float[] values = {1, 2};
+    SparseVector vector = vector(indices, values);
+    indices[0] = 9;
+    values[0] = 9;
+    vector.getValues()[1] = 7;
+    assertEquals(1, vector.getIndex(0));
+    assertEquals(1.0f, vector.getValue(0));
+    assertEquals(2.0f, vector.getValue(1));
+  }
+
+  @Test
+  void matchesAMapOfSummedWeights() {
+    Random random = new Random(2);
+    for (int round = 0; round < 200; round++) {
+      int terms = random.nextInt(50);
+      int[] indices = new int[terms];
+      float[] values = new float[terms];
+      TreeMap<Integer, Float> expected = new TreeMap<>();
+      for (int i = 0; i < terms; i++) {
+        indices[i] = random.nextInt(20);
+        values[i] = random.nextInt(10);
+        expected.merge(indices[i], values[i], Float::sum);
+      }
+      SparseVector vector = vector(indices, values);
+      assertEquals(expected.size(), vector.size());
+      int i = 0;
+      for (Map.Entry<Integer, Float> entry : expected.entrySet()) {
+        assertEquals(entry.getKey(), vector.getIndex(i));
+        assertEquals(entry.getValue(), vector.getValue(i++));
+      }
+    }
+  }
+
+  @Test
+  void rejectsInvalidInput() {
+    assertThrows(IllegalArgumentException.class, () -> vector(new int[]{3, -1}, new float[]{1, 1}));
+    assertThrows(IllegalArgumentException.class, () -> vector(new int[]{1, 2}, new float[]{1}));
+    assertThrows(IllegalArgumentException.class, () -> vector(null, new float[0]));
+    assertThrows(IllegalArgumentException.class, () -> vector(new int[]{1}, new float[]{1}).top(-1));
+    SparseVector vector = vector(new int[]{0, 99}, new float[]{1, 1});
+    assertSame(vector, vector.checkVocabSize(100));
+    assertSame(vector, vector.checkVocabSize(0));
+    assertThrows(IllegalArgumentException.class, () -> vector.checkVocabSize(99));
+  }
+
+  @Test
+  void dotMatchesAMapJoin() {
+    Random random = new Random(8);
+    for (int round = 0; round < 200; round++) {
+      SparseVector a = random(random, random.nextInt(40), 60);
+      SparseVector b = random(random, random.nextInt(40), 60);
+      Map<Integer, Float> weights = new HashMap<>();
+      for (int i = 0; i < b.size(); i++) {
+        weights.put(b.getIndex(i), b.getValue(i));
+      }
+      double expected = 0.0;
+      for (int i = 0; i < a.size(); i++) {
+        expected += (double) a.getValue(i) * weights.getOrDefault(a.getIndex(i), 0f);
+      }
+      assertEquals(expected, a.dot(b), 1e-9);
+      assertEquals(a.dot(b), b.dot(a), 1e-9);
+    }
+  }
+
+  @Test
+  void topKeepsTheHeaviestAndTheLowerIndexOnTies() {
+    SparseVector vector = vector(new int[]{10, 20, 30, 40, 50}, new float[]{0.5f, -3, 2, -2, 1});
+    SparseVector top = vector.top(2);
+    assertArrayEquals(new int[]{20, 30}, top.getIndices());
+    assertArrayEquals(new float[]{-3, 2}, top.getValues());
+    assertSame(vector, vector.top(5));
+    assertEquals(0, vector.top(0).size());
+  }
+
+  @Test
+  void topMatchesAFullSort() {
+    Random random = new Random(13);
+    for (int round = 0; round < 300; round++) {
+      SparseVector vector = random(random, random.nextInt(60), 100);
+      int k = random.nextInt(vector.size() + 2);
+      List<Integer> positions = new ArrayList<>();
+      for (int i = 0; i < vector.size(); i++) {
+        positions.add(i);
+      }
+      // Heaviest first, lower index first among equals
+      positions.sort((a, b) -> Float.compare(Math.abs(vector.getValue(b)), Math.abs(vector.getValue(a))));
+      List<Integer> kept = new ArrayList<>(positions.subList(0, Math.min(k, positions.size())));
+      Collections.sort(kept);
+      SparseVector top = vector.top(k);
+      assertEquals(kept.size(), top.size(), "round " + round);
+      for (int i = 0; i < kept.size(); i++) {
+        assertEquals(vector.getIndex(kept.get(i)), top.getIndex(i), "round " + round);
+        assertEquals(vector.getValue(kept.get(i)), top.getValue(i));
+      }
+    }
+  }
+
+  @Test
+  void keepMassTakesTheFewestHeaviestTerms() {
+    SparseVector vector = vector(new int[]{1, 2, 3, 4}, new float[]{1, -4, 2, 3});
+    assertArrayEquals(new int[]{2, 4}, vector.keepMass(0.7).getIndices());
+    assertArrayEquals(new int[]{2, 3, 4}, vector.keepMass(0.71).getIndices());
+    assertArrayEquals(new int[]{2}, vector.keepMass(0.01).getIndices());
+    assertEquals(0, vector.keepMass(0).size());
+    assertSame(vector, vector.keepMass(1.0));
+    // Equal weights keep the lower index
+    assertArrayEquals(new int[]{7}, vector(new int[]{7, 8, 9}, new float[]{2, 2, 1}).keepMass(0.3).getIndices());
+    assertThrows(IllegalArgumentException.class, () -> vector.keepMass(1.5));
+    assertThrows(IllegalArgumentException.class, () -> vector.keepMass(Double.NaN));
+  }
+
+  @Test
+  void pruneBelowComparesAbsoluteWeights() {
+    SparseVector vector = vector(new int[]{1, 2, 3, 4}, new float[]{0.1f, -0.5f, 0.2f, 0.5f});
+    SparseVector pruned = vector.pruneBelow(0.2f);
+    assertArrayEquals(new int[]{2, 3, 4}, pruned.getIndices());
+    assertArrayEquals(new float[]{-0.5f, 0.2f, 0.5f}, pruned.getValues());
+    assertSame(vector, vector.pruneBelow(0f));
+    assertEquals(0, vector.pruneBelow(1f).size());
+  }
+
+  @Test
+  void equalVectorsHaveEqualHashes() {
+    SparseVector a = vector(new int[]{3, 1}, new float[]{1, 2});
+    SparseVector b = vector(new int[]{1, 3}, new float[]{2, 1});
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    assertNotEquals(a, vector(new int[]{1, 3}, new float[]{2, 1.5f}));
+    assertEquals("SparseVector{1=2.0, 3=1.0}", a.toString());
+  }
+}
@@ -0,0 +1,123 @@
+package ai.vectorx;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Record-by-record body encoding: the bytes, the pull-driven chunking and release.
+ */
+public class StreamingBodyTest {
+  private static final ObjectMapper JACKSON = new ObjectMapper(new MessagePackFactory());
+
+  // Collects every item and the terminal signal, requesting one item at a time
+  private static final class Collector implements Flow.Subscriber<ByteBuffer> {
+    final List<ByteBuffer> items = new ArrayList<>();
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+    boolean completed;
+    private Flow.Subscription subscription;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(1);
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+      items.add(item);
+      subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error.set(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+
+    byte[] bytes() {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      for (ByteBuffer item : items) {
+        byte[] chunk = new byte[item.remaining()];
+        item.duplicate().get(chunk);
+        out.write(chunk, 0, chunk.length);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  private static List<String> records(int count) {
+    List<String> records = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      records.add("record-" + i + "-" + "x".repeat(200));
+    }
+    return records;
+  }
+
+  @Test
+  void chunksConcatenateToTheJacksonPayloadAndAreNeverReused() throws Exception {
+    List<String> records = records(2000);
+    StreamingBody body = new StreamingBody(records.size(), (encoder, i) -> encoder.packValue(records.get(i)));
+    Collector collector = new Collector();
+    body.subscribe(collector);
+
+    assertNull(collector.error.get());
+    assertTrue(collector.completed);
+    assertTrue(collector.items.size() > 2);
+    for (ByteBuffer item : collector.items) {
+      assertTrue(item.isReadOnly());
+      assertTrue(item.remaining() <= StreamingBody.CHUNK_SIZE + 256);
+    }
+    // Every chunk still holds its own bytes after later ones were emitted
+    assertArrayEquals(JACKSON.writeValueAsBytes(records), collector.bytes());
+  }
+
+  @Test
+  void retrySubscriptionReencodesFromTheFirstRecord() throws Exception {
+    List<String> records = records(10);
+    StreamingBody body = new StreamingBody(records.size(), (encoder, i) -> encoder.packValue(records.get(i)));
+    Collector first = new Collector();
+    Collector second = new Collector();
+    body.subscribe(first);
+    body.subscribe(second);
+    assertArrayEquals(JACKSON.writeValueAsBytes(records), first.bytes());
+    assertArrayEquals(first.bytes(), second.bytes());
+  }
+
+  @Test
+  void releasedBodyFailsNewSubscriptionsThroughOnError() {
+    StreamingBody body = new StreamingBody(1, (encoder, i) -> encoder.packValue("a"));
+    body.release();
+    Collector collector = new Collector();
+    assertDoesNotThrow(() -> body.subscribe(collector));
+    assertInstanceOf(IllegalStateException.class, collector.error.get());
+    assertTrue(collector.items.isEmpty());
+  }
+
+  @Test
+  void encodingFailureIsReportedThroughOnError() {
+    StreamingBody body = new StreamingBody(3, (encoder, i) -> {
+      if (i == 2) {
+        throw new IOException("boom");
+      }
+      encoder.packValue(i);
+    });
+    Collector collector = new Collector();
+    body.subscribe(collector);
+    assertEquals("boom", collector.error.get().getMessage());
+    assertFalse(collector.completed);
+  }
+}
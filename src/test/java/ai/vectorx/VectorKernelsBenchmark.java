@@ -0,0 +1,77 @@
+package ai.vectorx;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison of the scalar and Vector API kernels. Build on JDK 17+ so the simd profile
+ * compiles them, then run:
+ *
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat cp.txt) ai.vectorx.VectorKernelsBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class VectorKernelsBenchmark {
+  @Param({"128", "768", "1536"})
+  public int dimension;
+
+  @Param({"scalar", "simd"})
+  public String kernels;
+
+  private VectorKernels impl;
+  private float[] vector;
+  private float[] normalized;
+  private byte[] halves;
+
+  @Setup
+  public void setup() {
+    impl = "simd".equals(kernels) ? VectorKernels.simd() : VectorKernels.SCALAR;
+    if (impl == null) {
+      throw new IllegalStateException("Vector API kernels are not available on this JVM");
+    }
+    Random random = new Random(42);
+    vector = new float[dimension];
+    for (int i = 0; i < dimension; i++) {
+      vector[i] = (float) random.nextGaussian();
+    }
+    normalized = new float[dimension];
+    halves = new byte[dimension * 2];
+    impl.toHalf(vector, 1.0, halves, 0);
+  }
+
+  @Benchmark
+  public double norm() {
+    return Math.sqrt(impl.sumOfSquares(vector));
+  }
+
+  @Benchmark
+  public float[] normalize() {
+    impl.divide(vector, Math.sqrt(impl.sumOfSquares(vector)), normalized);
+    return normalized;
+  }
+
+  @Benchmark
+  public byte[] toHalf() {
+    impl.toHalf(vector, 1.0, halves, 0);
+    return halves;
+  }
+
+  @Benchmark
+  public float[] fromHalf() {
+    impl.fromHalf(halves, 0, normalized);
+    return normalized;
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(VectorKernelsBenchmark.class.getSimpleName()).build()).run();
+  }
+}
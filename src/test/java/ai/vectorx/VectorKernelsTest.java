@@ -0,0 +1,162 @@
+package ai.vectorx;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Half-float conversion against exact arithmetic, and the SIMD kernels against the scalar ones
+ * when this JVM can load them.
+ */
+public class VectorKernelsTest {
+  private static final int MAX_FINITE_HALF = 0x7bff;
+
+  private static short half(float value) {
+    return VectorKernels.floatToHalf(value);
+  }
+
+  // Nearest binary16, ties to even, found by searching the ordered positive halves exactly
+  private static int referenceHalf(float value) {
+    int sign = Float.floatToRawIntBits(value) < 0 ? 0x8000 : 0;
+    BigDecimal target = new BigDecimal(Math.abs((double) value));
+    int low = 0;
+    int high = MAX_FINITE_HALF;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (exact(mid).compareTo(target) <= 0) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    if (low == MAX_FINITE_HALF) {
+      // Past 65504 the next step up would be 65536, so the tie point is 65520
+      return sign | (target.compareTo(new BigDecimal(65520)) >= 0 ? 0x7c00 : MAX_FINITE_HALF);
+    }
+    int cmp = target.subtract(exact(low)).compareTo(exact(low + 1).subtract(target));
+    return sign | (cmp < 0 || (cmp == 0 && (low & 1) == 0) ? low : low + 1);
+  }
+
+  private static BigDecimal exact(int half) {
+    return new BigDecimal((double) VectorKernels.halfToFloat((short) half));
+  }
+
+  @Test
+  void everyHalfRoundTripsThroughFloat() {
+    for (int h = 0; h <= 0xffff; h++) {
+      float value = VectorKernels.halfToFloat((short) h);
+      if ((h & 0x7c00) == 0x7c00 && (h & 0x3ff) != 0) {
+        assertTrue(Float.isNaN(value), Integer.toHexString(h));
+      } else {
+        assertEquals(h, half(value) & 0xffff, Integer.toHexString(h));
+      }
+    }
+  }
+
+  @Test
+  void halfValuesAreExact() {
+    assertEquals(1.0f, VectorKernels.halfToFloat((short) 0x3c00));
+    assertEquals(65504f, VectorKernels.halfToFloat((short) 0x7bff));
+    assertEquals(0x1p-14f, VectorKernels.halfToFloat((short) 0x0400));
+    assertEquals(0x1p-24f, VectorKernels.halfToFloat((short) 0x0001));
+    assertEquals(0x3ffp-24f, VectorKernels.halfToFloat((short) 0x03ff));
+    assertEquals(-0.0f, VectorKernels.halfToFloat((short) 0x8000));
+    assertEquals(Float.floatToRawIntBits(-0.0f), Float.floatToRawIntBits(VectorKernels.halfToFloat((short) 0x8000)));
+    assertEquals(Float.NEGATIVE_INFINITY, VectorKernels.halfToFloat((short) 0xfc00));
+  }
+
+  @Test
+  void tiesRoundToEven() {
+    // Halfway between 1 and 1 + 2^-10 goes down to the even mantissa, the next tie goes up
+    assertEquals(0x3c00, half(1 + 0x1p-11f));
+    assertEquals(0x3c02, half(1 + 0x3p-11f));
+    assertEquals(0x3c01, half(1 + 0x1p-11f + 0x1p-20f));
+    // The same in the subnormal range
+    assertEquals(0x0000, half(0x1p-25f));
+    assertEquals(0x0002, half(0x3p-25f));
+    assertEquals(0x0001, half(0x1.0002p-25f));
+    assertEquals(0x0400, half(0x7ffp-25f));
+    assertEquals(0x8001, half(-0x1p-24f) & 0xffff);
+  }
+
+  @Test
+  void overflowAndSpecialValues() {
+    assertEquals(0x7bff, half(65504f));
+    assertEquals(0x7bff, half(65519.996f));
+    assertEquals(0x7c00, half(65520f));
+    assertEquals(0x7c00, half(1e30f));
+    assertEquals(0xfc00, half(Float.NEGATIVE_INFINITY) & 0xffff);
+    assertEquals(0x7e00, half(Float.NaN));
+    assertEquals(0xfe00, half(Float.intBitsToFloat(0xffc00001)) & 0xffff);
+    assertEquals(0x8000, half(-0.0f) & 0xffff);
+    assertEquals(0x0000, half(Float.MIN_VALUE));
+  }
+
+  @Test
+  void matchesExactRoundingOnRandomFloats() {
+    Random random = new Random(17);
+    for (int i = 0; i < 200_000; i++) {
+      // Exponents from well below the subnormal halves to just past the largest finite one
+      float value = Float.intBitsToFloat((random.nextInt(0x4780_0000 - 0x3000_0000) + 0x3000_0000)
+          | (random.nextBoolean() ? 0x8000_0000 : 0));
+      assertEquals(referenceHalf(value), half(value) & 0xffff, Float.toHexString(value));
+    }
+  }
+
+  @Test
+  void bytesAreLittleEndianAtTheOffset() {
+    float[] values = {1.0f, -2.0f, 8.0f};
+    byte[] bytes = new byte[1 + values.length * 2];
+    VectorKernels.SCALAR.toHalf(values, 2.0, bytes, 1);
+    assertArrayEquals(new byte[]{0, 0x00, 0x38, 0x00, (byte) 0xbc, 0x00, 0x44}, bytes);
+
+    float[] decoded = new float[values.length];
+    VectorKernels.SCALAR.fromHalf(bytes, 1, decoded);
+    assertArrayEquals(new float[]{0.5f, -1.0f, 4.0f}, decoded);
+  }
+
+  @Test
+  void activeKernelsAgreeWithTheScalarOnes() {
+    List<VectorKernels> candidates = new ArrayList<>();
+    candidates.add(VectorKernels.INSTANCE);
+    VectorKernels simd = VectorKernels.simd();
+    if (simd != null) {
+      candidates.add(simd);
+    }
+    VectorKernels scalar = VectorKernels.SCALAR;
+    Random random = new Random(23);
+    for (VectorKernels kernels : candidates) {
+      // Lengths around the lane widths exercise the vector loop and its scalar tail
+      for (int length = 0; length < 80; length++) {
+        float[] a = new float[length];
+        float[] b = new float[length];
+        for (int i = 0; i < length; i++) {
+          a[i] = (float) random.nextGaussian() * 100;
+          b[i] = (float) random.nextGaussian();
+        }
+        String what = kernels.name() + " length " + length;
+        assertEquals(scalar.sumOfSquares(a), kernels.sumOfSquares(a), 1e-9 * scalar.sumOfSquares(a), what);
+        assertEquals(scalar.dot(a, b), kernels.dot(a, b), 1e-9 * Math.sqrt(scalar.sumOfSquares(a) * scalar.sumOfSquares(b)), what);
+
+        double norm = Math.sqrt(scalar.sumOfSquares(a));
+        float[] expected = new float[length];
+        float[] actual = new float[length];
+        scalar.divide(a, norm, expected);
+        kernels.divide(a, norm, actual);
+        assertArrayEquals(expected, actual, what);
+
+        byte[] expectedHalves = new byte[length * 2 + 3];
+        byte[] actualHalves = new byte[length * 2 + 3];
+        scalar.toHalf(a, 7.0, expectedHalves, 3);
+        kernels.toHalf(a, 7.0, actualHalves, 3);
+        assertArrayEquals(expectedHalves, actualHalves, what);
+        scalar.fromHalf(expectedHalves, 3, expected);
+        kernels.fromHalf(expectedHalves, 3, actual);
+        assertArrayEquals(expected, actual, what);
+      }
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package ai.vectorx;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Index handle caching against a stub whose /info replies can be held back.
+ */
+public class VectorXHandleCacheTest {
+  private HttpServer server;
+  private ExecutorService executor;
+  private VectorX client;
+  private final AtomicInteger lookups = new AtomicInteger();
+  private volatile int dimension = 4;
+  // While set, /info replies wait for it
+  private volatile CountDownLatch gate;
+
+  @BeforeEach
+  void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", this::handle);
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.start();
+    client = new VectorX("token", new ApiClient("http://127.0.0.1:" + server.getAddress().getPort()));
+  }
+
+  @AfterEach
+  void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    lookups.incrementAndGet();
+    CountDownLatch held = gate;
+    if (held != null) {
+      try {
+        held.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        exchange.close();
+        return;
+      }
+    }
+    String path = exchange.getRequestURI().getPath();
+    byte[] body = path.contains("/missing/") ? "no such index".getBytes()
+        : ("{\"lib_token\":\"lib\",\"M\":16,\"use_fp16\":false,\"dimension\":" + dimension
+            + ",\"vocab_size\":100,\"total_elements\":3,\"space_type\":\"cosine\"}").getBytes();
+    exchange.sendResponseHeaders(path.contains("/missing/") ? 404 : 200, body.length);
+    exchange.getResponseBody().write(body);
+    exchange.close();
+  }
+
+  @Test
+  void freshHandleIsReusedWithoutALookup() throws Exception {
+    Index first = client.getIndex("idx");
+    assertSame(first, client.getIndex("idx"));
+    assertEquals(1, lookups.get());
+    HybridIndex hybrid = client.getHybridIndex("idx");
+    assertSame(hybrid, client.getHybridIndex("idx"));
+    assertEquals(2, lookups.get());
+  }
+
+  @Test
+  void staleHandleIsRefreshedInPlaceUnlessTheIndexChanged() throws Exception {
+    client.setHandleRefreshInterval(Duration.ZERO);
+    Index first = client.getIndex("idx");
+    assertSame(first, client.getIndex("idx"));
+    assertEquals(2, lookups.get());
+
+    dimension = 8;
+    Index replaced = client.getIndex("idx");
+    assertNotSame(first, replaced);
+    assertEquals(3, lookups.get());
+  }
+
+  @Test
+  void invalidationMakesTheNextCallLookUp() throws Exception {
+    Index index = client.getIndex("idx");
+    HybridIndex hybrid = client.getHybridIndex("idx");
+    client.invalidateIndex("idx");
+    assertSame(index, client.getIndex("idx"));
+    assertEquals(3, lookups.get());
+    assertSame(hybrid, client.getHybridIndex("idx"));
+    assertEquals(3, lookups.get());
+
+    client.invalidateAllIndexes();
+    client.getIndex("idx");
+    client.getHybridIndex("idx");
+    assertEquals(5, lookups.get());
+    client.invalidateIndex("never-looked-up");
+  }
+
+  @Test
+  void concurrentFirstLookupsShareOneCall() throws Exception {
+    gate = new CountDownLatch(1);
+    List<Future<Index>> results = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      results.add(executor.submit(() -> client.getIndex("idx")));
+    }
+    waitFor(() -> lookups.get() == 1);
+    Thread.sleep(50);
+    gate.countDown();
+    Index first = results.get(0).get(5, TimeUnit.SECONDS);
+    for (Future<Index> result : results) {
+      assertSame(first, result.get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(1, lookups.get());
+  }
+
+  @Test
+  void staleInstanceIsServedWhileOneCallerRefreshes() throws Exception {
+    Index index = client.getIndex("idx");
+    client.setHandleRefreshInterval(Duration.ZERO);
+    gate = new CountDownLatch(1);
+    Future<Index> refreshing = executor.submit(() -> client.getIndex("idx"));
+    waitFor(() -> lookups.get() == 2);
+
+    // Neither waits for the held lookup nor starts another one
+    assertTimeoutPreemptively(Duration.ofSeconds(1), () -> {
+      assertSame(index, client.getIndex("idx"));
+      assertSame(index, client.getIndex("idx"));
+    });
+    assertEquals(2, lookups.get());
+
+    gate.countDown();
+    assertSame(index, refreshing.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void failedFirstLookupIsNotCached() throws Exception {
+    assertThrows(Exception.class, () -> client.getIndex("missing"));
+    assertThrows(Exception.class, () -> client.getIndex("missing"));
+    assertEquals(2, lookups.get());
+  }
+
+  @Test
+  void failedRefreshKeepsTheHandleForTheNextCall() throws Exception {
+    Index index = client.getIndex("idx");
+    client.setHandleRefreshInterval(Duration.ZERO);
+    server.removeContext("/");
+    server.createContext("/", exchange -> {
+      lookups.incrementAndGet();
+      exchange.sendResponseHeaders(500, -1);
+      exchange.close();
+    });
+    assertThrows(Exception.class, () -> client.getIndex("idx"));
+    server.removeContext("/");
+    server.createContext("/", this::handle);
+    assertSame(index, client.getIndex("idx"));
+    assertEquals(3, lookups.get());
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.nanoTime() < deadline, "Timed out waiting");
+      Thread.sleep(5);
+    }
+  }
+}